@@ -0,0 +1,38 @@
+package interfaces;
+
+import java.util.List;
+
+import model.Printer;
+import model.Toner;
+
+/**
+ * Receives the changes made to the database one record at a time,
+ * so views can update single rows instead of reloading every record.
+ * Events arrive on the thread that made the change, while it still holds
+ * the database's lock, so a listener must not wait on another thread that
+ * changes the database.
+ */
+public interface DatabaseListener {
+
+	public void printerAdded(Printer printer);
+
+	public void printerRemoved(Printer printer);
+
+	//printer was already in the database and its values changed
+	public void printerUpdated(Printer printer);
+
+	public void tonerAdded(Toner toner);
+
+	public void tonerRemoved(Toner toner);
+
+	//toner was already in the database and its values changed
+	public void tonerUpdated(Toner toner);
+
+	//called instead of the single record events for each batch of an import
+	public void printersImported(List<Printer> added, List<Printer> updated);
+
+	public void tonersImported(List<Toner> added, List<Toner> updated);
+
+	//called instead of the single record events after a load or a rolled back import
+	public void databaseReloaded();
+}
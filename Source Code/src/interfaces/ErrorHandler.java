@@ -0,0 +1,12 @@
+package interfaces;
+
+/**
+ * Receives the errors the database cannot throw to a caller, such as a
+ * background save that failed, so the GUI can show them in a dialog and a
+ * command line job can print them.
+ */
+public interface ErrorHandler {
+
+	//header is a short summary, message says what happened to which file
+	public void handleError(String header, String message, Exception cause);
+}
@@ -0,0 +1,368 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import metrics.Metrics;
+import model.Database;
+import model.DepletionForecaster;
+import model.ImportError;
+import model.ImportReport;
+import model.InventoryGenerator;
+import model.MeterDropFolder;
+import model.MeterReader;
+import model.MeterReport;
+import model.MeterStore;
+import model.Toner;
+import model.TonerForecast;
+import server.DatabaseServer;
+
+/**
+ * Command line entry point for batch jobs on servers without a display.
+ * Uses the same database, import and save code as the GUI but never starts
+ * the JavaFX toolkit, so it starts quickly and needs only a small heap.
+ * Every command that changes a database writes it back to the disk before
+ * it exits.
+ *
+ * Exit status is 0 on success, 1 if a file could not be read or written
+ * and 2 if the command line is wrong.
+ */
+public class Cli {
+
+	private static final String USAGE = String.join(System.lineSeparator(),
+			"usage: Cli <command> <arguments>",
+			"  import <database> printers|toners <csv> [--upsert]",
+			"        import a CSV file, the database is created if it does not exist",
+			"  merge <database> <other database>...",
+			"        copy every record of the other databases in, replacing records with the same UID",
+			"  report <database> [reorder|summary]",
+			"        print the toners that need ordering as CSV, or count the records",
+			"  convert <database> <output>",
+			"        write the database to a .xml or .ptdb file",
+			"  forecast <database> <meter csv or folder> [--yield pages]",
+			"        read page counts and print when each metered toner runs out as CSV",
+			"  generate printers|toners|database <printers> <output> [--seed n]",
+			"        write a made up inventory of that many printers as CSV, or as a .xml or .ptdb database",
+			"  serve <database> [port] [--meters <folder>]",
+			"        serve the database over HTTP on localhost until stopped, saving changes as they come,",
+			"        with forecasts from the meter files dropped into the folder");
+
+	/**
+	 * Port the server listens on unless another is given
+	 */
+	private static final int DEFAULT_PORT = 8080;
+	/**
+	 * Seed of generated inventories unless another is given, so the same
+	 * command always writes the same file
+	 */
+	private static final long DEFAULT_SEED = 1;
+
+	private final PrintStream out;
+	private final PrintStream err;
+
+	public Cli(PrintStream out, PrintStream err) {
+		this.out = out;
+		this.err = err;
+	}
+
+	public static void main(String[] args) {
+		int status = new Cli(System.out, System.err).run(args);
+		// a server keeps running on its own threads
+		if (status >= 0) System.exit(status);
+	}
+
+	/**
+	 * Runs one command
+	 * @param args command and its arguments
+	 * @return exit status, or -1 if a server was started and the program has to keep running
+	 */
+	public int run(String[] args) {
+		if (args.length == 0) return usage();
+		try {
+			switch (args[0]) {
+			case "import":
+				if (args.length < 4 || args.length > 5) return usage();
+				if (args.length == 5 && !args[4].equals("--upsert")) return usage();
+				return importCsv(new File(args[1]), args[2], new File(args[3]), args.length == 5);
+			case "merge":
+				if (args.length < 3) return usage();
+				return merge(new File(args[1]), args);
+			case "report":
+				if (args.length < 2 || args.length > 3) return usage();
+				return report(new File(args[1]), args.length == 3 ? args[2] : "reorder");
+			case "convert":
+				if (args.length != 3) return usage();
+				return convert(new File(args[1]), new File(args[2]));
+			case "forecast":
+				if (args.length != 3 && args.length != 5) return usage();
+				if (args.length == 5 && !args[3].equals("--yield")) return usage();
+				return forecast(new File(args[1]), new File(args[2]), args.length == 5 ? args[4] : null);
+			case "generate":
+				if (args.length != 4 && args.length != 6) return usage();
+				if (args.length == 6 && !args[4].equals("--seed")) return usage();
+				return generate(args[1], args[2], new File(args[3]), args.length == 6 ? args[5] : null);
+			case "serve":
+				return serve(args);
+			default:
+				return usage();
+			}
+		} catch (IOException e) {
+			err.println(e.getMessage());
+			return 1;
+		}
+	}
+
+	private int importCsv(File file, String kind, File csv, boolean upsert) throws IOException {
+		if (!kind.equals("printers") && !kind.equals("toners")) return usage();
+		Database database = open(file, true);
+		try {
+			ImportReport<?> report = kind.equals("printers")
+					? database.importPrinterData(csv, upsert)
+					: database.importTonerData(csv, upsert);
+			database.writeToFile(file);
+			for (ImportError error : report.getErrors()) {
+				err.println(csv.getName() + ": " + error);
+			}
+			out.println(csv.getName() + ": " + report);
+			return 0;
+		} finally {
+			database.close();
+		}
+	}
+
+	private int merge(File file, String[] args) throws IOException {
+		Database database = open(file, true);
+		try {
+			for (int i = 2; i < args.length; i++) {
+				Database other = open(new File(args[i]), false);
+				try {
+					out.println(args[i] + ": " + database.mergeFrom(other) + " records merged");
+				} finally {
+					other.close();
+				}
+			}
+			database.writeToFile(file);
+			return 0;
+		} finally {
+			database.close();
+		}
+	}
+
+	private int report(File file, String kind) throws IOException {
+		Database database = open(file, false);
+		try {
+			if (kind.equals("summary")) {
+				out.println("printers: " + database.getPrinterCount());
+				out.println("toners: " + database.getTonerCount());
+				out.println("toners to order: " + database.getReorderEngine().getOrderCount());
+				out.println("cartridges needed: " + database.getReorderEngine().getTotalNeeded());
+			} else if (kind.equals("reorder")) {
+				List<Toner> toners = new ArrayList<>(database.getReorderEngine().getNeedsOrdering());
+				toners.sort(Comparator.comparing(Toner::getBrand, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER))
+						.thenComparing(Toner::getModel, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER)));
+				out.println("brand,model,printerModel,curStock,minStock,needed");
+				for (Toner toner : toners) {
+					out.println(csv(toner.getBrand()) + "," + csv(toner.getModel()) + ","
+							+ csv(toner.getPrinterModel()) + "," + toner.getCurStock() + ","
+							+ toner.getMinStock() + "," + toner.getNeeded());
+				}
+			} else {
+				return usage();
+			}
+			return 0;
+		} finally {
+			database.close();
+		}
+	}
+
+	private int convert(File file, File output) throws IOException {
+		Database database = open(file, false);
+		try {
+			database.writeToFile(output);
+			out.println(output.getName() + ": " + database.getPrinterCount() + " printers, "
+					+ database.getTonerCount() + " toners");
+			return 0;
+		} finally {
+			database.close();
+		}
+	}
+
+	private int forecast(File file, File meters, String yield) throws IOException {
+		Database database = open(file, false);
+		try {
+			MeterStore store = new MeterStore();
+			MeterReader reader = new MeterReader(database, store);
+			DepletionForecaster forecaster = new DepletionForecaster(database, store);
+			if (yield != null) {
+				try {
+					forecaster.setDefaultYield(Integer.parseInt(yield));
+				} catch (IllegalArgumentException e) {
+					return usage();
+				}
+			}
+			if (meters.isDirectory()) {
+				MeterDropFolder folder = new MeterDropFolder(meters, reader, this::printReport);
+				folder.readAll();
+			} else if (meters.isFile()) {
+				printReport(reader.read(meters));
+			} else {
+				throw new IOException("No such file: " + meters.getPath());
+			}
+			out.println("brand,model,curStock,minStock,meteredPrinters,pagesPerDay,daysUntilReorder,daysLeft,runOut");
+			for (TonerForecast forecast : forecaster.forecastAll()) {
+				Toner toner = forecast.getToner();
+				long runOut = forecast.getRunOutTime();
+				out.println(csv(toner.getBrand()) + "," + csv(toner.getModel()) + ","
+						+ forecast.getCurStock() + "," + toner.getMinStock() + ","
+						+ forecast.getMeteredPrinters() + "," + Math.round(forecast.getPagesPerDay()) + ","
+						+ days(forecast.getDaysUntilReorder()) + "," + days(forecast.getDaysLeft()) + ","
+						+ (runOut == Long.MAX_VALUE ? "" : Instant.ofEpochMilli(runOut).atZone(ZoneId.systemDefault()).toLocalDate()));
+			}
+			return 0;
+		} finally {
+			database.close();
+		}
+	}
+
+	private void printReport(MeterReport report) {
+		for (ImportError error : report.getErrors()) {
+			err.println(report.getSource() + ": " + error);
+		}
+		err.println(report.getSource() + ": " + report);
+	}
+
+	/**
+	 * Whole days for a CSV column, blank for never
+	 */
+	private static String days(double days) {
+		return Double.isInfinite(days) ? "" : Long.toString((long) Math.floor(days));
+	}
+
+	private int generate(String kind, String count, File output, String seed) throws IOException {
+		InventoryGenerator generator;
+		try {
+			generator = new InventoryGenerator(Integer.parseInt(count),
+					seed == null ? DEFAULT_SEED : Long.parseLong(seed));
+		} catch (IllegalArgumentException e) {
+			return usage();
+		}
+		switch (kind) {
+		case "printers":
+			generator.writePrinterCsv(output);
+			break;
+		case "toners":
+			generator.writeTonerCsv(output);
+			break;
+		case "database":
+			generator.writeDatabase(output);
+			break;
+		default:
+			return usage();
+		}
+		out.println(output.getName() + ": " + generator.getPrinterCount() + " printers on "
+				+ generator.getCampusCount() + " campuses");
+		return 0;
+	}
+
+	/**
+	 * Serves the database until the process is stopped. Autosave is on and
+	 * runs alongside the requests. Stopping the process waits for the last save.
+	 * With a meter folder, files dropped into it are read as they arrive and
+	 * the forecasts are served too.
+	 */
+	private int serve(String[] args) throws IOException {
+		if (args.length < 2) return usage();
+		File file = new File(args[1]);
+		int number = DEFAULT_PORT;
+		File meters = null;
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("--meters") && i + 1 < args.length && meters == null) {
+				meters = new File(args[++i]);
+			} else if (i == 2) {
+				try {
+					number = Integer.parseInt(args[i]);
+				} catch (NumberFormatException e) {
+					return usage();
+				}
+			} else {
+				return usage();
+			}
+		}
+		Database database = new Database();
+		if (file.exists()) {
+			database.loadPrinterDataFromFile(file);
+		} else {
+			database.writeToFile(file);
+		}
+		database.setAutosave(true);
+		Metrics.watch(database::getPrinterCount, database::getTonerCount);
+		Metrics.register(err::println);
+		DatabaseServer server = new DatabaseServer(database,
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), number));
+		MeterDropFolder folder = null;
+		if (meters != null) {
+			MeterStore store = new MeterStore();
+			folder = new MeterDropFolder(meters, new MeterReader(database, store), this::printReport);
+			folder.start();
+			server.setForecaster(new DepletionForecaster(database, store));
+		}
+		MeterDropFolder watching = folder;
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.stop();
+			try {
+				if (watching != null) watching.close();
+			} catch (IOException e) {
+				err.println(e.getMessage());
+			}
+			try {
+				database.save();
+			} catch (IOException e) {
+				err.println(e.getMessage());
+			}
+			database.close();
+		}, "shutdown"));
+		server.start();
+		out.println("Serving " + file.getName() + " on http://" + server.getAddress().getHostString()
+				+ ":" + server.getAddress().getPort() + "/");
+		return -1;
+	}
+
+	/**
+	 * Loads a database, replaying its journal
+	 * @param file
+	 * @param create true to start an empty database if the file does not exist
+	 */
+	private static Database open(File file, boolean create) throws IOException {
+		Database database = new Database();
+		if (file.exists()) {
+			database.loadPrinterDataFromFile(file);
+		} else if (!create) {
+			throw new IOException("No such file: " + file.getPath());
+		}
+		return database;
+	}
+
+	private int usage() {
+		err.println(USAGE);
+		return 2;
+	}
+
+	/**
+	 * Quotes a value for a CSV field if it needs it
+	 */
+	private static String csv(String value) {
+		if (value == null) return "";
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+}
@@ -2,35 +2,45 @@ package main;
 
 
 import java.io.IOException;
+import java.net.URL;
 import java.util.List;
 
+import interfaces.DatabaseListener;
 import javafx.application.Application;
-import javafx.collections.FXCollections;
+import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import metrics.FxmlLoadEvent;
+import metrics.Metrics;
 import model.Database;
+import model.ImportJob;
 import model.Printer;
 import model.Toner;
 import view.EditPrinterController;
 import view.EditTonerController;
+import view.ImportDialogController;
 import view.PrinterOverviewController;
 import view.PrinterSelectorController;
 import view.RootLayoutController;
+import view.ScanDialogController;
 import view.TonerOverviewController;
 import view.TonerSelectorController;
 /**
  * 
  * Main java application class. Handles the observable lists of data used for
  * displaying toner and printer information in JAVAFX tables. Handles initializing all
- * the scenes and controllers.
+ * the scenes and controllers. Listens to the database and applies each change
+ * to the observable lists one record at a time.
  *
  */
-public class MainApp extends Application {
+public class MainApp extends Application implements DatabaseListener {
 
     private Stage primaryStage;
     private BorderPane rootLayout;
@@ -44,12 +54,12 @@ public class MainApp extends Application {
     /**
      * Observable list of printers
      */
-    private ObservableList<Printer> printerList;
+    private RecordList<Printer> printerList;
     
     /**
      * Observable list of toners
      */
-    private ObservableList<Toner> tonerList;
+    private RecordList<Toner> tonerList;
     
     /**
      * Access to the database of printers and toners
@@ -62,9 +72,13 @@ public class MainApp extends Application {
      * Null pointer exceptions prior to adding data
      */
     public MainApp() {
-    	database = new Database();
-    	printerList = FXCollections.observableArrayList();
-    	tonerList = FXCollections.observableArrayList();
+    	database = new Database(Platform::runLater);
+    	database.setErrorHandler(this::showError);
+    	printerList = new RecordList<Printer>();
+    	tonerList = new RecordList<Toner>();
+    	database.addListener(this);
+    	Metrics.watch(database::getPrinterCount, database::getTonerCount);
+    	Metrics.register(System.err::println);
     }
     
     /**
@@ -80,14 +94,14 @@ public class MainApp extends Application {
      * @return
      */
     public ObservableList<Printer> getPrinterList() {
-		return printerList;
+		return printerList.getList();
 	}
     /**
      * Returns the observable list of toners. 
      * @return
      */
 	public ObservableList<Toner> getTonerList() {
-		return tonerList;
+		return tonerList.getList();
 	}
 	
     /**
@@ -96,8 +110,9 @@ public class MainApp extends Application {
      * @return
      */
 	public void updateTonerList() {
-		database.updateTonerStock();
-		tonerList.setAll(database.getTonerSet());
+		long start = Metrics.start();
+		tonerList.setAll(database.getToners());
+		Metrics.LIST_REFRESH.recordSince(start);
 	}
 	
     /**
@@ -106,7 +121,62 @@ public class MainApp extends Application {
      * @return
      */
 	public void updatePrinterList() {
-		printerList.setAll(database.getPrinterSet());
+		long start = Metrics.start();
+		printerList.setAll(database.getPrinters());
+		Metrics.LIST_REFRESH.recordSince(start);
+	}
+
+	/*
+	 * The following methods are called by the database
+	 * and apply a single change to the observable lists
+	 */
+
+	@Override
+	public void printerAdded(Printer printer) {
+		printerList.add(printer);
+	}
+
+	@Override
+	public void printerRemoved(Printer printer) {
+		printerList.remove(printer);
+	}
+
+	@Override
+	public void printerUpdated(Printer printer) {
+		printerList.update(printer);
+	}
+
+	@Override
+	public void tonerAdded(Toner toner) {
+		tonerList.add(toner);
+	}
+
+	@Override
+	public void tonerRemoved(Toner toner) {
+		tonerList.remove(toner);
+	}
+
+	@Override
+	public void tonerUpdated(Toner toner) {
+		tonerList.update(toner);
+	}
+
+	@Override
+	public void printersImported(List<Printer> added, List<Printer> updated) {
+		printerList.addAll(added);
+		updated.forEach(printerList::update);
+	}
+
+	@Override
+	public void tonersImported(List<Toner> added, List<Toner> updated) {
+		tonerList.addAll(added);
+		updated.forEach(tonerList::update);
+	}
+
+	@Override
+	public void databaseReloaded() {
+		updatePrinterList();
+		updateTonerList();
 	}
 	
 	/**
@@ -125,6 +195,15 @@ public class MainApp extends Application {
         showPrinterOverview();
     }
 
+    /**
+     * Runs when the window closes. Lets any save still being
+     * written finish before the program exits.
+     */
+    @Override
+    public void stop() {
+        database.close();
+    }
+
     /**
      * Initializes the root layout
      * Root layout is the main window 
@@ -134,8 +213,7 @@ public class MainApp extends Application {
         try {
             // Load root layout from fxml file.
             FXMLLoader loader = new FXMLLoader();
-            loader.setLocation(MainApp.class.getResource("/view/RootLayout.fxml"));
-            rootLayout = (BorderPane) loader.load();
+            rootLayout = loadFxml(loader, "/view/RootLayout.fxml");
 
             // Show the scene containing the root layout.
             Scene scene = new Scene(rootLayout);
@@ -153,6 +231,30 @@ public class MainApp extends Application {
       
     }
 
+    /**
+     * Loads an fxml file into the loader, as a flight recorder event
+     * @param loader
+     * @param fxml resource path of the file
+     * @return the root of the loaded scene graph
+     * @throws IOException
+     */
+    private static <T> T loadFxml(FXMLLoader loader, String fxml) throws IOException {
+        FxmlLoadEvent event = new FxmlLoadEvent();
+        event.begin();
+        URL location = MainApp.class.getResource(fxml);
+        loader.setLocation(location);
+        try {
+            return loader.load();
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.fxml = fxml;
+                event.fileSize = location == null ? 0 : location.openConnection().getContentLengthLong();
+                event.commit();
+            }
+        }
+    }
+
     /**
      * Shows the Printer overview inside the root layout.
      * Handles the printer table view
@@ -161,8 +263,7 @@ public class MainApp extends Application {
         try {
             // Load printer overview.
             FXMLLoader loader = new FXMLLoader();
-            loader.setLocation(MainApp.class.getResource("/view/PrinterOverview.fxml"));
-            AnchorPane printerOverView = (AnchorPane) loader.load();
+            AnchorPane printerOverView = loadFxml(loader, "/view/PrinterOverview.fxml");
 
             // Set printer overview into the center of root layout.
             rootLayout.setCenter(printerOverView);
@@ -187,8 +288,7 @@ public class MainApp extends Application {
         try {
             // Load printer overview.
             FXMLLoader loader = new FXMLLoader();
-            loader.setLocation(MainApp.class.getResource("/view/TonerOverview.fxml"));
-            AnchorPane tonerOverView = (AnchorPane) loader.load();
+            AnchorPane tonerOverView = loadFxml(loader, "/view/TonerOverview.fxml");
 
             // Set printer overview into the center of root layout.
             rootLayout.setCenter(tonerOverView);
@@ -218,8 +318,7 @@ public class MainApp extends Application {
         try {
             // Load the fxml file and create a new stage for the popup dialog.
             FXMLLoader loader = new FXMLLoader();
-            loader.setLocation(MainApp.class.getResource("/view/EditPrinterWindow.fxml"));
-            AnchorPane page = (AnchorPane) loader.load();
+            AnchorPane page = loadFxml(loader, "/view/EditPrinterWindow.fxml");
 
             // Create the dialog Stage.
             Stage dialogStage = new Stage();
@@ -241,13 +340,10 @@ public class MainApp extends Application {
             dialogStage.showAndWait();
 
             if (controller.isOkClicked()) {
-            	database.getPrinterSet().remove(printer);
-            	database.getPrinterSet().add(controller.getPrinter());
-            	updatePrinterList();
+            	database.updatePrinter(printer, controller::applyTo);
             	return true;
             } else if (controller.isDeleteClicked()) {
-            	database.getPrinterSet().remove(printer);
-            	updatePrinterList();
+            	database.removePrinter(printer);
             	return true;
             } else {
             	return false;
@@ -268,8 +364,7 @@ public class MainApp extends Application {
         try {
             // Load the fxml file and create a new stage for the popup dialog.
             FXMLLoader loader = new FXMLLoader();
-            loader.setLocation(MainApp.class.getResource("/view/TonerSelector.fxml"));
-            AnchorPane page = (AnchorPane) loader.load();
+            AnchorPane page = loadFxml(loader, "/view/TonerSelector.fxml");
 
             // Create the dialog Stage.
             Stage dialogStage = new Stage();
@@ -282,11 +377,11 @@ public class MainApp extends Application {
             // Set the toner into the controller.
             TonerSelectorController controller = loader.getController();
             controller.setDialogStage(dialogStage);
-            controller.setListView(tonerList);
+            controller.setListView(tonerList.getList());
             // Show the dialog and wait until the user closes it
             dialogStage.showAndWait();   
             //After tonerSelector closes, resets all toner objects to not be checked
-        	tonerList.forEach(toner->toner.setSelected(false));
+        	tonerList.getList().forEach(toner->toner.setSelected(false));
 
             if (controller.isOkClicked()) {
             	return controller.getSelectedToners();
@@ -311,8 +406,7 @@ public class MainApp extends Application {
         try {
             // Load the fxml file and create a new stage for the popup dialog.
             FXMLLoader loader = new FXMLLoader();
-            loader.setLocation(MainApp.class.getResource("/view/EditTonerWindow.fxml"));
-            AnchorPane page = (AnchorPane) loader.load();
+            AnchorPane page = loadFxml(loader, "/view/EditTonerWindow.fxml");
 
             // Create the dialog Stage.
             Stage dialogStage = new Stage();
@@ -334,13 +428,10 @@ public class MainApp extends Application {
             dialogStage.showAndWait();
 
             if (controller.isOkClicked()) {
-            	database.getTonerSet().remove(toner);
-            	database.getTonerSet().add(controller.getToner());
-            	updateTonerList();
+            	database.updateToner(toner, controller::applyTo);
             	return true;
             } else if (controller.isDeleteClicked()) {
-            	database.getTonerSet().remove(toner);
-            	updateTonerList();
+            	database.removeToner(toner);
             	return true;
             } else {
             	return false;
@@ -362,8 +453,7 @@ public class MainApp extends Application {
         try {
             // Load the fxml file and create a new stage for the popup dialog.
             FXMLLoader loader = new FXMLLoader();
-            loader.setLocation(MainApp.class.getResource("/view/PrinterSelector.fxml"));
-            AnchorPane page = (AnchorPane) loader.load();
+            AnchorPane page = loadFxml(loader, "/view/PrinterSelector.fxml");
 
             // Create the dialog Stage.
             Stage dialogStage = new Stage();
@@ -376,11 +466,11 @@ public class MainApp extends Application {
             // Set the person into the controller.
             PrinterSelectorController controller = loader.getController();
             controller.setDialogStage(dialogStage);
-            controller.setListView(printerList);
+            controller.setListView(printerList.getList());
             // Show the dialog and wait until the user closes it
             dialogStage.showAndWait();   
             //After tonerSelector closes, resets all toner objects to not be checked
-            printerList.forEach(toner->toner.setSelected(false));
+            printerList.getList().forEach(toner->toner.setSelected(false));
 
             if (controller.isOkClicked()) {
             	return controller.getSelectedPrinters();
@@ -393,6 +483,73 @@ public class MainApp extends Application {
         }
     }
     
+    /**
+     * Opens a dialog that runs an import in the background, showing its
+     * progress and then the rows it rejected. Waits until the user closes it.
+     * @param job
+     */
+    public void showImportDialog(ImportJob<?> job) {
+        try {
+            FXMLLoader loader = new FXMLLoader();
+            AnchorPane page = loadFxml(loader, "/view/ImportDialog.fxml");
+
+            Stage dialogStage = new Stage();
+            dialogStage.setTitle("Import " + job.getFile().getName());
+            dialogStage.initModality(Modality.WINDOW_MODAL);
+            dialogStage.initOwner(primaryStage);
+            Scene scene = new Scene(page);
+            dialogStage.setScene(scene);
+
+            ImportDialogController controller = loader.getController();
+            controller.setDialogStage(dialogStage);
+            controller.start(job);
+
+            dialogStage.showAndWait();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Opens the stockroom scan dialog and waits until the user closes it
+     */
+    public void showScanDialog() {
+        try {
+            FXMLLoader loader = new FXMLLoader();
+            AnchorPane page = loadFxml(loader, "/view/ScanDialog.fxml");
+
+            Stage dialogStage = new Stage();
+            dialogStage.setTitle("Scan Stock");
+            dialogStage.initModality(Modality.WINDOW_MODAL);
+            dialogStage.initOwner(primaryStage);
+            Scene scene = new Scene(page);
+            dialogStage.setScene(scene);
+
+            ScanDialogController controller = loader.getController();
+            controller.setDialogStage(dialogStage);
+            controller.setDatabase(database);
+
+            dialogStage.showAndWait();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Shows an error in a dialog and waits until the user closes it
+     * @param header
+     * @param message
+     * @param cause printed to the console, may be null
+     */
+    public void showError(String header, String message, Exception cause) {
+        if (cause != null) cause.printStackTrace();
+        Alert alert = new Alert(AlertType.ERROR);
+        alert.setTitle("Error");
+        alert.setHeaderText(header);
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
+
     /**
      * Returns the main stage.
      * @return
@@ -0,0 +1,98 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Observable list of records that remembers where each record sits, so one
+ * record can be added, removed or updated without searching the list.
+ * The tables sort their own view, so a removal moves the last record into
+ * the gap instead of shifting everything after it.
+ *
+ * @param <T> printer or toner
+ */
+public class RecordList<T> {
+
+	private final ObservableList<T> list = FXCollections.observableArrayList();
+	private final HashMap<T, Integer> positions = new HashMap<>();
+
+	/**
+	 * @return the list to hand to tables
+	 */
+	public ObservableList<T> getList() {
+		return list;
+	}
+
+	/**
+	 * Appends a record, or updates it if it is already in the list
+	 * @param record
+	 */
+	public void add(T record) {
+		if (positions.containsKey(record)) {
+			update(record);
+			return;
+		}
+		positions.put(record, list.size());
+		list.add(record);
+	}
+
+	/**
+	 * Appends records in one change, updating any already in the list
+	 * @param records
+	 */
+	public void addAll(Collection<T> records) {
+		ArrayList<T> appended = new ArrayList<>(records.size());
+		for (T record : records) {
+			if (positions.containsKey(record)) {
+				update(record);
+			} else {
+				positions.put(record, list.size() + appended.size());
+				appended.add(record);
+			}
+		}
+		list.addAll(appended);
+	}
+
+	/**
+	 * Removes a record by moving the last record into its place
+	 * @param record
+	 */
+	public void remove(T record) {
+		Integer position = positions.remove(record);
+		if (position == null) return;
+		int last = list.size() - 1;
+		if (position != last) {
+			T moved = list.get(last);
+			positions.put(moved, position);
+			list.set(position, moved);
+		}
+		list.remove(last);
+	}
+
+	/**
+	 * Replaces a record with itself so filtered and sorted views check
+	 * just that record again
+	 * @param record
+	 */
+	public void update(T record) {
+		Integer position = positions.get(record);
+		if (position != null) list.set(position, record);
+	}
+
+	/**
+	 * Replaces every record
+	 * @param records
+	 */
+	public void setAll(Collection<T> records) {
+		positions.clear();
+		int position = 0;
+		for (T record : records) {
+			positions.put(record, position++);
+		}
+		list.setAll(records);
+	}
+}
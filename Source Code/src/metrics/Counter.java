@@ -0,0 +1,43 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count that only moves while metrics are on. Threads add to it without
+ * getting in each other's way.
+ *
+ */
+public class Counter {
+
+	private final String name;
+	private final LongAdder value = new LongAdder();
+
+	Counter(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void increment() {
+		if (Metrics.isEnabled()) value.increment();
+	}
+
+	public void add(long amount) {
+		if (Metrics.isEnabled()) value.add(amount);
+	}
+
+	public long get() {
+		return value.sum();
+	}
+
+	void reset() {
+		value.reset();
+	}
+
+	@Override
+	public String toString() {
+		return name + "=" + get();
+	}
+}
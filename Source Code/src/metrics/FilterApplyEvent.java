@@ -0,0 +1,25 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for a search result set as a table's predicate,
+ * which runs it over every row on the JavaFX thread
+ *
+ */
+@Name("printertonerdatabase.FilterApply")
+@Label("Filter Apply")
+@Category({ "Printer Toner Database", "Table Filter" })
+@Description("Filter predicate run over the table rows")
+public class FilterApplyEvent extends Event {
+
+	@Label("Rows")
+	public int rows;
+
+	@Label("Matches")
+	public int matches;
+}
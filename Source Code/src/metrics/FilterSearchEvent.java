@@ -0,0 +1,29 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for the search behind an overview table filter,
+ * run on the filter thread
+ *
+ */
+@Name("printertonerdatabase.FilterSearch")
+@Label("Filter Search")
+@Category({ "Printer Toner Database", "Table Filter" })
+@Description("Records matching the filter text looked up")
+public class FilterSearchEvent extends Event {
+
+	@Label("Filter")
+	public String filter;
+
+	@Label("Matches")
+	public int matches;
+
+	@Label("Cancelled")
+	@Description("A newer filter came in before the search finished")
+	public boolean cancelled;
+}
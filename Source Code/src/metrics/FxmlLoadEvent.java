@@ -0,0 +1,26 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for loading a window or dialog from its fxml file
+ *
+ */
+@Name("printertonerdatabase.FxmlLoad")
+@Label("FXML Load")
+@Category({ "Printer Toner Database", "JavaFX" })
+@Description("Scene graph and controller built from an fxml file")
+public class FxmlLoadEvent extends Event {
+
+	@Label("FXML")
+	public String fxml;
+
+	@Label("File Size")
+	@DataAmount
+	public long fileSize;
+}
@@ -0,0 +1,41 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for a whole CSV import, merges included
+ *
+ */
+@Name("printertonerdatabase.Import")
+@Label("Import")
+@Category({ "Printer Toner Database", "Database" })
+@Description("CSV file of printers or toners read into the database")
+public class ImportEvent extends Event {
+
+	@Label("File")
+	public String file;
+
+	@Label("File Size")
+	@DataAmount
+	public long fileSize;
+
+	@Label("Upsert")
+	public boolean upsert;
+
+	@Label("Added")
+	public int added;
+
+	@Label("Updated")
+	public int updated;
+
+	@Label("Unchanged")
+	public int unchanged;
+
+	@Label("Rejected")
+	public int rejected;
+}
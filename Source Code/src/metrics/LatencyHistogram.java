@@ -0,0 +1,164 @@
+package metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram in the style of HdrHistogram. Each power of two is cut
+ * into 64 buckets, so a percentile is within 1.6% of the true value from a
+ * nanosecond to hours, in a fixed 30 KB of counts. Recording is a few
+ * atomic adds and never blocks, any number of threads can record at once.
+ *
+ */
+public class LatencyHistogram implements LatencyMXBean {
+
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/**
+	 * Enough buckets for any positive long
+	 */
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+
+	private final String name;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Records the time since a Metrics.start(), if metrics were on then
+	 * @param start what Metrics.start() returned
+	 */
+	public void recordSince(long start) {
+		if (start != 0) record(System.nanoTime() - start);
+	}
+
+	/**
+	 * @param nanos
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		counts.incrementAndGet(index(nanos));
+		count.increment();
+		total.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		long n = count.sum();
+		return n == 0 ? 0 : millis(total.sum() / (double) n);
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return millis(max.get());
+	}
+
+	@Override
+	public double getP50Millis() {
+		return getPercentileMillis(50);
+	}
+
+	@Override
+	public double getP90Millis() {
+		return getPercentileMillis(90);
+	}
+
+	@Override
+	public double getP99Millis() {
+		return getPercentileMillis(99);
+	}
+
+	@Override
+	public double getP999Millis() {
+		return getPercentileMillis(99.9);
+	}
+
+	/**
+	 * @param percentile from 0 to 100
+	 * @return the latency that many percent of the recordings were at or
+	 * below, as the middle of its bucket, 0 if nothing was recorded
+	 */
+	public double getPercentileMillis(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			n += snapshot[i];
+		}
+		if (n == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return millis(Math.min(middle(i), max.get()));
+			}
+		}
+		return getMaxMillis();
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		total.reset();
+		max.reset();
+	}
+
+	/**
+	 * One line for the log, times in milliseconds
+	 */
+	@Override
+	public String toString() {
+		return String.format("%s count=%d mean=%.3f p50=%.3f p99=%.3f max=%.3f", name, getCount(),
+				getMeanMillis(), getP50Millis(), getP99Millis(), getMaxMillis());
+	}
+
+	/**
+	 * Values below 128 get a bucket each. Above that the shift keeps the top
+	 * seven bits, which start with a 1, so each power of two uses 64 buckets.
+	 */
+	static int index(long value) {
+		int shift = 63 - Long.numberOfLeadingZeros(value | (2 * SUB_BUCKETS - 1)) - SUB_BUCKET_BITS;
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/**
+	 * @return the smallest value that falls in a bucket
+	 */
+	static long lowest(int index) {
+		if (index < 2 * SUB_BUCKETS) return index;
+		int shift = index / SUB_BUCKETS - 1;
+		return (long) (index - shift * SUB_BUCKETS) << shift;
+	}
+
+	private static long middle(int index) {
+		long low = lowest(index);
+		long width = index < 2 * SUB_BUCKETS ? 1 : 1L << (index / SUB_BUCKETS - 1);
+		return low + (width - 1) / 2;
+	}
+
+	private static double millis(double nanos) {
+		return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
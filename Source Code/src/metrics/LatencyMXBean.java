@@ -0,0 +1,27 @@
+package metrics;
+
+/**
+ * How long one kind of operation took, as JMX shows it. Times are in
+ * milliseconds.
+ */
+public interface LatencyMXBean {
+
+	public String getName();
+
+	public long getCount();
+
+	public double getMeanMillis();
+
+	public double getMaxMillis();
+
+	public double getP50Millis();
+
+	public double getP90Millis();
+
+	public double getP99Millis();
+
+	public double getP999Millis();
+
+	//starts counting again from nothing
+	public void reset();
+}
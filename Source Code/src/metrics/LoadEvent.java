@@ -0,0 +1,35 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for loading a save file, journal replay included
+ *
+ */
+@Name("printertonerdatabase.Load")
+@Label("Load")
+@Category({ "Printer Toner Database", "Database" })
+@Description("Save file read into the database, replacing its records")
+public class LoadEvent extends Event {
+
+	@Label("File")
+	public String file;
+
+	@Label("File Size")
+	@DataAmount
+	public long fileSize;
+
+	@Label("Format")
+	public String format;
+
+	@Label("Printers")
+	public int printers;
+
+	@Label("Toners")
+	public int toners;
+}
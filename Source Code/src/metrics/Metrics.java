@@ -0,0 +1,258 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * How long imports, saves, loads, list refreshes and filter passes take,
+ * and how much they did, for watching the program in production. Each
+ * latency and counter is a constant here that the code being measured
+ * records into:
+ *
+ * <pre>
+ *   long start = Metrics.start();
+ *   ...
+ *   Metrics.LOAD.recordSince(start);
+ * </pre>
+ *
+ * While metrics are off, start() returns 0 without reading the clock and
+ * nothing is recorded, so the cost is one volatile read. They are off
+ * unless the program starts with -Dptdb.metrics=true, and can be switched
+ * at any time over JMX. register() publishes everything as platform MBeans
+ * under "printertonerdatabase", and -Dptdb.metrics.log=seconds also writes
+ * a summary to the log that often.
+ *
+ */
+public final class Metrics {
+
+	public static final String DOMAIN = "printertonerdatabase";
+
+	public static final LatencyHistogram IMPORT = new LatencyHistogram("import");
+	public static final LatencyHistogram LOAD = new LatencyHistogram("load");
+	public static final LatencyHistogram SAVE = new LatencyHistogram("save");
+	public static final LatencyHistogram STOCK_UPDATE = new LatencyHistogram("updateTonerStock");
+	public static final LatencyHistogram LIST_REFRESH = new LatencyHistogram("listRefresh");
+	/**
+	 * Search for the filter text, on the filter thread
+	 */
+	public static final LatencyHistogram FILTER_SEARCH = new LatencyHistogram("filterSearch");
+	/**
+	 * Table update with the search result, on the JavaFX thread
+	 */
+	public static final LatencyHistogram FILTER_APPLY = new LatencyHistogram("filterApply");
+
+	public static final Counter ROWS_IMPORTED = new Counter("rowsImported");
+	public static final Counter ROWS_REJECTED = new Counter("rowsRejected");
+	public static final Counter SAVES = new Counter("saves");
+	public static final Counter SAVE_FAILURES = new Counter("saveFailures");
+
+	private static final List<LatencyHistogram> LATENCIES = Arrays.asList(IMPORT, LOAD, SAVE, STOCK_UPDATE,
+			LIST_REFRESH, FILTER_SEARCH, FILTER_APPLY);
+	private static final List<Counter> COUNTERS = Arrays.asList(ROWS_IMPORTED, ROWS_REJECTED, SAVES, SAVE_FAILURES);
+
+	/**
+	 * Heap taken by a printer with its properties and index entries, measured
+	 * on a database of generated records
+	 */
+	static final long PRINTER_BYTES = 2200;
+	static final long TONER_BYTES = 3200;
+
+	private static volatile boolean enabled = Boolean.getBoolean("ptdb.metrics");
+	private static volatile IntSupplier printerCount = () -> 0;
+	private static volatile IntSupplier tonerCount = () -> 0;
+	private static boolean registered;
+	private static ScheduledExecutorService logger;
+
+	private Metrics() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turning metrics off keeps what was recorded so far
+	 * @param on
+	 */
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+	/**
+	 * @return the time to pass to recordSince(), or 0 while metrics are off
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Sets where the record count gauges come from
+	 * @param printers
+	 * @param toners
+	 */
+	public static void watch(IntSupplier printers, IntSupplier toners) {
+		printerCount = printers;
+		tonerCount = toners;
+	}
+
+	/**
+	 * Publishes the metrics as platform MBeans, once, and starts the
+	 * periodic log if -Dptdb.metrics.log asks for it
+	 * @param log where the periodic summary goes
+	 */
+	public static synchronized void register(Consumer<String> log) {
+		if (registered) return;
+		registered = true;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			register(server, new ObjectName(DOMAIN + ":type=Metrics"), new MetricsBean());
+			for (LatencyHistogram latency : LATENCIES) {
+				register(server, new ObjectName(DOMAIN + ":type=Latency,name=" + latency.getName()), latency);
+			}
+		} catch (JMException e) {
+			log.accept("Could not register metrics MBeans: " + e);
+		}
+		Long seconds = Long.getLong("ptdb.metrics.log");
+		if (seconds != null && seconds > 0) startLogging(seconds, TimeUnit.SECONDS, log);
+	}
+
+	private static void register(MBeanServer server, ObjectName name, Object bean) throws JMException {
+		try {
+			server.registerMBean(bean, name);
+		} catch (InstanceAlreadyExistsException e) {
+			// another copy of the classes got there first, keep theirs
+		}
+	}
+
+	/**
+	 * Writes dump() to the log every period on a background thread, and
+	 * turns metrics on so there is something to write
+	 * @param period
+	 * @param unit
+	 * @param log
+	 */
+	public static synchronized void startLogging(long period, TimeUnit unit, Consumer<String> log) {
+		if (logger != null) logger.shutdownNow();
+		enabled = true;
+		logger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metrics-log");
+			thread.setDaemon(true);
+			return thread;
+		});
+		logger.scheduleAtFixedRate(() -> log.accept(dump()), period, period, unit);
+	}
+
+	public static synchronized void stopLogging() {
+		if (logger != null) logger.shutdownNow();
+		logger = null;
+	}
+
+	/**
+	 * @return every counter, gauge and latency, latencies one to a line
+	 */
+	public static String dump() {
+		StringBuilder out = new StringBuilder("metrics");
+		for (Counter counter : COUNTERS) {
+			out.append(' ').append(counter);
+		}
+		out.append(" printers=").append(printerCount.getAsInt());
+		out.append(" toners=").append(tonerCount.getAsInt());
+		out.append(" estimatedDatabaseBytes=").append(estimatedDatabaseBytes());
+		out.append(" heapUsedBytes=").append(heap().getUsed());
+		for (LatencyHistogram latency : LATENCIES) {
+			if (latency.getCount() != 0) out.append(System.lineSeparator()).append("  ").append(latency);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Clears every counter and latency
+	 */
+	public static void reset() {
+		COUNTERS.forEach(Counter::reset);
+		LATENCIES.forEach(LatencyHistogram::reset);
+	}
+
+	private static long estimatedDatabaseBytes() {
+		return printerCount.getAsInt() * PRINTER_BYTES + tonerCount.getAsInt() * TONER_BYTES;
+	}
+
+	private static MemoryUsage heap() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+	}
+
+	private static class MetricsBean implements MetricsMXBean {
+
+		@Override
+		public boolean isEnabled() {
+			return Metrics.isEnabled();
+		}
+
+		@Override
+		public void setEnabled(boolean enabled) {
+			Metrics.setEnabled(enabled);
+		}
+
+		@Override
+		public long getRowsImported() {
+			return ROWS_IMPORTED.get();
+		}
+
+		@Override
+		public long getRowsRejected() {
+			return ROWS_REJECTED.get();
+		}
+
+		@Override
+		public long getSaves() {
+			return SAVES.get();
+		}
+
+		@Override
+		public long getSaveFailures() {
+			return SAVE_FAILURES.get();
+		}
+
+		@Override
+		public int getPrinterCount() {
+			return printerCount.getAsInt();
+		}
+
+		@Override
+		public int getTonerCount() {
+			return tonerCount.getAsInt();
+		}
+
+		@Override
+		public long getEstimatedDatabaseBytes() {
+			return estimatedDatabaseBytes();
+		}
+
+		@Override
+		public long getHeapUsedBytes() {
+			return heap().getUsed();
+		}
+
+		@Override
+		public long getHeapMaxBytes() {
+			return heap().getMax();
+		}
+
+		@Override
+		public String dump() {
+			return Metrics.dump();
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package metrics;
+
+/**
+ * Counters and gauges of the database, as JMX shows them. Metrics can be
+ * turned on and off here while the program runs.
+ */
+public interface MetricsMXBean {
+
+	public boolean isEnabled();
+
+	public void setEnabled(boolean enabled);
+
+	public long getRowsImported();
+
+	public long getRowsRejected();
+
+	public long getSaves();
+
+	public long getSaveFailures();
+
+	public int getPrinterCount();
+
+	public int getTonerCount();
+
+	//rough size of the records and their indexes
+	public long getEstimatedDatabaseBytes();
+
+	public long getHeapUsedBytes();
+
+	public long getHeapMaxBytes();
+
+	//one line per counter and latency, as the periodic log writes it
+	public String dump();
+}
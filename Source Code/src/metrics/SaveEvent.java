@@ -0,0 +1,40 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for writing a save file, on whichever thread wrote it
+ *
+ */
+@Name("printertonerdatabase.Save")
+@Label("Save")
+@Category({ "Printer Toner Database", "Database" })
+@Description("Save file written and moved over the old one")
+public class SaveEvent extends Event {
+
+	@Label("File")
+	public String file;
+
+	@Label("File Size")
+	@DataAmount
+	public long fileSize;
+
+	@Label("Format")
+	public String format;
+
+	@Label("Printers")
+	@Description("0 if the records were generated as they were written")
+	public int printers;
+
+	@Label("Toners")
+	@Description("0 if the records were generated as they were written")
+	public int toners;
+
+	@Label("Succeeded")
+	public boolean succeeded;
+}
@@ -0,0 +1,25 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for copying the records a background save writes.
+ * The copy is taken under the write lock, usually on the JavaFX thread.
+ *
+ */
+@Name("printertonerdatabase.SaveSnapshot")
+@Label("Save Snapshot")
+@Category({ "Printer Toner Database", "Database" })
+@Description("Records copied for a background save")
+public class SnapshotEvent extends Event {
+
+	@Label("Printers")
+	public int printers;
+
+	@Label("Toners")
+	public int toners;
+}
@@ -0,0 +1,24 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for Database.updateTonerStock()
+ *
+ */
+@Name("printertonerdatabase.StockUpdate")
+@Label("Toner Stock Update")
+@Category({ "Printer Toner Database", "Database" })
+@Description("Needed and order worked out again for every toner")
+public class StockUpdateEvent extends Event {
+
+	@Label("Toners")
+	public int toners;
+
+	@Label("Changed")
+	public int changed;
+}
@@ -0,0 +1,393 @@
+package model;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Compact binary snapshot of the database, an alternative to XML that opens
+ * without parsing any text. The file is laid out as
+ *
+ * <pre>
+ *   magic "PTDB", format version
+ *   string dictionary: count, then each string as byte length and UTF-8 bytes
+ *   printer count, then each printer:
+ *     uid, barCode, description, category, location, serialNumber, manufacturer,
+ *     division, department, campus, status, printerNotes, linked toner count and uids
+ *   toner count, then each toner:
+ *     uid, printerModel, brand, model, printers, minStock, curStock, needed,
+ *     order byte, linked printer count and uids
+ * </pre>
+ *
+ * Counts, lengths and string references are unsigned varints and the stock
+ * numbers are zig-zag varints. A string is stored once in the dictionary and
+ * referenced by its index plus one, 0 meaning null. A uid is a tag byte
+ * followed by its 128 bit value, or by a string reference for the rare uid
+ * that is not a UUID. The reader takes the whole file in one read and
+ * parses it from memory. It is not mapped, since Windows will not replace a
+ * file that is still mapped and the next save replaces it.
+ *
+ */
+public class BinarySnapshot {
+
+	public static final String EXTENSION = ".ptdb";
+
+	private static final byte[] MAGIC = {'P', 'T', 'D', 'B'};
+	private static final int VERSION = 1;
+
+	private static final int UID_UUID = 0;
+	private static final int UID_STRING = 1;
+
+	/**
+	 * Checks the first bytes of a file for the snapshot magic number
+	 * @param file
+	 * @return true if the file is a binary snapshot
+	 * @throws IOException
+	 */
+	public static boolean isSnapshot(File file) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			in.readFully(magic);
+		} catch (EOFException e) {
+			return false;
+		}
+		return Arrays.equals(magic, MAGIC);
+	}
+
+	/**
+	 * Writes a snapshot. The records are walked twice, once to build the
+	 * string dictionary and once to write them, so the iterables must give
+	 * the same records both times.
+	 * @param file
+	 * @param printers
+	 * @param toners
+	 * @throws IOException
+	 */
+	public static void write(File file, Iterable<Printer> printers, Iterable<Toner> toners) throws IOException {
+		Dictionary dictionary = new Dictionary();
+		int printerCount = 0;
+		for (Printer printer : printers) {
+			dictionary.addUid(printer.getUid());
+			dictionary.add(printer.getBarCode());
+			dictionary.add(printer.getDescription());
+			dictionary.add(printer.getCategory());
+			dictionary.add(printer.getLocation());
+			dictionary.add(printer.getSerialNumber());
+			dictionary.add(printer.getManufacturer());
+			dictionary.add(printer.getDivision());
+			dictionary.add(printer.getDepartment());
+			dictionary.add(printer.getCampus());
+			dictionary.add(printer.getStatus());
+			dictionary.add(printer.getPrinterNotes());
+			for (String tonerUid : printer.getLinkedToners()) {
+				dictionary.addUid(tonerUid);
+			}
+			printerCount++;
+		}
+		int tonerCount = 0;
+		for (Toner toner : toners) {
+			dictionary.addUid(toner.getUid());
+			dictionary.add(toner.getPrinterModel());
+			dictionary.add(toner.getBrand());
+			dictionary.add(toner.getModel());
+			dictionary.add(toner.getPrinters());
+			for (String printerUid : toner.getLinkedPrinters()) {
+				dictionary.addUid(printerUid);
+			}
+			tonerCount++;
+		}
+
+		try (Output out = new Output(FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+			out.writeRaw(MAGIC);
+			out.writeVarInt(VERSION);
+			out.writeVarInt(dictionary.strings.size());
+			for (String string : dictionary.strings) {
+				out.writeBytes(string.getBytes(StandardCharsets.UTF_8));
+			}
+
+			out.writeVarInt(printerCount);
+			for (Printer printer : printers) {
+				writeUid(out, dictionary, printer.getUid());
+				out.writeVarInt(dictionary.ref(printer.getBarCode()));
+				out.writeVarInt(dictionary.ref(printer.getDescription()));
+				out.writeVarInt(dictionary.ref(printer.getCategory()));
+				out.writeVarInt(dictionary.ref(printer.getLocation()));
+				out.writeVarInt(dictionary.ref(printer.getSerialNumber()));
+				out.writeVarInt(dictionary.ref(printer.getManufacturer()));
+				out.writeVarInt(dictionary.ref(printer.getDivision()));
+				out.writeVarInt(dictionary.ref(printer.getDepartment()));
+				out.writeVarInt(dictionary.ref(printer.getCampus()));
+				out.writeVarInt(dictionary.ref(printer.getStatus()));
+				out.writeVarInt(dictionary.ref(printer.getPrinterNotes()));
+				out.writeVarInt(printer.getLinkedToners().size());
+				for (String tonerUid : printer.getLinkedToners()) {
+					writeUid(out, dictionary, tonerUid);
+				}
+			}
+
+			out.writeVarInt(tonerCount);
+			for (Toner toner : toners) {
+				writeUid(out, dictionary, toner.getUid());
+				out.writeVarInt(dictionary.ref(toner.getPrinterModel()));
+				out.writeVarInt(dictionary.ref(toner.getBrand()));
+				out.writeVarInt(dictionary.ref(toner.getModel()));
+				out.writeVarInt(dictionary.ref(toner.getPrinters()));
+				out.writeSignedVarInt(toner.getMinStock());
+				out.writeSignedVarInt(toner.getCurStock());
+				out.writeSignedVarInt(toner.getNeeded());
+				out.writeByte(toner.getOrder() ? 1 : 0);
+				out.writeVarInt(toner.getLinkedPrinters().size());
+				for (String printerUid : toner.getLinkedPrinters()) {
+					writeUid(out, dictionary, printerUid);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a snapshot, the whole file in one read
+	 * @param file
+	 * @param printerConsumer called with each printer
+	 * @param tonerConsumer called with each toner
+	 * @throws IOException if the file is not a snapshot, is from a newer version or is cut short
+	 */
+	public static void read(File file, Consumer<Printer> printerConsumer, Consumer<Toner> tonerConsumer) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot is too large to read: " + file.getPath());
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				// read until full, a file cut short underflows below
+			}
+			buffer.flip();
+
+			byte[] magic = new byte[MAGIC.length];
+			buffer.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException("Not a database snapshot: " + file.getPath());
+			}
+			int version = readVarInt(buffer);
+			if (version > VERSION) {
+				throw new IOException("Snapshot version " + version + " is newer than this program supports");
+			}
+
+			int stringCount = readVarInt(buffer);
+			// every string takes at least its length byte
+			if (stringCount < 0 || stringCount > buffer.remaining()) {
+				throw new IOException("Snapshot is truncated or corrupt: " + file.getPath());
+			}
+			String[] strings = new String[stringCount + 1];
+			byte[] bytes = new byte[256];
+			for (int i = 1; i < strings.length; i++) {
+				int length = readVarInt(buffer);
+				if (length > bytes.length) bytes = new byte[Math.max(length, bytes.length * 2)];
+				buffer.get(bytes, 0, length);
+				strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+			}
+
+			int printerCount = readVarInt(buffer);
+			for (int i = 0; i < printerCount; i++) {
+				String uid = readUid(buffer, strings);
+				Printer printer = new Printer(uid, new ArrayList<String>());
+				printer.setBarCode(strings[readVarInt(buffer)]);
+				printer.setDescription(strings[readVarInt(buffer)]);
+				printer.setCategory(strings[readVarInt(buffer)]);
+				printer.setLocation(strings[readVarInt(buffer)]);
+				printer.setSerialNumber(strings[readVarInt(buffer)]);
+				printer.setManufacturer(strings[readVarInt(buffer)]);
+				printer.setDivision(strings[readVarInt(buffer)]);
+				printer.setDepartment(strings[readVarInt(buffer)]);
+				printer.setCampus(strings[readVarInt(buffer)]);
+				printer.setStatus(strings[readVarInt(buffer)]);
+				printer.setPrinterNotes(strings[readVarInt(buffer)]);
+				int links = readVarInt(buffer);
+				for (int j = 0; j < links; j++) {
+					printer.getLinkedToners().add(readUid(buffer, strings));
+				}
+				printerConsumer.accept(printer);
+			}
+
+			int tonerCount = readVarInt(buffer);
+			for (int i = 0; i < tonerCount; i++) {
+				String uid = readUid(buffer, strings);
+				Toner toner = new Toner(uid, new ArrayList<String>());
+				toner.setPrinterModel(strings[readVarInt(buffer)]);
+				toner.setBrand(strings[readVarInt(buffer)]);
+				toner.setModel(strings[readVarInt(buffer)]);
+				toner.setPrinters(strings[readVarInt(buffer)]);
+				toner.setMinStock(readSignedVarInt(buffer));
+				toner.setCurStock(readSignedVarInt(buffer));
+				toner.setNeeded(readSignedVarInt(buffer));
+				toner.setOrder(buffer.get() != 0);
+				int links = readVarInt(buffer);
+				for (int j = 0; j < links; j++) {
+					toner.getLinkedPrinters().add(readUid(buffer, strings));
+				}
+				tonerConsumer.accept(toner);
+			}
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+			throw new IOException("Snapshot is truncated or corrupt: " + file.getPath(), e);
+		}
+	}
+
+	private static void writeUid(Output out, Dictionary dictionary, String uid) throws IOException {
+		UUID uuid = asUuid(uid);
+		if (uuid != null) {
+			out.writeByte(UID_UUID);
+			out.writeLong(uuid.getMostSignificantBits());
+			out.writeLong(uuid.getLeastSignificantBits());
+		} else {
+			out.writeByte(UID_STRING);
+			out.writeVarInt(dictionary.ref(uid));
+		}
+	}
+
+	private static String readUid(ByteBuffer buffer, String[] strings) throws IOException {
+		int tag = buffer.get();
+		if (tag == UID_UUID) {
+			return new UUID(buffer.getLong(), buffer.getLong()).toString();
+		} else if (tag == UID_STRING) {
+			return strings[readVarInt(buffer)];
+		}
+		throw new IOException("Unknown uid tag " + tag);
+	}
+
+	/**
+	 * @param uid
+	 * @return the UUID the uid spells, or null if it would not print back the same
+	 */
+	private static UUID asUuid(String uid) {
+		if (uid == null || uid.length() != 36) return null;
+		try {
+			UUID uuid = UUID.fromString(uid);
+			return uuid.toString().equals(uid) ? uuid : null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static int readVarInt(ByteBuffer buffer) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	private static int readSignedVarInt(ByteBuffer buffer) throws IOException {
+		int value = readVarInt(buffer);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Strings in the order they were first seen, each stored once
+	 */
+	private static class Dictionary {
+		final ArrayList<String> strings = new ArrayList<>();
+		final HashMap<String, Integer> refs = new HashMap<>();
+
+		void add(String string) {
+			if (string != null && !refs.containsKey(string)) {
+				strings.add(string);
+				refs.put(string, strings.size());
+			}
+		}
+
+		void addUid(String uid) {
+			if (asUuid(uid) == null) add(uid);
+		}
+
+		int ref(String string) {
+			return string == null ? 0 : refs.get(string);
+		}
+	}
+
+	/**
+	 * Buffered writer of varints and raw bytes to a file channel
+	 */
+	private static class Output implements Closeable {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+		Output(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void writeByte(int b) throws IOException {
+			ensure(1);
+			buffer.put((byte) b);
+		}
+
+		void writeLong(long value) throws IOException {
+			ensure(8);
+			buffer.putLong(value);
+		}
+
+		void writeVarInt(int value) throws IOException {
+			ensure(5);
+			while ((value & ~0x7F) != 0) {
+				buffer.put((byte) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			buffer.put((byte) value);
+		}
+
+		void writeSignedVarInt(int value) throws IOException {
+			writeVarInt((value << 1) ^ (value >> 31));
+		}
+
+		void writeBytes(byte[] bytes) throws IOException {
+			writeVarInt(bytes.length);
+			writeRaw(bytes);
+		}
+
+		void writeRaw(byte[] bytes) throws IOException {
+			int offset = 0;
+			while (offset < bytes.length) {
+				ensure(1);
+				int length = Math.min(buffer.remaining(), bytes.length - offset);
+				buffer.put(bytes, offset, length);
+				offset += length;
+			}
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) flush();
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
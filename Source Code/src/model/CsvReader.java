@@ -0,0 +1,354 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads RFC 4180 CSV straight out of a ByteBuffer, normally a file mapped
+ * into memory. Each call to nextRecord() finds the fields of one record and
+ * remembers where they start and end in the buffer. Nothing is copied until
+ * a field is asked for, and numbers and booleans are parsed from the bytes
+ * without making a String at all.
+ *
+ * Fields are split on commas and records on LF, CRLF or a lone CR, see
+ * isLineEnd(). A field in double
+ * quotes may hold commas, line breaks and doubled quotes. Anything between
+ * a closing quote and the next comma is ignored. The text is UTF-8 and a
+ * byte order mark at the start of the buffer is skipped.
+ *
+ */
+public class CsvReader implements Closeable {
+
+	private static final byte COMMA = ',';
+	private static final byte QUOTE = '"';
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+	private final ByteBuffer buffer;
+	/**
+	 * Separate view of the buffer for bulk copies, so the reader's own
+	 * absolute reads never depend on a position
+	 */
+	private final ByteBuffer copier;
+	private final FileChannel channel;
+	private final int start;
+	private final int limit;
+	private int position;
+
+	private int recordStart;
+	private int recordEnd;
+	private int recordNumber;
+	/**
+	 * Line the current record starts on
+	 */
+	private int recordLine;
+	/**
+	 * Line the next record starts on
+	 */
+	private int nextLine;
+
+	private int fieldCount;
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	/**
+	 * True for quoted fields that contain a doubled quote
+	 */
+	private boolean[] escaped = new boolean[16];
+
+	private byte[] scratch = new byte[256];
+
+	/**
+	 * Reads the buffer from its position to its limit
+	 * @param buffer
+	 */
+	public CsvReader(ByteBuffer buffer) {
+		this(buffer, 1, null);
+	}
+
+	/**
+	 * Reads the buffer from its position to its limit
+	 * @param buffer
+	 * @param firstLine line number of the buffer's first line within its file
+	 */
+	public CsvReader(ByteBuffer buffer, int firstLine) {
+		this(buffer, firstLine, null);
+	}
+
+	private CsvReader(ByteBuffer buffer, int firstLine, FileChannel channel) {
+		this.buffer = buffer;
+		this.copier = buffer.duplicate();
+		this.channel = channel;
+		this.nextLine = firstLine;
+		this.start = buffer.position();
+		this.position = start;
+		this.limit = buffer.limit();
+		if (limit - position >= 3 && (buffer.get(position) & 0xFF) == 0xEF
+				&& (buffer.get(position + 1) & 0xFF) == 0xBB && (buffer.get(position + 2) & 0xFF) == 0xBF) {
+			position += 3;
+		}
+	}
+
+	/**
+	 * Maps a whole file into memory and reads it
+	 * @param file
+	 * @return reader over the file, close it to release the file
+	 * @throws IOException if the file cannot be opened or is larger than 2 GB
+	 */
+	public static CsvReader open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("File is too large to map in one piece: " + file.getPath());
+			}
+			return new CsvReader(channel.map(MapMode.READ_ONLY, 0, size), 1, channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Moves to the next record and finds its fields
+	 * @return false if there are no more records
+	 */
+	public boolean nextRecord() {
+		fieldCount = 0;
+		if (position >= limit) return false;
+		recordStart = position;
+		recordNumber++;
+		recordLine = nextLine;
+		while (true) {
+			int start;
+			int end;
+			boolean hasEscapes = false;
+			if (buffer.get(position) == QUOTE) {
+				start = ++position;
+				while (true) {
+					if (position >= limit) {
+						// unterminated quote, the field runs to the end
+						end = position;
+						break;
+					}
+					byte b = buffer.get(position);
+					if (isLineEnd(buffer, position, limit)) {
+						nextLine++;
+					} else if (b == QUOTE) {
+						if (position + 1 < limit && buffer.get(position + 1) == QUOTE) {
+							hasEscapes = true;
+							position += 2;
+							continue;
+						}
+						end = position++;
+						break;
+					}
+					position++;
+				}
+				while (position < limit && !isDelimiter(buffer.get(position))) {
+					position++;
+				}
+			} else {
+				start = position;
+				while (position < limit && !isDelimiter(buffer.get(position))) {
+					position++;
+				}
+				end = position;
+			}
+			addField(start, end, hasEscapes);
+
+			if (position >= limit) {
+				recordEnd = position;
+				return true;
+			}
+			byte delimiter = buffer.get(position);
+			if (delimiter == COMMA) {
+				position++;
+				if (position >= limit) {
+					// a trailing comma ends in one last empty field
+					addField(position, position, false);
+					recordEnd = position;
+					return true;
+				}
+				continue;
+			}
+			recordEnd = position;
+			position++;
+			nextLine++;
+			if (delimiter == CR && position < limit && buffer.get(position) == LF) position++;
+			return true;
+		}
+	}
+
+	/**
+	 * @return number of fields in the current record
+	 */
+	public int fieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * @return 1 for the first record read, counting records rather than lines
+	 */
+	public int getRecordNumber() {
+		return recordNumber;
+	}
+
+	/**
+	 * @return line of the file the current record starts on, a quoted line
+	 * break in an earlier record counts as a line
+	 */
+	public int getLineNumber() {
+		return recordLine;
+	}
+
+	/**
+	 * @return number of bytes read so far, counted from the buffer's starting position
+	 */
+	public int position() {
+		return position - start;
+	}
+
+	/**
+	 * @param i
+	 * @return true if field i has no characters
+	 */
+	public boolean isEmpty(int i) {
+		checkField(i);
+		return starts[i] == ends[i];
+	}
+
+	/**
+	 * Decodes a field, the only call that makes a String
+	 * @param i
+	 * @return the field's text with quotes removed
+	 */
+	public String field(int i) {
+		checkField(i);
+		int length = copy(i);
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Parses a field as a decimal int, following the rules of Integer.parseInt
+	 * @param i
+	 * @return the value
+	 * @throws NumberFormatException if the field is not an int
+	 */
+	public int intField(int i) {
+		checkField(i);
+		if (escaped[i]) return Integer.parseInt(field(i));
+		int p = starts[i];
+		int end = ends[i];
+		if (p == end) throw new NumberFormatException("Empty field " + i + " in record " + recordNumber);
+		boolean negative = false;
+		byte first = buffer.get(p);
+		if (first == '-' || first == '+') {
+			negative = first == '-';
+			if (++p == end) throw new NumberFormatException(field(i));
+		}
+		// a long has room to pass the int range before the check catches it
+		long limitValue = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+		long value = 0;
+		for (; p < end; p++) {
+			int digit = buffer.get(p) - '0';
+			if (digit < 0 || digit > 9) throw new NumberFormatException(field(i));
+			value = value * 10 + digit;
+			if (value > limitValue) throw new NumberFormatException(field(i));
+		}
+		return (int) (negative ? -value : value);
+	}
+
+	/**
+	 * Parses a field the way Boolean.parseBoolean does
+	 * @param i
+	 * @return true if the field is "true" in any case
+	 */
+	public boolean booleanField(int i) {
+		checkField(i);
+		int start = starts[i];
+		if (escaped[i] || ends[i] - start != 4) return false;
+		return (buffer.get(start) | 0x20) == 't' && (buffer.get(start + 1) | 0x20) == 'r'
+				&& (buffer.get(start + 2) | 0x20) == 'u' && (buffer.get(start + 3) | 0x20) == 'e';
+	}
+
+	/**
+	 * @return view of the current record's bytes, without its line break.
+	 * It shares the buffer's content and is only valid while the buffer is.
+	 */
+	public ByteBuffer recordBytes() {
+		ByteBuffer slice = buffer.duplicate();
+		slice.limit(recordEnd).position(recordStart);
+		return slice.slice();
+	}
+
+	/**
+	 * Closes the file if open() mapped it. The mapping itself is released
+	 * along with the buffer.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel != null) channel.close();
+	}
+
+	/**
+	 * Tells whether the byte at index ends a line. ParallelCsvImporter
+	 * counts lines by this too, so both report the same line numbers.
+	 * An LF or a CR ends a line, except a CR right before an LF, so a CRLF
+	 * is one line break that ends at its LF.
+	 * @param buffer
+	 * @param index
+	 * @param limit end of the input, a CR right before it ends a line
+	 * @return true if the line ends at index
+	 */
+	static boolean isLineEnd(ByteBuffer buffer, int index, int limit) {
+		byte b = buffer.get(index);
+		return b == LF || (b == CR && (index + 1 == limit || buffer.get(index + 1) != LF));
+	}
+
+	private static boolean isDelimiter(byte b) {
+		return b == COMMA || b == LF || b == CR;
+	}
+
+	private void addField(int start, int end, boolean hasEscapes) {
+		if (fieldCount == starts.length) {
+			starts = Arrays.copyOf(starts, fieldCount * 2);
+			ends = Arrays.copyOf(ends, fieldCount * 2);
+			escaped = Arrays.copyOf(escaped, fieldCount * 2);
+		}
+		starts[fieldCount] = start;
+		ends[fieldCount] = end;
+		escaped[fieldCount] = hasEscapes;
+		fieldCount++;
+	}
+
+	private void checkField(int i) {
+		if (i < 0 || i >= fieldCount) {
+			throw new IndexOutOfBoundsException("Record " + recordNumber + " has no field " + i);
+		}
+	}
+
+	/**
+	 * Copies field i into scratch, turning each doubled quote into one
+	 * @return number of bytes copied
+	 */
+	private int copy(int i) {
+		int length = ends[i] - starts[i];
+		if (length > scratch.length) scratch = new byte[Math.max(length, scratch.length * 2)];
+		copier.limit(ends[i]).position(starts[i]);
+		copier.get(scratch, 0, length);
+		if (!escaped[i]) return length;
+		int kept = 0;
+		for (int j = 0; j < length; j++) {
+			scratch[kept++] = scratch[j];
+			if (scratch[j] == QUOTE) j++;
+		}
+		return kept;
+	}
+}
@@ -1,73 +1,1092 @@
 package model;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.util.HashSet;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
 
 import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Marshaller;
+import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
-import javax.xml.bind.annotation.XmlElement;
-import javax.xml.bind.annotation.XmlRootElement;
-import javafx.scene.control.Alert;
-import javafx.scene.control.Alert.AlertType;
+import interfaces.DatabaseListener;
+import interfaces.ErrorHandler;
+import interfaces.InventoryObject;
+import metrics.LoadEvent;
+import metrics.Metrics;
+import metrics.StockUpdateEvent;
 
 
 /**
- * Handles the printer and toner collections. Stores the objects in a hashset.
- * Both printers and toners use a UID and one unique attribute to create the hash. 
+ * Handles the printer and toner collections. Stores the objects in concurrent
+ * hash maps keyed by UID, so linked records can be found without scanning
+ * the whole collection. Printer and toner links are kept in a
+ * LinkGraph and mirrored into both records' linked UID lists. Printers are
+ * also indexed on the attributes the help desk searches by.
+ * Listeners are told about each record that is added, removed or updated.
+ * A ReorderEngine keeps each toner's needed and order values current.
  * Importing CSV files
- * Saving and loading .xml files through JAXB
+ * Saving and loading .xml files, streamed with StAX in the layout JAXB binds
+ * Changes between saves are appended to a journal next to the save file
+ * Every stock movement goes into a StockLedger, which stock is loaded from
+ * Nothing here needs the JavaFX toolkit, so the command line tools use it as
+ * well. Errors are thrown to the caller, or handed to an ErrorHandler when
+ * they happen in the background.
+ *
+ * Safe to use from several threads at once. Lookups, searches and listings
+ * take no lock and may run alongside any change, seeing each record either
+ * before or after it, though a record being edited can show its fields
+ * changing one at a time. Changes that add, remove, edit or relink records
+ * hold the write lock, since one change touches several records and
+ * indexes. Stock changes through adjustStock() and setStock() touch only
+ * their own toner, so they hold the read lock and one of a set of striped
+ * locks picked by UID, and stock changes to different toners run in
+ * parallel. They still meet briefly on the ledger's and the reorder
+ * engine's monitors, a few map operations each, and on the search index's
+ * write lock, which searches do not hold while they scan. Records must be
+ * changed through the methods here once they are in the database. A
+ * printer's setters do keep its indexes in step, but the change is not
+ * journaled and listeners are not told.
  *
  */
-@XmlRootElement(name = "Database")
 public class Database {
 	
 	/**
-	 * Hashset of all printers stored in database
+	 * Every printer in the database keyed by UID
+	 */
+	private final ConcurrentHashMap<String, Printer> printers = new ConcurrentHashMap<>();
+	/**
+	 * Every toner in the database keyed by UID
+	 */
+	private final ConcurrentHashMap<String, Toner> toners = new ConcurrentHashMap<>();
+	/**
+	 * The same printers in UID order, for paging through them
+	 */
+	private final ConcurrentSkipListMap<String, Printer> printersByUid = new ConcurrentSkipListMap<>();
+	/**
+	 * The same toners in UID order
+	 */
+	private final ConcurrentSkipListMap<String, Toner> tonersByUid = new ConcurrentSkipListMap<>();
+	/**
+	 * Held for writing by changes to the records, links and indexes, and for
+	 * reading by stock changes, which leave everything but their toner alone
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	/**
+	 * Stock changes to one toner hold the stripe its UID hashes to
+	 */
+	private final ReentrantLock[] stockLocks = new ReentrantLock[STOCK_LOCK_STRIPES];
+	/**
+	 * Number of stock locks, a power of two
+	 */
+	private static final int STOCK_LOCK_STRIPES = 64;
+	/**
+	 * Links between printers and toners, in both directions
+	 */
+	private LinkGraph linkGraph = new LinkGraph();
+	/**
+	 * Secondary indexes on printer serial number, bar code and categories
+	 */
+	private PrinterIndexes printerIndexes = new PrinterIndexes();
+	/**
+	 * Given to every printer in the database, reindexes it when a setter runs
+	 */
+	private final Consumer<Printer> printerReindexer = this::printerAttributeChanged;
+	/**
+	 * Toners by brand and model, the key toner imports are matched on
+	 */
+	private UniqueIndex<Toner> tonerModelIndex = new UniqueIndex<>(Database::tonerModelKey);
+	/**
+	 * Toners by model alone, what a scanned cartridge box is looked up by
+	 */
+	private UniqueIndex<Toner> tonerCodeIndex = new UniqueIndex<>(Toner::getModel);
+	/**
+	 * Keeps needed and order current and tracks which toners need ordering
+	 */
+	private ReorderEngine reorderEngine = new ReorderEngine();
+	/**
+	 * Substring index behind the printer filter box
+	 */
+	private TrigramIndex<Printer> printerSearchIndex = new TrigramIndex<>(printer -> TrigramIndex.join(
+			printer.getCampus(), printer.getCategory(), printer.getManufacturer(), printer.getLocation(),
+			printer.getBarCode(), printer.getDescription(), printer.getSerialNumber(), printer.getDivision(),
+			printer.getDepartment(), printer.getStatus()));
+	/**
+	 * Substring index behind the toner filter box
+	 */
+	private TrigramIndex<Toner> tonerSearchIndex = new TrigramIndex<>(toner -> TrigramIndex.join(
+			toner.getBrand(), Integer.toString(toner.getCurStock()), Integer.toString(toner.getMinStock()),
+			toner.getModel(), Integer.toString(toner.getNeeded()), Boolean.toString(toner.getOrder()),
+			toner.getPrinterModel(), toner.getPrinters()));
+	/**
+	 * Int used to validate printer import. The number is how
+	 * many values the CSV string should contain. Not necessarily how many
+	 * attributes the printer class has.
+	 */
+	private final static int numOfPrinterAttributes = 10;
+	/**
+	 * Int used to validate toner import. The number is how
+	 * many values the CSV string should contain. Not necessarily how many
+	 * attributes the toner class has.
+	 */
+	private static final int numOfTonerAttributes = 8;
+	
+	/**
+	 * Told about every change to the records
+	 */
+	private final CopyOnWriteArrayList<DatabaseListener> listeners = new CopyOnWriteArrayList<>();
+	/**
+	 * True while a load or an import runs. Single record events are held
+	 * back and one event for the whole batch is sent at the end instead.
+	 * Only set while the write lock is held.
+	 */
+	private volatile boolean batching;
+	
+	/**
+	 * Shared JAXB context, see jaxbContext()
+	 */
+	private static JAXBContext jaxbContext;
+	
+    /**
+     * Current save location
+     */
+    private volatile File saveFile;
+	/**
+	 * Journal of the changes made since saveFile was last written, null if
+	 * there is no save file yet or journaling failed
+	 */
+	private volatile Journal journal;
+	/**
+	 * History of every stock movement. Lives only in memory until there is
+	 * a save file to keep it next to.
+	 */
+	private volatile StockLedger ledger = new StockLedger();
+	/**
+	 * True while a file loads, stock is set from the ledger afterwards
+	 * instead of differences being recorded as movements
+	 */
+	private boolean loading;
+	/**
+	 * Writes save files in the background
+	 */
+	private SavePipeline savePipeline;
+	/**
+	 * Told about errors in background saves and the journal
+	 */
+	private volatile ErrorHandler errorHandler = (header, message, cause) -> {
+		System.err.println(header + ": " + message);
+		if (cause != null) cause.printStackTrace();
+	};
+	/**
+	 * Counts changes to the records. The database is dirty while this is
+	 * ahead of savedModCount.
+	 */
+	private final AtomicLong modCount = new AtomicLong();
+	/**
+	 * Value of modCount when the data was last known to be saved
+	 */
+	private final AtomicLong savedModCount = new AtomicLong();
+	/**
+	 * True if changes are saved by themselves once editing pauses
+	 */
+	private volatile boolean autosave;
+	/**
+	 * A save compacts once the journal is this many bytes past a quarter of the save file
+	 */
+	private static final long COMPACT_THRESHOLD = 64 * 1024;
+	/**
+	 * How long editing has to pause before an autosave
+	 */
+	private static final long AUTOSAVE_DELAY_MILLIS = 5000;
+	/**
+	 * Longest a stock movement waits in memory before the ledger is written
+	 */
+	private static final long LEDGER_FLUSH_MILLIS = 1000;
+    
+    
+    /**
+     * @return read only view of every printer, safe to walk while the database changes
+     */
+    public Collection<Printer> getPrinters() {
+        return Collections.unmodifiableCollection(printers.values());
+    }
+
+    /**
+     * @return read only view of every toner, safe to walk while the database changes
+     */
+    public Collection<Toner> getToners() {
+        return Collections.unmodifiableCollection(toners.values());
+    }
+
+    /**
+     * @param after UID the view starts after, null to start at the first
+     * @return read only view of the printers in UID order, safe to walk while the database changes
+     */
+    public Collection<Printer> getPrintersAfter(String after) {
+        return Collections.unmodifiableCollection(
+                (after == null ? printersByUid : printersByUid.tailMap(after, false)).values());
+    }
+
+    /**
+     * @param after UID the view starts after, null to start at the first
+     * @return read only view of the toners in UID order, safe to walk while the database changes
+     */
+    public Collection<Toner> getTonersAfter(String after) {
+        return Collections.unmodifiableCollection(
+                (after == null ? tonersByUid : tonersByUid.tailMap(after, false)).values());
+    }
+
+    public int getPrinterCount() {
+        return printers.size();
+    }
+
+    public int getTonerCount() {
+        return toners.size();
+    }
+    
+    public ReorderEngine getReorderEngine() {
+        return reorderEngine;
+    }
+    
+    
+	/**
+	 * Database whose background save results arrive on the writer thread,
+	 * fine for a program that waits for its saves with close()
+	 */
+	public Database() {
+		this(Runnable::run);
+	}
+
+	/**
+	 * @param events runs the results of background saves and autosaves.
+	 * The GUI passes Platform::runLater so they arrive on the JavaFX thread.
+	 */
+	public Database(Executor events) {
+		super();
+		for (int i = 0; i < stockLocks.length; i++) {
+			stockLocks[i] = new ReentrantLock();
+		}
+		this.savePipeline = new SavePipeline(events);
+	}
+
+	/**
+	 * Sets where errors that cannot be thrown to a caller are reported.
+	 * By default they are printed to standard error.
+	 * @param errorHandler
+	 */
+	public void setErrorHandler(ErrorHandler errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+
+	public void addListener(DatabaseListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(DatabaseListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Sends an event to every listener, unless a load or import is running
+	 * @param event
+	 */
+	private void fire(Consumer<DatabaseListener> event) {
+		if (batching) return;
+		for (DatabaseListener listener : listeners) {
+			event.accept(listener);
+		}
+	}
+
+	void setBatching(boolean batching) {
+		this.batching = batching;
+	}
+
+	/**
+	 * @return the lock held by every change except stock changes, for
+	 * imports that make many changes in one go
+	 */
+	Lock writeLock() {
+		return lock.writeLock();
+	}
+
+	/**
+	 * Tells every listener to read all the records again
+	 */
+	void fireReloaded() {
+		fire(DatabaseListener::databaseReloaded);
+	}
+
+	/**
+	 * Adds a printer to the database, replacing any printer with the same UID.
+	 * The printer's linked toners are linked in the graph as well.
+	 * Adding a printer that is already in the database saves the changes
+	 * made through its setters into the indexes and is reported as an update,
+	 * but updatePrinter() is the safe way to do that.
+	 * @param printer
+	 */
+	public void addPrinter(Printer printer) {
+		lock.writeLock().lock();
+		try {
+			Printer old = printers.get(printer.getUid());
+			if (old != null && old != printer) removePrinter(old);
+			if (old == printer) {
+				printerIndexes.update(printer);
+			} else {
+				printerIndexes.add(printer);
+			}
+			printerSearchIndex.update(printer);
+			syncPrinterLinks(printer);
+			printers.put(printer.getUid(), printer);
+			printersByUid.put(printer.getUid(), printer);
+			printer.setAttributeListener(printerReindexer);
+			recordChange(journal -> journal.putPrinter(printer));
+			if (old == printer) {
+				fire(listener -> listener.printerUpdated(printer));
+			} else {
+				fire(listener -> listener.printerAdded(printer));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Edits a printer and saves the changes into the indexes, the links and
+	 * the journal in one step. Other changes wait until it is done.
+	 * A printer that is not in the database yet is added.
+	 * @param printer
+	 * @param edit sets the printer's new values, called while the write lock is held
+	 */
+	public void updatePrinter(Printer printer, Consumer<? super Printer> edit) {
+		lock.writeLock().lock();
+		try {
+			edit.accept(printer);
+			addPrinter(printer);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Reindexes a printer in the database whose setters were called outside
+	 * updatePrinter(). Changes made here with the write lock held are
+	 * reindexed by the method making them.
+	 * @param printer
+	 */
+	private void printerAttributeChanged(Printer printer) {
+		if (lock.isWriteLockedByCurrentThread()) return;
+		lock.writeLock().lock();
+		try {
+			if (printers.get(printer.getUid()) != printer) return;
+			printerIndexes.update(printer);
+			printerSearchIndex.update(printer);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a printer from the database and unlinks it from every toner
+	 * @param printer
+	 */
+	public void removePrinter(Printer printer) {
+		lock.writeLock().lock();
+		try {
+			printers.remove(printer.getUid());
+			printersByUid.remove(printer.getUid());
+			printer.setAttributeListener(null);
+			printerIndexes.remove(printer);
+			printerSearchIndex.remove(printer);
+			for (String tonerUid : linkGraph.removePrinter(printer.getUid())) {
+				Toner toner = toners.get(tonerUid);
+				toner.setLinkedPrinters(without(toner.getLinkedPrinters(), printer.getUid()));
+				refreshPrinterCount(toner);
+				tonerChanged(toner);
+			}
+			recordChange(journal -> journal.removePrinter(printer.getUid()));
+			fire(listener -> listener.printerRemoved(printer));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a toner to the database, replacing any toner with the same UID.
+	 * The toner's linked printers are linked in the graph as well and its
+	 * needed and order values are worked out from its stock.
+	 * Adding a toner that is already in the database is reported as an update,
+	 * but updateToner() is the safe way to do that.
+	 * @param toner
+	 */
+	public void addToner(Toner toner) {
+		lock.writeLock().lock();
+		try {
+			Toner old = toners.get(toner.getUid());
+			if (old != null && old != toner) removeToner(old);
+			if (old == toner) {
+				tonerModelIndex.update(toner);
+				tonerCodeIndex.update(toner);
+			} else {
+				tonerModelIndex.add(toner);
+				tonerCodeIndex.add(toner);
+			}
+			syncTonerLinks(toner);
+			reorderEngine.track(toner);
+			tonerSearchIndex.update(toner);
+			toners.put(toner.getUid(), toner);
+			tonersByUid.put(toner.getUid(), toner);
+			reconcileStock(toner);
+			recordChange(journal -> journal.putToner(toner));
+			if (old == toner) {
+				fire(listener -> listener.tonerUpdated(toner));
+			} else {
+				fire(listener -> listener.tonerAdded(toner));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Edits a toner and saves the changes into the indexes, the links and
+	 * the journal in one step. Other changes wait until it is done.
+	 * A toner that is not in the database yet is added.
+	 * @param toner
+	 * @param edit sets the toner's new values, called while the write lock is held
+	 */
+	public void updateToner(Toner toner, Consumer<? super Toner> edit) {
+		lock.writeLock().lock();
+		try {
+			edit.accept(toner);
+			addToner(toner);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a toner from the database and unlinks it from every printer
+	 * @param toner
+	 */
+	public void removeToner(Toner toner) {
+		lock.writeLock().lock();
+		try {
+			toners.remove(toner.getUid());
+			tonersByUid.remove(toner.getUid());
+			tonerModelIndex.remove(toner);
+			tonerCodeIndex.remove(toner);
+			tonerSearchIndex.remove(toner);
+			reorderEngine.untrack(toner);
+			for (String printerUid : linkGraph.removeToner(toner.getUid())) {
+				Printer printer = printers.get(printerUid);
+				printer.setLinkedToners(without(printer.getLinkedToners(), toner.getUid()));
+			}
+			recordChange(journal -> journal.removeToner(toner.getUid()));
+			fire(listener -> listener.tonerRemoved(toner));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Puts cartridges into stock, see changeStock()
+	 * @param toner
+	 * @param quantity
+	 * @return the new stock
+	 * @throws IllegalArgumentException if quantity is not positive
+	 * @throws ArithmeticException if the stock would overflow an int
+	 * @throws NoSuchElementException if the toner is not in the database
+	 */
+	public int receive(Toner toner, int quantity) {
+		if (quantity <= 0) throw new IllegalArgumentException("Quantity must be positive, it is " + quantity);
+		return changeStock(toner, StockMovement.Kind.RECEIVE, stock -> Math.addExact(stock, quantity));
+	}
+
+	/**
+	 * Takes cartridges out of stock, see changeStock()
+	 * @param toner
+	 * @param quantity
+	 * @return the new stock
+	 * @throws IllegalArgumentException if quantity is not positive or there is not that much in stock
+	 * @throws NoSuchElementException if the toner is not in the database
+	 */
+	public int issue(Toner toner, int quantity) {
+		if (quantity <= 0) throw new IllegalArgumentException("Quantity must be positive, it is " + quantity);
+		return changeStock(toner, StockMovement.Kind.ISSUE, stock -> stock - quantity);
+	}
+
+	/**
+	 * Changes a toner's current stock by an amount, as a receipt if it goes
+	 * up and an issue if it goes down, see changeStock()
+	 * @param toner
+	 * @param delta amount taken out of stock when negative, put in when positive
+	 * @return the new stock
+	 * @throws IllegalArgumentException if the stock would go below 0
+	 * @throws ArithmeticException if the stock would overflow an int
+	 * @throws NoSuchElementException if the toner is not in the database
+	 */
+	public int adjustStock(Toner toner, int delta) {
+		return delta < 0 ? issue(toner, -delta) : delta > 0 ? receive(toner, delta) : toner.getCurStock();
+	}
+
+	/**
+	 * Sets a toner's current stock after a count, recorded as an adjustment,
+	 * see changeStock()
+	 * @param toner
+	 * @param stock
+	 * @return the new stock
+	 * @throws IllegalArgumentException if stock is below 0
+	 * @throws NoSuchElementException if the toner is not in the database
+	 */
+	public int setStock(Toner toner, int stock) {
+		return changeStock(toner, StockMovement.Kind.ADJUST, old -> stock);
+	}
+
+	/**
+	 * Changes a toner's stock and appends the movement to the ledger, in
+	 * constant time. The movement is written to the disk with the others
+	 * made within LEDGER_FLUSH_MILLIS, rather than journaled on its own.
+	 * Only the change itself holds the toner's stripe. Reindexing it for
+	 * search and telling the listeners come after, still under the read
+	 * lock so the toner cannot be removed in between.
+	 */
+	private int changeStock(Toner toner, StockMovement.Kind kind, IntUnaryOperator change) {
+		lock.readLock().lock();
+		try {
+			int stock;
+			ReentrantLock stockLock = stockLocks[toner.getUid().hashCode() & (STOCK_LOCK_STRIPES - 1)];
+			stockLock.lock();
+			try {
+				if (toners.get(toner.getUid()) != toner) {
+					throw new NoSuchElementException("Toner " + toner.getUid() + " is not in the database");
+				}
+				int old = toner.getCurStock();
+				stock = change.applyAsInt(old);
+				if (stock < 0) {
+					throw new IllegalArgumentException("Stock cannot go below 0, it is " + old);
+				}
+				if (stock == old) return stock;
+				ledger.append(new StockMovement(toner.getUid(), kind, stock - old, System.currentTimeMillis()));
+				// the reorder engine recalculates needed and order as this is set
+				toner.setCurStock(stock);
+			} finally {
+				stockLock.unlock();
+			}
+			// reads the toner's text as it is now, so of two racing updates the last indexes the newest stock
+			tonerSearchIndex.update(toner);
+			countChange();
+			savePipeline.scheduleFlush(this::flushLedger, LEDGER_FLUSH_MILLIS);
+			fire(listener -> listener.tonerUpdated(toner));
+			return stock;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Records an adjustment for any difference between a toner's stock and
+	 * its ledger balance, which is how hand edits and imports show up in the
+	 * history. Called with the write lock held.
+	 * @param toner
+	 */
+	private void reconcileStock(Toner toner) {
+		if (loading) return;
+		Integer balance = ledger.balance(toner.getUid());
+		int change = toner.getCurStock() - (balance == null ? 0 : balance);
+		if (change == 0) return;
+		ledger.append(new StockMovement(toner.getUid(), StockMovement.Kind.ADJUST, change, System.currentTimeMillis()));
+		savePipeline.scheduleFlush(this::flushLedger, LEDGER_FLUSH_MILLIS);
+	}
+
+	/**
+	 * Sets every toner's stock to its ledger balance after a load. A toner
+	 * the ledger has never seen gets an opening adjustment for the stock it
+	 * was saved with, so files from before the ledger carry on as they were.
+	 * A journaled stock edit is in the ledger as well, recordChange() writes
+	 * its adjustment first, and stock changes that are not journaled are
+	 * only in the ledger, so its balance is always the newer value.
+	 */
+	private void deriveStock() {
+		for (Toner toner : toners.values()) {
+			Integer balance = ledger.balance(toner.getUid());
+			if (balance == null) {
+				reconcileStock(toner);
+			} else if (balance != toner.getCurStock()) {
+				toner.setCurStock(balance);
+				tonerSearchIndex.update(toner);
+			}
+		}
+	}
+
+	/**
+	 * Writes the ledger's pending movements and archives the ledger file
+	 * once it is full, run on the background writer. A failure is reported
+	 * through the callback executor, like a failed save.
+	 */
+	private void flushLedger() {
+		try {
+			ledger.flush();
+			ledger.archiveIfFull(toners.keySet());
+		} catch (IOException e) {
+			savePipeline.runCallback(() -> errorHandler.handleError("Stock movements are not being saved",
+					"Could not write to the stock ledger, the movements are kept\n"
+					+ "and written again with the next save.", e));
+		}
+	}
+
+	/**
+	 * @param toner
+	 * @return the toner's stock movements since the ledger was last
+	 * archived, oldest first, starting with the balance carried over
+	 */
+	public List<StockMovement> getMovements(Toner toner) {
+		return ledger.getMovements(toner.getUid());
+	}
+
+	/**
+	 * Reads the archived ledger segments as well, so takes time
+	 * @param toner
+	 * @return every stock movement the toner ever had, oldest first
+	 * @throws IOException if an archived segment cannot be read
+	 */
+	public List<StockMovement> getHistory(Toner toner) throws IOException {
+		return ledger.history(toner.getUid());
+	}
+
+	/**
+	 * Replaces the toners linked to a printer
+	 * @param printer
+	 * @param toners
+	 */
+	public void setLinkedToners(Printer printer, Collection<Toner> toners) {
+		ArrayList<String> uids = new ArrayList<String>();
+		for (Toner toner : toners) {
+			uids.add(toner.getUid());
+		}
+		lock.writeLock().lock();
+		try {
+			printer.setLinkedToners(uids);
+			syncPrinterLinks(printer);
+			recordChange(journal -> journal.putPrinter(printer));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Replaces the printers linked to a toner
+	 * @param toner
+	 * @param printers
+	 */
+	public void setLinkedPrinters(Toner toner, Collection<Printer> printers) {
+		ArrayList<String> uids = new ArrayList<String>();
+		for (Printer printer : printers) {
+			uids.add(printer.getUid());
+		}
+		lock.writeLock().lock();
+		try {
+			toner.setLinkedPrinters(uids);
+			syncTonerLinks(toner);
+			recordChange(journal -> journal.putToner(toner));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Looks up a printer by its UID in constant time
+	 * @param uid
+	 * @return the printer, or null if no printer has that UID
+	 */
+	public Printer findPrinterByUid(String uid) {
+		return printers.get(uid);
+	}
+
+	/**
+	 * Looks up a printer by serial number, ignoring case and surrounding spaces
+	 * @param serialNumber
+	 * @return the printer, or null if no printer has that serial number
+	 */
+	public Printer findPrinterBySerialNumber(String serialNumber) {
+		return printerIndexes.serialNumber.get(serialNumber);
+	}
+
+	/**
+	 * Looks up a printer by bar code, ignoring case and surrounding spaces
+	 * @param barCode
+	 * @return the printer, or null if no printer has that bar code
+	 */
+	public Printer findPrinterByBarCode(String barCode) {
+		return printerIndexes.barCode.get(barCode);
+	}
+
+	/**
+	 * @param campus
+	 * @return read only set of the printers on the campus
+	 */
+	public Set<Printer> findPrintersByCampus(String campus) {
+		return printerIndexes.campus.get(campus);
+	}
+
+	/**
+	 * @param location
+	 * @return read only set of the printers at the location
+	 */
+	public Set<Printer> findPrintersByLocation(String location) {
+		return printerIndexes.location.get(location);
+	}
+
+	/**
+	 * @param manufacturer
+	 * @return read only set of the printers made by the manufacturer
+	 */
+	public Set<Printer> findPrintersByManufacturer(String manufacturer) {
+		return printerIndexes.manufacturer.get(manufacturer);
+	}
+
+	/**
+	 * @param status
+	 * @return read only set of the printers with the status
+	 */
+	public Set<Printer> findPrintersByStatus(String status) {
+		return printerIndexes.status.get(status);
+	}
+
+	/**
+	 * Finds the printers with the filter text in any of the columns
+	 * shown in the printer table, ignoring case
+	 * @param filter
+	 * @return the matching printers
+	 */
+	public Set<Printer> searchPrinters(String filter) {
+		return printerSearchIndex.search(filter);
+	}
+
+	/**
+	 * Checks one printer the way searchPrinters() does
+	 * @param printer
+	 * @param filter
+	 * @return true if searchPrinters() would find the printer
+	 */
+	public boolean printerMatches(Printer printer, String filter) {
+		return printerSearchIndex.matches(printer, filter);
+	}
+
+	/**
+	 * Finds the toners with the filter text in any of the columns
+	 * shown in the toner table, ignoring case
+	 * @param filter
+	 * @return the matching toners
+	 */
+	public Set<Toner> searchToners(String filter) {
+		return tonerSearchIndex.search(filter);
+	}
+
+	/**
+	 * Checks one toner the way searchToners() does
+	 * @param toner
+	 * @param filter
+	 * @return true if searchToners() would find the toner
+	 */
+	public boolean tonerMatches(Toner toner, String filter) {
+		return tonerSearchIndex.matches(toner, filter);
+	}
+
+	/**
+	 * Looks up a toner by brand and model, ignoring case and surrounding spaces
+	 * @param brand
+	 * @param model
+	 * @return the toner, or null if no toner has that brand and model
+	 */
+	public Toner findTonerByModel(String brand, String model) {
+		return tonerModelIndex.get(tonerModelKey(brand, model));
+	}
+
+	/**
+	 * Looks up a toner by its UID in constant time
+	 * @param uid
+	 * @return the toner, or null if no toner has that UID
+	 */
+	public Toner findTonerByUid(String uid) {
+		return toners.get(uid);
+	}
+
+	/**
+	 * Looks up the toners a scanned code stands for, by model or failing
+	 * that by UID, ignoring case and surrounding spaces. Several toners can
+	 * share a model, such as the drums of one printer in each color, and
+	 * then every one of them is returned for the caller to choose from.
+	 * @param code
+	 * @return read only list of the matching toners, empty if there are none
 	 */
-	private HashSet<Printer> printerSet = new HashSet<>();
+	public List<Toner> findTonersByCode(String code) {
+		List<Toner> matches = tonerCodeIndex.getAll(code);
+		if (!matches.isEmpty() || code == null) return matches;
+		Toner toner = toners.get(code.trim());
+		return toner == null ? Collections.<Toner>emptyList() : Collections.singletonList(toner);
+	}
+
 	/**
-	 * Hashset of all toners stored in database
+	 * Makes the link graph match printer.getLinkedToners(). Links that were
+	 * added or removed are mirrored into the toners' lists. UIDs of toners
+	 * that are not in the database are dropped.
+	 * @param printer
 	 */
-    private HashSet<Toner> tonerSet = new HashSet<>();
+	private void syncPrinterLinks(Printer printer) {
+		String uid = printer.getUid();
+		LinkedHashSet<String> wanted = new LinkedHashSet<String>();
+		for (String tonerUid : printer.getLinkedToners()) {
+			if (toners.containsKey(tonerUid)) wanted.add(tonerUid);
+		}
+		for (String tonerUid : new ArrayList<String>(linkGraph.getLinkedToners(uid))) {
+			if (!wanted.contains(tonerUid)) {
+				linkGraph.unlink(uid, tonerUid);
+				Toner toner = toners.get(tonerUid);
+				toner.setLinkedPrinters(without(toner.getLinkedPrinters(), uid));
+				refreshPrinterCount(toner);
+				tonerChanged(toner);
+			}
+		}
+		for (String tonerUid : wanted) {
+			if (linkGraph.link(uid, tonerUid)) {
+				Toner toner = toners.get(tonerUid);
+				toner.setLinkedPrinters(with(toner.getLinkedPrinters(), uid));
+				refreshPrinterCount(toner);
+				tonerChanged(toner);
+			}
+		}
+		printer.setLinkedToners(new ArrayList<String>(wanted));
+	}
+
 	/**
-	 * Int used to validate printer import. The number is how
-	 * many values the CSV string should contain. Not necessarily how many
-	 * attributes the printer class has.
+	 * Makes the link graph match toner.getLinkedPrinters(). Links that were
+	 * added or removed are mirrored into the printers' lists. UIDs of printers
+	 * that are not in the database are dropped.
+	 * @param toner
 	 */
-	private final static int numOfPrinterAttributes = 10;
+	private void syncTonerLinks(Toner toner) {
+		String uid = toner.getUid();
+		LinkedHashSet<String> wanted = new LinkedHashSet<String>();
+		for (String printerUid : toner.getLinkedPrinters()) {
+			if (printers.containsKey(printerUid)) wanted.add(printerUid);
+		}
+		for (String printerUid : new ArrayList<String>(linkGraph.getLinkedPrinters(uid))) {
+			if (!wanted.contains(printerUid)) {
+				linkGraph.unlink(printerUid, uid);
+				Printer printer = printers.get(printerUid);
+				printer.setLinkedToners(without(printer.getLinkedToners(), uid));
+			}
+		}
+		for (String printerUid : wanted) {
+			if (linkGraph.link(printerUid, uid)) {
+				Printer printer = printers.get(printerUid);
+				printer.setLinkedToners(with(printer.getLinkedToners(), uid));
+			}
+		}
+		toner.setLinkedPrinters(new ArrayList<String>(wanted));
+		refreshPrinterCount(toner);
+	}
+
 	/**
-	 * Int used to validate toner import. The number is how
-	 * many values the CSV string should contain. Not necessarily how many
-	 * attributes the toner class has.
+	 * Linked UID lists are replaced rather than changed, so a reader walking
+	 * one never sees it change under it
+	 * @return copy of uids with uid on the end
 	 */
-	private static final int numOfTonerAttributes = 8;
-	
-    /**
-     * Current save location
-     */
-    private File saveFile;
-    
-    
-    @XmlElement(name = "printer", type = Printer.class)
-    public HashSet<Printer> getPrinterSet() {
-        return printerSet;
-    }
+	private static ArrayList<String> with(ArrayList<String> uids, String uid) {
+		ArrayList<String> copy = new ArrayList<String>(uids.size() + 1);
+		copy.addAll(uids);
+		copy.add(uid);
+		return copy;
+	}
 
-    @XmlElement(name = "toner", type = Toner.class)
-    public HashSet<Toner> getTonerSet() {
-        return tonerSet;
-    }
-    
-    
-	public Database() {
-		super();
-		this.printerSet = new HashSet<Printer>();
-		this.tonerSet = new HashSet<Toner>();
+	/**
+	 * @return copy of uids without uid
+	 */
+	private static ArrayList<String> without(ArrayList<String> uids, String uid) {
+		ArrayList<String> copy = new ArrayList<String>(uids);
+		copy.remove(uid);
+		return copy;
+	}
+
+	/**
+	 * Sets the toner's printers column to the number of linked printers
+	 * @param toner
+	 */
+	private void refreshPrinterCount(Toner toner) {
+		toner.setPrinters(Integer.toString(linkGraph.printerCount(toner.getUid())));
+	}
+
+	/**
+	 * Reindexes a toner that changed as a side effect of another record
+	 * changing and tells the listeners
+	 * @param toner
+	 */
+	private void tonerChanged(Toner toner) {
+		tonerSearchIndex.update(toner);
+		fire(listener -> listener.tonerUpdated(toner));
+	}
+
+	/**
+	 * Counts a change, restarts the autosave delay and appends the change to
+	 * the journal. If the journal cannot be written it is dropped and the
+	 * user is warned, the next full save starts a new one.
+	 * Stock is loaded from the ledger, so the ledger movements waiting to be
+	 * flushed are written first. A toner edit's adjustment then never
+	 * reaches the disk later than its journal entry, and a crash between
+	 * the two cannot undo the edit.
+	 * Called with either lock held, so the journal is not swapped under it.
+	 * @param entry
+	 */
+	private void recordChange(JournalEntry entry) {
+		countChange();
+		Journal journal = this.journal;
+		if (journal == null) return;
+		try {
+			ledger.flush(false);
+		} catch (IOException e) {
+			errorHandler.handleError("Stock movements are not being saved",
+					"Could not write to the stock ledger, the movements are kept\n"
+					+ "and written again with the next save.", e);
+		}
+		try {
+			entry.writeTo(journal);
+		} catch (IOException e) {
+			closeJournal();
+			errorHandler.handleError("Changes are no longer being journaled",
+					"Could not write to the journal of:\n" + saveFile.getPath()
+					+ "\nUse Save As to keep your changes.", e);
+		}
+	}
+
+	/**
+	 * Counts a change and restarts the autosave delay
+	 */
+	private void countChange() {
+		modCount.incrementAndGet();
+		if (autosave && saveFile != null) {
+			savePipeline.scheduleAutosave(this::autosave, AUTOSAVE_DELAY_MILLIS);
+		}
+	}
+
+	/**
+	 * One change written to the journal
+	 */
+	private interface JournalEntry {
+		void writeTo(Journal journal) throws IOException;
+	}
+
+	/**
+	 * Closes the journal, an empty one is deleted so it does not litter the folder
+	 */
+	private void closeJournal() {
+		Journal journal = this.journal;
+		if (journal == null) return;
+		this.journal = null;
+		try {
+			journal.closeAndDeleteIfEmpty();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param toner
+	 * @return the key the toner is indexed under by brand and model
+	 */
+	private static String tonerModelKey(Toner toner) {
+		return tonerModelKey(toner.getBrand(), toner.getModel());
+	}
+
+	/**
+	 * @param brand
+	 * @param model
+	 * @return brand and model trimmed and joined, or null if the model is blank
+	 */
+	static String tonerModelKey(String brand, String model) {
+		String trimmedModel = model == null ? "" : model.trim();
+		if (trimmedModel.isEmpty()) return null;
+		String trimmedBrand = brand == null ? "" : brand.trim();
+		return trimmedBrand + TrigramIndex.FIELD_SEPARATOR + trimmedModel;
+	}
+
+	/**
+	 * Replaces every record and rebuilds the secondary and search indexes and
+	 * the link graph from them. Used when loading a file.
+	 * A link listed on either side is kept and written back to both sides.
+	 * Called with the write lock held.
+	 */
+	private void replaceAll(Collection<Printer> newPrinters, Collection<Toner> newToners) {
+		reorderEngine.clear(toners.values());
+		for (Printer printer : printers.values()) {
+			printer.setAttributeListener(null);
+		}
+		printers.clear();
+		printersByUid.clear();
+		toners.clear();
+		tonersByUid.clear();
+		linkGraph.clear();
+		printerIndexes.clear();
+		tonerModelIndex.clear();
+		tonerCodeIndex.clear();
+		printerSearchIndex.clear();
+		tonerSearchIndex.clear();
+		for (Printer printer : newPrinters) {
+			printers.put(printer.getUid(), printer);
+			printersByUid.put(printer.getUid(), printer);
+		}
+		for (Toner toner : newToners) {
+			toners.put(toner.getUid(), toner);
+			tonersByUid.put(toner.getUid(), toner);
+		}
+		for (Printer printer : printers.values()) {
+			printerIndexes.add(printer);
+			printerSearchIndex.update(printer);
+			printer.setAttributeListener(printerReindexer);
+		}
+		for (Toner toner : toners.values()) {
+			tonerModelIndex.add(toner);
+			tonerCodeIndex.add(toner);
+		}
+		for (Printer printer : printers.values()) {
+			for (String tonerUid : printer.getLinkedToners()) {
+				if (toners.containsKey(tonerUid)) linkGraph.link(printer.getUid(), tonerUid);
+			}
+		}
+		for (Toner toner : toners.values()) {
+			for (String printerUid : toner.getLinkedPrinters()) {
+				if (printers.containsKey(printerUid)) linkGraph.link(printerUid, toner.getUid());
+			}
+		}
+		for (Printer printer : printers.values()) {
+			printer.setLinkedToners(new ArrayList<String>(linkGraph.getLinkedToners(printer.getUid())));
+		}
+		for (Toner toner : toners.values()) {
+			toner.setLinkedPrinters(new ArrayList<String>(linkGraph.getLinkedPrinters(toner.getUid())));
+			refreshPrinterCount(toner);
+			reorderEngine.track(toner);
+			tonerSearchIndex.update(toner);
+		}
 	}
 
 	/**
@@ -78,185 +1097,684 @@ public class Database {
 		return saveFile;
 	}
 
+	/**
+	 * Returns the JAXB context for XmlDatabase, creating it on first use.
+	 * Building a context is slow so one is kept for the life of the program.
+	 * @return the shared context
+	 * @throws JAXBException
+	 */
+	private static synchronized JAXBContext jaxbContext() throws JAXBException {
+		if (jaxbContext == null) {
+			jaxbContext = JAXBContext.newInstance(XmlDatabase.class);
+		}
+		return jaxbContext;
+	}
+
 	/**
 	 * Loads Printer data from the specified file. The current Printer data will
-	 * be replaced.
+	 * be replaced. Binary snapshots are read in one go. XML files are
+	 * streamed with StAX, and read with JAXB instead if that fails.
+	 * The file's journal is then replayed over it, and kept open so new
+	 * changes are appended to it. The file is read before the write lock is
+	 * taken, so the old records can still be used while it loads.
 	 * @param file
+	 * @throws IOException if the file or its journal cannot be read
 	 */
-	public void loadPrinterDataFromFile(File file) {
+	public void loadPrinterDataFromFile(File file) throws IOException {
+	    savePipeline.await();
+	    savePipeline.cancelAutosave();
+	    long start = Metrics.start();
+	    LoadEvent event = new LoadEvent();
+	    event.begin();
+	    event.file = file.getPath();
+	    event.fileSize = file.length();
 	    try {
-	        JAXBContext context = JAXBContext
-	                .newInstance(Database.class);
-	        Unmarshaller um = context.createUnmarshaller();
-
-	        // Reading XML from the file and unmarshalling.
-	        Database data = (Database) um.unmarshal(file);
-	        
-	        printerSet.clear();
-	        tonerSet.clear();
-	        printerSet = data.getPrinterSet();
-	        tonerSet = data.getTonerSet();
+	        List<Printer> printers = new ArrayList<Printer>();
+	        List<Toner> toners = new ArrayList<Toner>();
+	        if (BinarySnapshot.isSnapshot(file)) {
+	            // Reading the binary snapshot in one go.
+	            event.format = "ptdb";
+	            BinarySnapshot.read(file, printers::add, toners::add);
+	        } else {
+	            event.format = "xml";
+	            try (XmlDatabaseReader reader = new XmlDatabaseReader(
+	                    new BufferedInputStream(new FileInputStream(file)))) {
+	                // Streaming the XML from the file one record at a time.
+	                reader.read(printers::add, toners::add);
+	            } catch (IOException e) {
+	                // Fall back to unmarshalling with JAXB if the streaming reader gave up.
+	                Unmarshaller um = jaxbContext().createUnmarshaller();
+	                XmlDatabase data = (XmlDatabase) um.unmarshal(file);
+	                printers = data.getPrinters();
+	                toners = data.getToners();
+	            }
+	        }
 	        
-	        // Save the file path to the registry.
-	       saveFile = file;
+	        lock.writeLock().lock();
+	        try {
+	            closeJournal();
+	            closeLedger();
+	            loading = true;
+	            try {
+	                replaceAll(printers, toners);
+
+	                // Replaying the changes made since the file was last written.
+	                // A journal left by an unfinished compaction goes first.
+	                batching = true;
+	                Journal.replay(Journal.oldFileFor(file), this);
+	                Journal.replay(Journal.fileFor(file), this);
+	            } finally {
+	                batching = false;
+	                loading = false;
+	            }
+	            // Stock is whatever the movements add up to.
+	            ledger = StockLedger.open(StockLedger.fileFor(file));
+	            deriveStock();
+	            ledger.flush();
+	            fire(DatabaseListener::databaseReloaded);
+	            
+	            // Save the file path to the registry.
+	            saveFile = file;
+	            journal = new Journal(Journal.fileFor(file));
+	            savedModCount.set(modCount.get());
+	            event.printers = this.printers.size();
+	            event.toners = this.toners.size();
+	        } finally {
+	            lock.writeLock().unlock();
+	        }
+
+	    } catch (JAXBException e) {
+	        throw new IOException("Could not load data from file:\n" + file.getPath(), e);
+	    } finally {
+	        Metrics.LOAD.recordSince(start);
+	        event.commit();
+	    }
+	}
+
+	/**
+	 * Waits for the background saves started so far to reach the disk.
+	 * A save that failed has already been reported to the ErrorHandler.
+	 */
+	public void awaitSaves() {
+	    savePipeline.await();
+	}
+
+	/**
+	 * @return true if there are changes that have not been saved
+	 */
+	public boolean isDirty() {
+	    return modCount.get() != savedModCount.get();
+	}
+
+	public boolean isAutosave() {
+	    return autosave;
+	}
+
+	/**
+	 * Turns autosave on or off. With autosave on, changes are saved once
+	 * editing has paused for a few seconds.
+	 * @param autosave
+	 */
+	public void setAutosave(boolean autosave) {
+	    this.autosave = autosave;
+	    if (!autosave) {
+	        savePipeline.cancelAutosave();
+	    } else if (isDirty() && saveFile != null) {
+	        savePipeline.scheduleAutosave(this::autosave, AUTOSAVE_DELAY_MILLIS);
+	    }
+	}
+
+	private void autosave() {
+	    try {
+	        save();
+	    } catch (IOException e) {
+	        errorHandler.handleError("Could not save data", "Could not autosave to file:\n" + saveFile.getPath(), e);
+	    }
+	}
+
+	/**
+	 * Saves the changes made since the last save, doing nothing if there are
+	 * none. Every change is already in the journal, so this only forces the
+	 * journal onto the disk, on the background writer. Once the journal has
+	 * grown large enough it is compacted into the save file there as well.
+	 * Without a journal the whole database is written. A failure in the
+	 * background goes to the ErrorHandler.
+	 * @throws IOException if the journal could not be started
+	 */
+	public void save() throws IOException {
+	    lock.writeLock().lock();
+	    try {
+	        if (saveFile == null) return;
+	        savePipeline.submit(this::flushLedger);
+	        if (!isDirty()) return;
+	        if (journal == null) {
+	            savePrinterDataToFile(saveFile);
+	            return;
+	        }
+	        File file = saveFile;
+	        Journal current = journal;
+	        long saving = modCount.get();
+	        savePipeline.submit(() -> syncJournal(file, current, saving, false));
+	    } finally {
+	        lock.writeLock().unlock();
+	    }
+	}
+
+	/**
+	 * Folds the journal into a new save file on the background writer,
+	 * see compactJournal(). Does nothing while an earlier write is still waiting or running.
+	 */
+	public void compact() {
+	    lock.writeLock().lock();
+	    try {
+	        if (saveFile == null || journal == null || savePipeline.isWriting()) return;
+	        File file = saveFile;
+	        savePipeline.submit(() -> compactJournal(file));
+	    } finally {
+	        lock.writeLock().unlock();
+	    }
+	}
+
+	/**
+	 * Forces a journal onto the disk and counts the changes up to saving as
+	 * saved, then compacts the journal if asked to or once it is large enough.
+	 * Run on the background writer.
+	 * @param file save file the journal belongs to
+	 * @param journal
+	 * @param saving change count the journal holds the changes up to
+	 * @param compact true to compact however small the journal is
+	 */
+	private void syncJournal(File file, Journal journal, long saving, boolean compact) {
+	    try {
+	        journal.sync();
+	        savedModCount.accumulateAndGet(saving, Math::max);
+	        if (!compact && journal.size() <= file.length() / 4 + COMPACT_THRESHOLD) return;
+	    } catch (IOException e) {
+	        // A load or a save to another file closes the journal, and takes its changes along.
+	        if (this.journal == journal) {
+	            savePipeline.runCallback(() -> errorHandler.handleError("Could not save data",
+	                    "Could not save data to file:\n" + file.getPath(), e));
+	        }
+	        return;
+	    }
+	    compactJournal(file);
+	}
 
-	    } catch (Exception e) { 
-	        Alert alert = new Alert(AlertType.ERROR);
-	        alert.setTitle("Error");
-	        alert.setHeaderText("Could not load data");
-	        alert.setContentText("Could not load data from file:\n" + file.getPath());
+	/**
+	 * Folds the journal into a new save file. Run on the background writer.
+	 * The journal is renamed aside and a new one started, then copies of the
+	 * records are written out. Only once the save file has been replaced is
+	 * the old journal deleted, so a crash at any point leaves a save file and
+	 * journals that replay to the current data. Changes wait only while the
+	 * journal is renamed and the copies taken.
+	 * @param file save file to compact into, skipped if it is no longer the save file
+	 */
+	private void compactJournal(File file) {
+	    File oldJournal = Journal.oldFileFor(file);
+	    SavePipeline.Snapshot snapshot;
+	    try {
+	        Journal current = journal;
+	        if (current == null || !file.equals(saveFile)) return;
+	        // most of the journal reaches the disk before changes are held up
+	        current.sync();
+	        lock.writeLock().lock();
+	        try {
+	            if (journal == null || !file.equals(saveFile)) return;
+	            journal.sync();
+	            journal.close();
+	            journal = null;
+	            Path path = Journal.fileFor(file).toPath();
+	            if (oldJournal.exists()) {
+	                // An earlier compaction never finished, its journal has to be kept as well.
+	                Files.write(oldJournal.toPath(), Files.readAllBytes(path), StandardOpenOption.APPEND);
+	                Files.delete(path);
+	            } else {
+	                Files.move(path, oldJournal.toPath(), StandardCopyOption.ATOMIC_MOVE);
+	            }
+	            SavePipeline.syncDirectory(file);
+	            journal = new Journal(Journal.fileFor(file));
+	            snapshot = new SavePipeline.Snapshot(printers.values(), toners.values(), modCount.get());
+	        } finally {
+	            lock.writeLock().unlock();
+	        }
+	        SavePipeline.writeReplacing(file, snapshot.printers, snapshot.toners);
+	        Files.deleteIfExists(oldJournal.toPath());
+	    } catch (IOException e) {
 	        e.printStackTrace();
-	        alert.showAndWait();
+	        savePipeline.runCallback(() -> errorHandler.handleError("Could not compact the journal",
+	                "Could not save data to file:\n" + file.getPath()
+	                + "\nNo changes were lost, they stay in the journal.", e));
 	    }
 	}
 
 	/**
 	 * Saves the current printer data to the specified file.
+	 * Files ending in .ptdb are written as a binary snapshot, anything else as XML.
+	 * Copies of the records are taken now and written in the background, to a
+	 * temporary file that replaces the target once it is safely on the disk.
+	 * Changes made while it is written go to the new file's journal.
+	 * Saving to the current file folds its journal in instead, and is skipped
+	 * if nothing changed. A failure in the background goes to the ErrorHandler.
 	 * 
 	 * @param file
+	 * @throws IOException if the journal could not be started
 	 */
-	public void savePrinterDataToFile(File file) {
+	public void savePrinterDataToFile(File file) throws IOException {
+	    lock.writeLock().lock();
 	    try {
-	        JAXBContext context = JAXBContext
-	                .newInstance(Database.class);
-	        Marshaller m = context.createMarshaller();
-	        m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+	        if (file.equals(saveFile) && journal != null) {
+	            if (!isDirty() && journal.size() == 0) return;
+	            Journal current = journal;
+	            long saving = modCount.get();
+	            savePipeline.submit(() -> syncJournal(file, current, saving, true));
+	            return;
+	        }
 
-	        //Marshaling current instance of database and saving XML to the file.
-	        m.marshal(this, file);
-	        
+	        SavePipeline.Snapshot snapshot = new SavePipeline.Snapshot(printers.values(), toners.values(), modCount.get());
 	        // Save the file path to the registry.
 	        saveFile = file;
-	    } catch (Exception e) { // catches ANY exception
-	        Alert alert = new Alert(AlertType.ERROR);
-	        alert.setTitle("Error");
-	        alert.setHeaderText("Could not save data");
-	        alert.setContentText("Could not save data to file:\n" + file.getPath());
+	        startJournal(file);
+	        savePipeline.write(file, snapshot, null, () -> {
+	            if (file.equals(saveFile)) savedModCount.accumulateAndGet(snapshot.modCount, Math::max);
+	        }, e -> {
+	            lock.writeLock().lock();
+	            try {
+	                if (file.equals(saveFile)) {
+	                    // The journal only holds changes made since the snapshot, useless without the file.
+	                    closeJournal();
+	                    Journal.fileFor(file).delete();
+	                    saveFile = null;
+	                }
+	            } finally {
+	                lock.writeLock().unlock();
+	            }
+	            errorHandler.handleError("Could not save data", "Could not save data to file:\n" + file.getPath(), e);
+	        });
+	        StockLedger ledger = this.ledger;
+	        savePipeline.submit(() -> {
+	            try {
+	                ledger.moveTo(StockLedger.fileFor(file));
+	            } catch (IOException e) {
+	                savePipeline.runCallback(() -> errorHandler.handleError("Stock movements are not being saved",
+	                        "Could not write the stock ledger of:\n" + file.getPath(), e));
+	            }
+	        });
+	    } finally {
+	        lock.writeLock().unlock();
+	    }
+	}
+
+	/**
+	 * Writes the whole database to a file on this thread and makes it the
+	 * save file, for jobs that must know the data is on the disk before
+	 * they go on. Like a background save, the file is replaced in one step.
+	 * Lookups carry on while it writes, changes wait.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeToFile(File file) throws IOException {
+	    // not under the lock, a failed background save takes it to report back
+	    savePipeline.await();
+	    Future<?> ledgerMoved;
+	    lock.writeLock().lock();
+	    try {
+	        closeJournal();
+	        SavePipeline.writeReplacing(file, printers.values(), toners.values());
+	        saveFile = file;
+	        startJournal(file);
+	        StockLedger ledger = this.ledger;
+	        ledgerMoved = savePipeline.submit(() -> ledger.moveTo(StockLedger.fileFor(file)));
+	        savedModCount.set(modCount.get());
+	    } finally {
+	        lock.writeLock().unlock();
+	    }
+	    SavePipeline.await(ledgerMoved);
+	}
+
+	/**
+	 * Throws away the save file's journals and starts an empty one
+	 */
+	private void startJournal(File file) throws IOException {
+	    closeJournal();
+	    Files.deleteIfExists(Journal.oldFileFor(file).toPath());
+	    Files.deleteIfExists(Journal.fileFor(file).toPath());
+	    journal = new Journal(Journal.fileFor(file));
+	}
+
+	/**
+	 * Waits for the background writes to finish and closes the journal and
+	 * the ledger. Called before the program exits.
+	 */
+	public void close() {
+	    savePipeline.cancelAutosave();
+	    savePipeline.await();
+	    lock.writeLock().lock();
+	    try {
+	        if (journal != null) {
+	            try {
+	                journal.sync();
+	            } catch (IOException e) {
+	                e.printStackTrace();
+	            }
+	        }
+	        closeJournal();
+	        closeLedger();
+	    } finally {
+	        lock.writeLock().unlock();
+	    }
+	}
+
+	/**
+	 * Writes out the ledger and closes its file, movements made after this
+	 * stay in memory until the database is saved somewhere
+	 */
+	private void closeLedger() {
+	    try {
+	        ledger.close();
+	    } catch (IOException e) {
 	        e.printStackTrace();
-	        alert.showAndWait();
 	    }
 	}
 	
 	
 	/**
-	 * reads CSV file of toners. Each line of the CSV is put in a set. Then
-	 * each line of the CSV is used to create toner objects. Toner objects are
-	 * then stored in the toner hash set
+	 * reads CSV file of toners, adding every valid record as a new toner
 	 * @param file
+	 * @return what the import did
+	 * @throws IOException if the file cannot be read
 	 */
-	public void importTonerData(File file) {
-    	try {
-    		//Create Set of strings, each element is a string for making printer objects
-    		//Opens the file passed in as a stream of each line. Skip first line. Filter each line. IF validatePrinterString() fails
-    		//discard line. At the end add the stream to a set
-    		Set<String> tonerSet = Files.lines(file.toPath()).skip(1).filter(line -> validateTonerString(line)).collect(Collectors.toSet());
-			//put the Set into a stream.for each element create a new printer and add to printerGroup
-			tonerSet.stream().forEach(line -> this.tonerSet.add(new Toner(line)));
-		} catch (java.lang.NullPointerException e) {
-			Alert alert = new Alert(AlertType.ERROR);
-			alert.setTitle("Error");
-		    alert.setHeaderText("Invalid Input");
-		} catch (IOException e) {
-			Alert alert = new Alert(AlertType.ERROR);
-		    alert.setTitle("Error");
-		    alert.setHeaderText("Could not load data");
-		    alert.setContentText("Could not load data from file:\n" + file.getPath());
-		}  	
+	public ImportReport<Toner> importTonerData(File file) throws IOException {
+		return importTonerData(file, false);
+	}
+
+	/**
+	 * reads CSV file of toners on this thread, see tonerImport()
+	 * @param file
+	 * @param upsert
+	 * @return what the import did
+	 * @throws IOException if the file cannot be read, the rows read before
+	 * the failure stay imported
+	 */
+	public ImportReport<Toner> importTonerData(File file, boolean upsert) throws IOException {
+		return runImport(tonerImport(file, upsert));
+	}
+
+	/**
+	 * Sets up an import of a CSV file of toners. In upsert mode a row whose
+	 * brand and model match an existing toner updates that toner in place,
+	 * keeping its UID and links, and a row that changes nothing is only
+	 * counted. A row whose brand and model an earlier row had, or that match
+	 * several toners, is rejected. Otherwise every valid row is added as a
+	 * new toner.
+	 * @param file
+	 * @param upsert
+	 * @return the import, nothing is read until it is run
+	 */
+	public ImportJob<Toner> tonerImport(File file, boolean upsert) {
+		return new ImportJob<Toner>(this, file, upsert, Database::readToner) {
+			@Override
+			protected String key(Toner toner) {
+				return tonerModelKey(toner);
+			}
+
+			@Override
+			protected String describeKey(Toner toner) {
+				return "brand \"" + toner.getBrand() + "\" and model \"" + toner.getModel() + "\"";
+			}
+
+			@Override
+			protected List<Toner> findExisting(Toner incoming) {
+				return tonerModelIndex.getAll(tonerModelKey(incoming));
+			}
+
+			@Override
+			protected boolean same(Toner existing, Toner incoming) {
+				return existing.sameAs(incoming);
+			}
+
+			@Override
+			protected Toner copy(Toner toner) {
+				return toner.copy();
+			}
+
+			@Override
+			protected void update(Toner existing, Toner incoming) {
+				existing.updateFrom(incoming);
+			}
+
+			@Override
+			protected void add(Toner toner) {
+				addToner(toner);
+			}
+
+			@Override
+			protected boolean contains(Toner toner) {
+				return findTonerByUid(toner.getUid()) == toner;
+			}
+
+			@Override
+			protected void remove(Toner toner) {
+				if (contains(toner)) removeToner(toner);
+			}
+
+			@Override
+			protected void imported(List<Toner> added, List<Toner> updated) {
+				fire(listener -> listener.tonersImported(added, updated));
+			}
+		};
 	}
 	
 	/**
-	 * Validates tonerString from CSV file contains proper data
-	 * @param printerString
-	 * @return
+	 * Builds a toner from the current CSV record. Columns are printerModel,
+	 * brand, model, printers, minStock, curStock, order, needed.
+	 * @param csv
+	 * @return the toner
+	 * @throws IllegalArgumentException saying why the record is not a valid toner
 	 */
-	private static boolean validateTonerString(String tonerString) {
-		//make scanner on printer string
-		String[] attributeArray = tonerString.split(",");
-		int i = 0;
-		if (attributeArray.length < numOfTonerAttributes) return false;
+	private static Toner readToner(CsvReader csv) {
+		if (csv.fieldCount() < numOfTonerAttributes) {
+			throw new IllegalArgumentException("expected " + numOfTonerAttributes
+					+ " columns but found " + csv.fieldCount());
+		}
+		String model = csv.field(2).trim();
+		if (model.isEmpty()) throw new IllegalArgumentException("model is empty");
+		Toner toner = new Toner();
+		toner.setPrinterModel(csv.field(0).trim());
+		toner.setBrand(csv.field(1).trim());
+		toner.setModel(model);
+		toner.setPrinters(csv.field(3).trim());
+		toner.setMinStock(readInt(csv, 4, "minStock"));
+		toner.setCurStock(readInt(csv, 5, "curStock"));
+		toner.setOrder(csv.booleanField(6));
+		toner.setNeeded(readInt(csv, 7, "needed"));
+		return toner;
+	}
+
+	private static int readInt(CsvReader csv, int i, String column) {
 		try {
-			i++; //printerModel
-			i++; //brand
-			if (attributeArray[i++].equals("")) throw new Exception(); //model. cant be null
-			i++; //printers
-			Integer.parseInt(attributeArray[i++]); //minStock. must be int
-			Integer.parseInt(attributeArray[i++]); //CurStock. must be int
-			Boolean.parseBoolean(attributeArray[i++]); //order. must be bool
-			Integer.parseInt(attributeArray[i++]); //needed. must be int.
-			return true;
-		} catch (Exception e) {
-			System.out.println("failed importing a toner");
-			return false;
+			return csv.intField(i);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(column + " is not a whole number: \"" + csv.field(i) + "\"");
 		}
 	}
 	
 	
 	/**
-	 * reads CSV file of printers. Each line of the CSV is put in a set. Then
-	 * each line of the CSV is used to create printer objects. Printer objects are
-	 * then stored in the printer hash set
+	 * reads CSV file of printers, adding every valid record as a new printer
 	 * @param file
+	 * @return what the import did
+	 * @throws IOException if the file cannot be read
 	 */
-	public void importPrinterData(File file) {
-
-    	try {
-    		//Create Set of strings, each element is a string for making printer objects
-    		//Opens the file passed in as a stream of each line. Skip first line. Filter each line. IF validatePrinterString() fails
-    		//discard line. At the end add the stream to a set
-    		Set<String> printerSet = Files.lines(file.toPath()).skip(1).filter(line -> validatePrinterString(line)).collect(Collectors.toSet());
-			//put the Set into a stream.for each element create a new printer and add to printerGroup
-			printerSet.stream().forEach(line -> this.printerSet.add(new Printer(line)));
-		} catch (java.lang.NullPointerException e) {
-			Alert alert = new Alert(AlertType.ERROR);
-			alert.setTitle("Error");
-		    alert.setHeaderText("Invalid Input");
-		} catch (IOException e) {
-			Alert alert = new Alert(AlertType.ERROR);
-		    alert.setTitle("Error");
-		    alert.setHeaderText("Could not load data");
-		    alert.setContentText("Could not load data from file:\n" + file.getPath());
-		}  	
+	public ImportReport<Printer> importPrinterData(File file) throws IOException {
+		return importPrinterData(file, false);
+	}
+
+	/**
+	 * reads CSV file of printers on this thread, see printerImport()
+	 * @param file
+	 * @param upsert
+	 * @return what the import did
+	 * @throws IOException if the file cannot be read, the rows read before
+	 * the failure stay imported
+	 */
+	public ImportReport<Printer> importPrinterData(File file, boolean upsert) throws IOException {
+		return runImport(printerImport(file, upsert));
+	}
+
+	/**
+	 * Sets up an import of a CSV file of printers. In upsert mode a row whose
+	 * serial number matches an existing printer updates that printer in
+	 * place, keeping its UID, links and notes, and a row that changes nothing
+	 * is only counted. A row whose serial number an earlier row had, or that
+	 * matches several printers, is rejected. Otherwise every valid row is
+	 * added as a new printer.
+	 * @param file
+	 * @param upsert
+	 * @return the import, nothing is read until it is run
+	 */
+	public ImportJob<Printer> printerImport(File file, boolean upsert) {
+		return new ImportJob<Printer>(this, file, upsert, Database::readPrinter) {
+			@Override
+			protected String key(Printer printer) {
+				return printer.getSerialNumber();
+			}
+
+			@Override
+			protected String describeKey(Printer printer) {
+				return "serial number \"" + printer.getSerialNumber() + "\"";
+			}
+
+			@Override
+			protected List<Printer> findExisting(Printer incoming) {
+				return printerIndexes.serialNumber.getAll(incoming.getSerialNumber());
+			}
+
+			@Override
+			protected boolean same(Printer existing, Printer incoming) {
+				return existing.sameAs(incoming);
+			}
+
+			@Override
+			protected Printer copy(Printer printer) {
+				return printer.copy();
+			}
+
+			@Override
+			protected void update(Printer existing, Printer incoming) {
+				existing.updateFrom(incoming);
+			}
+
+			@Override
+			protected void add(Printer printer) {
+				addPrinter(printer);
+			}
+
+			@Override
+			protected boolean contains(Printer printer) {
+				return findPrinterByUid(printer.getUid()) == printer;
+			}
+
+			@Override
+			protected void remove(Printer printer) {
+				if (contains(printer)) removePrinter(printer);
+			}
+
+			@Override
+			protected void imported(List<Printer> added, List<Printer> updated) {
+				fire(listener -> listener.printersImported(added, updated));
+			}
+		};
+	}
+
+	/**
+	 * Reads and merges a whole import on this thread
+	 */
+	private static <T extends InventoryObject> ImportReport<T> runImport(ImportJob<T> job) throws IOException {
+		job.read(job::merge, () -> false);
+		return job.getReport();
 	}
     
+	/**
+	 * Copies every record of another database into this one. A record with
+	 * the same UID as one already here replaces it, links and all.
+	 * Stock history is not copied, a merged toner's stock is recorded as
+	 * one adjustment.
+	 * @param other
+	 * @return number of records copied
+	 */
+	public int mergeFrom(Database other) {
+		lock.writeLock().lock();
+		try {
+			int count = 0;
+			for (Printer printer : other.getPrinters()) {
+				addPrinter(printer.copy());
+				count++;
+			}
+			for (Toner toner : other.getToners()) {
+				addToner(toner.copy());
+				count++;
+			}
+			return count;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Works out needed and order for every toner from its stock.
+	 * The reorder engine already does this whenever minStock or curStock
+	 * change, so this only finds work if values were set some other way.
+	 * Listeners are told about the toners that changed.
+	 */
 	public void updateTonerStock() {
-		for (Toner toner : tonerSet) {
-			int needed = toner.getMinStock()-toner.getCurStock();
-			if (needed>0) {
-				toner.setNeeded(needed);
-				toner.setOrder(true);
-			} else {
-				toner.setNeeded(0);
-				toner.setOrder(false);
+		long start = Metrics.start();
+		StockUpdateEvent event = new StockUpdateEvent();
+		event.begin();
+		int changed = 0;
+		lock.writeLock().lock();
+		try {
+			for (Toner toner : toners.values()) {
+				if (reorderEngine.recalculate(toner)) {
+					tonerChanged(toner);
+					changed++;
+				}
 			}
+		} finally {
+			lock.writeLock().unlock();
+			Metrics.STOCK_UPDATE.recordSince(start);
+			event.toners = toners.size();
+			event.changed = changed;
+			event.commit();
 		}
 	}
 	
 
 	/**
-	 * Validates printerString from CSV file contains proper data
-	 * @param printerString
-	 * @return
+	 * Builds a printer from the current CSV record. Columns are barCode,
+	 * description, category, location, serialNumber, manufacturer, division,
+	 * department, campus, status.
+	 * @param csv
+	 * @return the printer
+	 * @throws IllegalArgumentException saying why the record is not a valid printer
 	 */
-	private static boolean validatePrinterString(String printerString) {
-		String[] attributeArray = printerString.split(",");
-		int i = 0;
-		if (attributeArray.length < numOfPrinterAttributes) return false;
-		try {
-			i++; //barcode
-			i++; //description
-			i++; //category
-			i++; //location
-			if (attributeArray[i++].equals("")) throw new Exception(); //serialnumber. it cant be null
-			i++; //manufacturer
-			i++; //division
-			i++; //department
-			i++; //campus
-			i++; //status
-			return true;
-		} catch (Exception e) {
-			System.out.println("failed importing a printer");
-			return false;
+	private static Printer readPrinter(CsvReader csv) {
+		if (csv.fieldCount() < numOfPrinterAttributes) {
+			throw new IllegalArgumentException("expected " + numOfPrinterAttributes
+					+ " columns but found " + csv.fieldCount());
 		}
+		if (csv.field(4).trim().isEmpty()) throw new IllegalArgumentException("serial number is empty");
+		Printer printer = new Printer();
+		printer.setBarCode(csv.field(0).trim());
+		printer.setDescription(csv.field(1).trim());
+		printer.setCategory(csv.field(2).trim());
+		printer.setLocation(csv.field(3).trim());
+		printer.setSerialNumber(csv.field(4).trim());
+		printer.setManufacturer(csv.field(5).trim());
+		printer.setDivision(csv.field(6).trim());
+		printer.setDepartment(csv.field(7).trim());
+		printer.setCampus(csv.field(8).trim());
+		printer.setStatus(csv.field(9).trim());
+		return printer;
 	}
 	
 }
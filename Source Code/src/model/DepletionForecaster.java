@@ -0,0 +1,105 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Forecasts when each toner runs out by following its links to printers
+ * and adding up their pages a day. Each printer's rate is kept up to date
+ * by its meter series as readings arrive, so a forecast only sums a few
+ * numbers per linked printer and always reflects the latest readings and
+ * links without anything being recalculated.
+ *
+ * A cartridge is taken to print DEFAULT_PAGE_YIELD pages unless a yield is
+ * set for its model.
+ *
+ */
+public class DepletionForecaster {
+
+	/**
+	 * Pages of a standard yield office laser cartridge
+	 */
+	public static final int DEFAULT_PAGE_YIELD = 2500;
+
+	private final Database database;
+	private final MeterStore meters;
+	private volatile int defaultYield = DEFAULT_PAGE_YIELD;
+	/**
+	 * Page yields by normalized toner model
+	 */
+	private final ConcurrentHashMap<String, Integer> yields = new ConcurrentHashMap<>();
+
+	public DepletionForecaster(Database database, MeterStore meters) {
+		this.database = database;
+		this.meters = meters;
+	}
+
+	/**
+	 * @param pages yield of cartridges with no yield of their own
+	 */
+	public void setDefaultYield(int pages) {
+		if (pages <= 0) throw new IllegalArgumentException("Page yield must be positive");
+		defaultYield = pages;
+	}
+
+	/**
+	 * @param tonerModel
+	 * @param pages yield of that model's cartridges
+	 */
+	public void setYield(String tonerModel, int pages) {
+		if (pages <= 0) throw new IllegalArgumentException("Page yield must be positive");
+		String key = UniqueIndex.normalize(tonerModel);
+		if (key == null) throw new IllegalArgumentException("Toner model is blank");
+		yields.put(key, pages);
+	}
+
+	/**
+	 * @param toner
+	 * @return pages one of the toner's cartridges prints
+	 */
+	public int getYield(Toner toner) {
+		String key = UniqueIndex.normalize(toner.getModel());
+		Integer pages = key == null ? null : yields.get(key);
+		return pages == null ? defaultYield : pages;
+	}
+
+	/**
+	 * @param toner
+	 * @return the toner's forecast from the latest readings of its linked printers
+	 */
+	public TonerForecast forecast(Toner toner) {
+		double pagesPerDay = 0;
+		int metered = 0;
+		long newest = 0;
+		List<String> linked = toner.getLinkedPrinters();
+		if (linked != null) {
+			for (String printerUid : linked) {
+				MeterSeries series = meters.getSeries(printerUid);
+				if (series == null) continue;
+				double rate = series.getPagesPerDay();
+				if (Double.isNaN(rate)) continue;
+				pagesPerDay += rate;
+				metered++;
+				newest = Math.max(newest, series.getLastTime());
+			}
+		}
+		long asOf = metered == 0 ? System.currentTimeMillis() : newest * 1000;
+		return new TonerForecast(toner, toner.getCurStock(), pagesPerDay, metered, getYield(toner), asOf);
+	}
+
+	/**
+	 * @return forecasts of the toners with at least one metered printer,
+	 * the soonest to run out first
+	 */
+	public List<TonerForecast> forecastAll() {
+		ArrayList<TonerForecast> forecasts = new ArrayList<>();
+		for (Toner toner : database.getToners()) {
+			TonerForecast forecast = forecast(toner);
+			if (forecast.getMeteredPrinters() > 0) forecasts.add(forecast);
+		}
+		forecasts.sort(Comparator.comparingDouble(TonerForecast::getDaysLeft));
+		return forecasts;
+	}
+}
@@ -0,0 +1,32 @@
+package model;
+
+/**
+ * A CSV row an import left out, and why
+ *
+ */
+public class ImportError {
+
+	private final int line;
+	private final String reason;
+
+	ImportError(int line, String reason) {
+		this.line = line;
+		this.reason = reason;
+	}
+
+	/**
+	 * @return line of the file the row starts on, counting the header as line 1
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	@Override
+	public String toString() {
+		return "Line " + line + ": " + reason;
+	}
+}
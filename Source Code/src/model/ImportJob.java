@@ -0,0 +1,338 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import interfaces.InventoryObject;
+import metrics.ImportEvent;
+import metrics.Metrics;
+
+/**
+ * One CSV import, split so the slow part can leave the JavaFX thread.
+ * read() parses the file on any thread and hands over the records in
+ * batches, merge() adds a batch to the database and must run on the JavaFX
+ * thread, so the tables fill up while the rest of the file is still being
+ * read. Everything merged is kept in the report, which lets rollback() put
+ * the database back the way it was if the import is cancelled part way.
+ *
+ * Get a job from Database.printerImport() or Database.tonerImport().
+ *
+ * @param <T> printer or toner
+ */
+public abstract class ImportJob<T extends InventoryObject> {
+
+	/**
+	 * CSV files larger than this are parsed in parallel
+	 */
+	static final long PARALLEL_IMPORT_THRESHOLD = 32L << 20;
+	/**
+	 * Records per batch when the file is read on one thread
+	 */
+	static final int BATCH_SIZE = 2000;
+
+	private final Database database;
+	private final File file;
+	private final boolean upsert;
+	private final Function<CsvReader, T> parser;
+	private final ImportReport<T> report = new ImportReport<>();
+	/**
+	 * Line of the first row merged with each key, so upserts can reject
+	 * the rows that repeat it
+	 */
+	private final HashMap<String, Integer> keyLines = new HashMap<>();
+
+	/**
+	 * Records parsed from a stretch of the file, along with the rows in it
+	 * that failed validation
+	 *
+	 * @param <T> printer or toner
+	 */
+	public static class Batch<T> {
+		final ArrayList<T> records = new ArrayList<>();
+		/**
+		 * Line each record starts on, by index into records
+		 */
+		int[] lines = new int[16];
+		final ArrayList<ImportError> errors = new ArrayList<>();
+		/**
+		 * Rows skipped for repeating an earlier row byte for byte
+		 */
+		int repeats;
+		long bytes;
+
+		/**
+		 * Parses the reader's current record into this batch. A blank line
+		 * is skipped, neither a record nor an error.
+		 */
+		void read(CsvReader csv, Function<CsvReader, T> parser) {
+			if (csv.fieldCount() == 1 && csv.isEmpty(0)) return;
+			try {
+				T record = parser.apply(csv);
+				if (records.size() == lines.length) lines = Arrays.copyOf(lines, lines.length * 2);
+				lines[records.size()] = csv.getLineNumber();
+				records.add(record);
+			} catch (IllegalArgumentException e) {
+				errors.add(new ImportError(csv.getLineNumber(), e.getMessage()));
+			}
+		}
+
+		/**
+		 * @return number of rows read, valid or not
+		 */
+		public int size() {
+			return records.size() + errors.size() + repeats;
+		}
+
+		/**
+		 * @return number of bytes of the file this batch covers
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+	}
+
+	/**
+	 * @param database
+	 * @param file
+	 * @param upsert true to update records that findExisting() matches
+	 * @param parser builds a record from the current CSV record, throwing an
+	 * IllegalArgumentException that says what is wrong with an invalid one
+	 */
+	ImportJob(Database database, File file, boolean upsert, Function<CsvReader, T> parser) {
+		this.database = database;
+		this.file = file;
+		this.upsert = upsert;
+		this.parser = parser;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return what the import has done so far, only to be read on the JavaFX thread
+	 */
+	public ImportReport<T> getReport() {
+		return report;
+	}
+
+	/**
+	 * Parses the whole file, skipping its header. The file is mapped into
+	 * memory and each record is validated and built in one parse. Blank
+	 * lines are skipped, and records that repeat an earlier record byte for
+	 * byte are not parsed again but counted as unchanged. Files larger
+	 * than PARALLEL_IMPORT_THRESHOLD are parsed on every core by a
+	 * ParallelCsvImporter instead, which does not skip repeats.
+	 * Does not touch the database, so it may run on any thread.
+	 * @param batches called on this thread with each batch, in file order
+	 * @param cancelled checked between records, reading stops once it returns true
+	 * @throws IOException
+	 */
+	public void read(Consumer<Batch<T>> batches, BooleanSupplier cancelled) throws IOException {
+		long start = Metrics.start();
+		ImportEvent event = new ImportEvent();
+		event.begin();
+		try {
+			readBatches(batches, cancelled);
+		} finally {
+			Metrics.IMPORT.recordSince(start);
+			event.end();
+			if (event.shouldCommit()) {
+				event.file = file.getPath();
+				event.fileSize = file.length();
+				event.upsert = upsert;
+				event.added = report.getAdded().size();
+				event.updated = report.getUpdated().size();
+				event.unchanged = report.getUnchanged();
+				event.rejected = report.getRejected();
+				event.commit();
+			}
+		}
+	}
+
+	private void readBatches(Consumer<Batch<T>> batches, BooleanSupplier cancelled) throws IOException {
+		if (file.length() > PARALLEL_IMPORT_THRESHOLD) {
+			new ParallelCsvImporter<T>(file, parser).run(batches, cancelled);
+			return;
+		}
+		try (CsvReader csv = CsvReader.open(file)) {
+			HashSet<ByteBuffer> seen = new HashSet<>();
+			csv.nextRecord(); //skip the header
+			Batch<T> batch = new Batch<>();
+			long reported = 0;
+			while (!cancelled.getAsBoolean() && csv.nextRecord()) {
+				if (seen.add(csv.recordBytes())) {
+					batch.read(csv, parser);
+				} else {
+					batch.repeats++;
+				}
+				if (batch.size() == BATCH_SIZE) {
+					batch.bytes = csv.position() - reported;
+					reported = csv.position();
+					batches.accept(batch);
+					batch = new Batch<>();
+				}
+			}
+			if (!cancelled.getAsBoolean()) {
+				batch.bytes = csv.position() - reported;
+				batches.accept(batch);
+			}
+		}
+	}
+
+	/**
+	 * Adds a batch to the database, or updates the records it matches in
+	 * upsert mode, and tells the listeners about the records that changed.
+	 * An upsert rejects a row whose key an earlier row of the file already
+	 * had, or that matches more than one record, rather than pick which
+	 * record it overwrites, so every row read ends up added, updated,
+	 * unchanged or rejected.
+	 * Must run on the JavaFX thread. The whole batch goes in under the
+	 * database's write lock, lookups carry on while it does.
+	 * @param batch
+	 */
+	public void merge(Batch<T> batch) {
+		ArrayList<T> added = new ArrayList<>();
+		ArrayList<T> updated = new ArrayList<>();
+		ArrayList<ImportError> rejected = new ArrayList<>(batch.errors);
+		Lock lock = database.writeLock();
+		lock.lock();
+		try {
+			database.setBatching(true);
+			try {
+				for (int i = 0; i < batch.records.size(); i++) {
+					T record = batch.records.get(i);
+					int line = batch.lines[i];
+					List<T> existing = Collections.emptyList();
+					if (upsert) {
+						String key = UniqueIndex.normalize(key(record));
+						Integer first = key == null ? null : keyLines.putIfAbsent(key, line);
+						if (first != null) {
+							rejected.add(new ImportError(line, "same " + describeKey(record) + " as line " + first));
+							continue;
+						}
+						existing = findExisting(record);
+						if (existing.size() > 1) {
+							rejected.add(new ImportError(line, describeKey(record) + " matches "
+									+ existing.size() + " records, update them by hand"));
+							continue;
+						}
+					}
+					if (existing.isEmpty()) {
+						add(record);
+						report.added(record);
+						added.add(record);
+					} else if (!same(existing.get(0), record)) {
+						T target = existing.get(0);
+						T original = copy(target);
+						update(target, record);
+						add(target);
+						report.updated(target, original);
+						updated.add(target);
+					} else {
+						report.unchanged();
+					}
+				}
+				for (int i = 0; i < batch.repeats; i++) {
+					report.unchanged();
+				}
+				rejected.sort(Comparator.comparingInt(ImportError::getLine));
+				rejected.forEach(report::rejected);
+				Metrics.ROWS_IMPORTED.add(batch.records.size() + batch.errors.size() - rejected.size());
+				Metrics.ROWS_REJECTED.add(rejected.size());
+			} finally {
+				database.setBatching(false);
+			}
+			if (!added.isEmpty() || !updated.isEmpty()) imported(added, updated);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Undoes every merge so far. Updated records get their old values back
+	 * and added records are removed, unless they were already removed
+	 * some other way. Must run on the JavaFX thread.
+	 */
+	public void rollback() {
+		Lock lock = database.writeLock();
+		lock.lock();
+		try {
+			database.setBatching(true);
+			try {
+				for (Map.Entry<T, T> entry : report.getOriginals().entrySet()) {
+					if (!contains(entry.getKey())) continue;
+					update(entry.getKey(), entry.getValue());
+					add(entry.getKey());
+				}
+				List<T> added = report.getAdded();
+				for (int i = added.size() - 1; i >= 0; i--) {
+					remove(added.get(i));
+				}
+			} finally {
+				database.setBatching(false);
+			}
+			report.rolledBack();
+			database.fireReloaded();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param record
+	 * @return the attribute upserts match records on, null if it is blank
+	 */
+	protected abstract String key(T record);
+
+	/**
+	 * @param record
+	 * @return the key named for an error message, such as serial number "X"
+	 */
+	protected abstract String describeKey(T record);
+
+	/**
+	 * @param incoming
+	 * @return every record with the incoming one's key, empty to add it
+	 */
+	protected abstract List<T> findExisting(T incoming);
+
+	protected abstract boolean same(T existing, T incoming);
+
+	protected abstract T copy(T record);
+
+	/**
+	 * Copies the imported columns of one record into another
+	 */
+	protected abstract void update(T existing, T incoming);
+
+	/**
+	 * Adds a record to the database, or saves the changes made to one already in it
+	 */
+	protected abstract void add(T record);
+
+	protected abstract boolean contains(T record);
+
+	/**
+	 * Removes a record if it is still in the database
+	 */
+	protected abstract void remove(T record);
+
+	/**
+	 * Tells the listeners about the records one merge added and updated
+	 */
+	protected abstract void imported(List<T> added, List<T> updated);
+}
@@ -0,0 +1,103 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import interfaces.InventoryObject;
+
+/**
+ * What a CSV import did. Records it added or really changed are kept so
+ * the database can tell its listeners about just those, and so the import
+ * can be rolled back. Rows that matched an existing record exactly are
+ * counted, and every row that failed validation is listed with its line
+ * number and the reason it was left out, so the four counts add up to the
+ * rows read.
+ *
+ * @param <T> printer or toner
+ */
+public class ImportReport<T extends InventoryObject> {
+
+	private final ArrayList<T> added = new ArrayList<>();
+	private final ArrayList<T> updated = new ArrayList<>();
+	/**
+	 * Copy of each updated record from before the import first changed it
+	 */
+	private final LinkedHashMap<T, T> originals = new LinkedHashMap<>();
+	private final ArrayList<ImportError> errors = new ArrayList<>();
+	private int unchanged;
+	private boolean rolledBack;
+
+	void added(T record) {
+		added.add(record);
+	}
+
+	/**
+	 * @param record
+	 * @param original copy of the record from before this change
+	 */
+	void updated(T record, T original) {
+		if (originals.putIfAbsent(record, original) == null) updated.add(record);
+	}
+
+	void unchanged() {
+		unchanged++;
+	}
+
+	void rejected(ImportError error) {
+		errors.add(error);
+	}
+
+	void rolledBack() {
+		rolledBack = true;
+	}
+
+	Map<T, T> getOriginals() {
+		return originals;
+	}
+
+	public List<T> getAdded() {
+		return Collections.unmodifiableList(added);
+	}
+
+	public List<T> getUpdated() {
+		return Collections.unmodifiableList(updated);
+	}
+
+	public int getUnchanged() {
+		return unchanged;
+	}
+
+	public int getRejected() {
+		return errors.size();
+	}
+
+	/**
+	 * @return the rows that failed validation, in file order
+	 */
+	public List<ImportError> getErrors() {
+		return Collections.unmodifiableList(errors);
+	}
+
+	/**
+	 * @return number of records added or updated
+	 */
+	public int getChangeCount() {
+		return added.size() + updated.size();
+	}
+
+	/**
+	 * @return true if the import was cancelled and its changes undone
+	 */
+	public boolean isRolledBack() {
+		return rolledBack;
+	}
+
+	@Override
+	public String toString() {
+		return added.size() + " added, " + updated.size() + " updated, "
+				+ unchanged + " unchanged, " + errors.size() + " rejected";
+	}
+}
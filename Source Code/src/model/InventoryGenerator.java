@@ -0,0 +1,426 @@
+package model;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.IntFunction;
+
+/**
+ * Makes up an inventory of any size for scale testing, shaped like the
+ * sample data in resources: one manufacturer owns most printers, a handful
+ * of models make up much of the rest, and campus, division and department
+ * names repeat the way they do there. Printers are spread over campuses of
+ * about CAMPUS_SIZE printers. Each campus stocks its own toners, one for
+ * each mono model it has, sometimes with a drum, and one of each colour
+ * for a colour model, linked to every printer of that model on the campus.
+ *
+ * The same seed and size always give the same records, UIDs included.
+ * Records are made one campus at a time and made again on every pass, so
+ * CSV and XML files of any size are written in the same memory. A binary
+ * snapshot holds every distinct string in its dictionary, which grows with
+ * the serial numbers and bar codes.
+ *
+ */
+public class InventoryGenerator {
+
+	/**
+	 * Printers on an average campus
+	 */
+	static final int CAMPUS_SIZE = 2000;
+
+	private static final String[] CAMPUSES = {"STANTON", "GEORGETOWN", "WILMINGTON", "DOVER", "ITC", "NEWARK",
+			"MIDDLETOWN", "MILFORD", "SEAFORD", "LEWES", "SMYRNA", "CLAYTON", "ELSMERE", "HOCKESSIN", "BEAR", "CAMDEN"};
+	private static final String[] DIVISIONS = {"INSTRUCTION", "WORKFORCE DEVELOPMENT & COMMUNITY EDUCATION",
+			"STUDENT AFFAIRS", "BUSINESS SERVICES", "IIT", "CAMPUS DIRECTOR", "ACADEMIC AFFAIRS", "FACILITIES",
+			"HUMAN RESOURCES", "PRESIDENT'S OFFICE"};
+	private static final int[] DIVISION_WEIGHTS = {200, 80, 56, 30, 29, 20, 15, 12, 8, 7};
+	private static final String[] DEPARTMENTS = {"WORKFORCE DEVELOPMENT", "NURSING", "INDUSTRIAL TRAINING",
+			"ALLIED HEALTH", "BUSINESS OFFICE", "ENGLISH/READING", "MATHEMATICS", "SCIENCE", "ADMISSIONS",
+			"FINANCIAL AID", "REGISTRAR", "LIBRARY", "COUNSELING", "BIO SCIENCE", "ENVIRONMENTAL TECHNOLOGY",
+			"COMPUTER INFORMATION SYSTEMS", "CRIMINAL JUSTICE", "EARLY CHILDHOOD EDUCATION", "ENGINEERING TECHNOLOGY",
+			"HOSPITALITY", "PUBLIC SAFETY", "DENTAL HYGIENE", "RADIOLOGY", "RESPIRATORY CARE", "PSYCHOLOGY",
+			"SOCIAL SCIENCES", "VISUAL COMMUNICATIONS", "ARCHITECTURE", "AUTOMOTIVE", "CULINARY ARTS",
+			"BOOKSTORE", "PAYROLL", "PURCHASING", "MAINTENANCE", "SECURITY", "TESTING CENTER", "TUTORING",
+			"VETERANS SERVICES", "DISABILITY SERVICES", "CAREER SERVICES"};
+	private static final String[] MANUFACTURERS = {"DELL", "HP", "DATACARD", "CANON", "EPSON", "XEROX", "LEXMARK",
+			"BROTHER", "ZEBRA", "RICOH", "KYOCERA", "OKI", "SHARP", "KONICA MINOLTA"};
+	private static final int[] MANUFACTURER_WEIGHTS = {410, 21, 5, 4, 4, 3, 3, 2, 2, 1, 1, 1, 1, 1};
+	private static final String[] STATUSES = {"ACTIVE", "INACTIVE", "BROKEN", "SURPLUS"};
+	private static final int[] STATUS_WEIGHTS = {940, 30, 20, 10};
+	private static final String[] BUILDINGS = {"A", "B", "C", "D", "E", "F", "G", "H", "K", "L", "M", "N", "S", "T",
+			"W", "NW", "SE", "SW"};
+	private static final String[] COLOURS = {"Black", "Cyan", "Magenta", "Yellow"};
+	private static final int[] MIN_STOCKS = {4, 2, 10, 6, 1, 0};
+	private static final int[] MIN_STOCK_WEIGHTS = {40, 10, 5, 4, 1, 1};
+
+	/**
+	 * Serial numbers are 8 base 36 digits
+	 */
+	private static final long SERIAL_RANGE = 2821109907456L;
+	/**
+	 * Bar codes are 8 decimal digits
+	 */
+	private static final long BAR_CODE_RANGE = 100000000L;
+	/**
+	 * Toner part numbers are 5 base 36 digits
+	 */
+	private static final long PART_RANGE = 60466176L;
+
+	private final int printerCount;
+	private final long seed;
+	/**
+	 * Global index of each campus's first printer, plus the total at the end
+	 */
+	private final int[] campusStarts;
+	private final PrinterModel[] models;
+	private final Picker modelPicker;
+	private final Picker divisionPicker = new Picker(DIVISION_WEIGHTS);
+	private final Picker departmentPicker;
+	private final Picker statusPicker = new Picker(STATUS_WEIGHTS);
+	private final Picker minStockPicker = new Picker(MIN_STOCK_WEIGHTS);
+	private final Affine serials;
+	private final Affine barCodes;
+	private final Affine parts;
+
+	/**
+	 * One model in the catalogue every campus buys from
+	 */
+	private static final class PrinterModel {
+		final int index;
+		final String name;
+		final String manufacturer;
+		final String category;
+		final boolean colour;
+		final boolean drum;
+
+		PrinterModel(int index, String name, String manufacturer, String category, boolean colour, boolean drum) {
+			this.index = index;
+			this.name = name;
+			this.manufacturer = manufacturer;
+			this.category = category;
+			this.colour = colour;
+			this.drum = drum;
+		}
+	}
+
+	/**
+	 * @param printerCount number of printers, from 1 to 100 million
+	 * @param seed
+	 */
+	public InventoryGenerator(int printerCount, long seed) {
+		if (printerCount < 1) throw new IllegalArgumentException("Need at least one printer");
+		// bar codes would start to repeat
+		if (printerCount > BAR_CODE_RANGE) throw new IllegalArgumentException("At most " + BAR_CODE_RANGE + " printers");
+		this.printerCount = printerCount;
+		this.seed = seed;
+		Random random = new Random(seed);
+
+		int campuses = Math.min(printerCount, Math.max(3, Math.round(printerCount / (float) CAMPUS_SIZE)));
+		double[] weights = new double[campuses];
+		double total = 0;
+		for (int i = 0; i < campuses; i++) {
+			weights[i] = 0.5 + random.nextDouble();
+			total += weights[i];
+		}
+		campusStarts = new int[campuses + 1];
+		double sum = 0;
+		for (int i = 0; i < campuses; i++) {
+			campusStarts[i] = (int) Math.round(printerCount * sum / total);
+			sum += weights[i];
+		}
+		campusStarts[campuses] = printerCount;
+
+		// the catalogue grows slowly with the inventory, 50 models for the sample's 457 printers
+		int modelCount = (int) Math.max(20, Math.round(8 * Math.pow(printerCount, 0.3)));
+		models = new PrinterModel[modelCount];
+		Picker manufacturerPicker = new Picker(MANUFACTURER_WEIGHTS);
+		HashSet<String> names = new HashSet<>();
+		for (int i = 0; i < modelCount; i++) {
+			String manufacturer = MANUFACTURERS[manufacturerPicker.pick(random)];
+			int kind = random.nextInt(100);
+			boolean colour = kind < 20;
+			String category = kind < 6 ? "COLOR LASER PRINTER" : kind < 20 ? "COLOR MULTI-FUNCTION PRINTER"
+					: kind < 33 ? "MULTI-FUNCTION PRINTER" : "LASER PRINTER";
+			String name;
+			do {
+				name = (char) ('A' + random.nextInt(26)) + Integer.toString(1000 + random.nextInt(9000))
+						+ (colour ? "CDN" : random.nextBoolean() ? "DN" : "DW");
+			} while (!names.add(name));
+			models[i] = new PrinterModel(i, name, manufacturer, category, colour, !colour && random.nextInt(10) < 3);
+		}
+		modelPicker = new Picker(zipf(modelCount));
+		departmentPicker = new Picker(zipf(DEPARTMENTS.length));
+		serials = new Affine(SERIAL_RANGE, random);
+		barCodes = new Affine(BAR_CODE_RANGE, random);
+		parts = new Affine(PART_RANGE, random);
+	}
+
+	public int getPrinterCount() {
+		return printerCount;
+	}
+
+	public int getCampusCount() {
+		return campusStarts.length - 1;
+	}
+
+	/**
+	 * @return the printers, made afresh campus by campus on each pass
+	 */
+	public Iterable<Printer> printers() {
+		return () -> new CampusIterator<>(campus -> campus(campus).printers);
+	}
+
+	/**
+	 * @return the toners, made afresh campus by campus on each pass
+	 */
+	public Iterable<Toner> toners() {
+		return () -> new CampusIterator<>(campus -> campus(campus).toners);
+	}
+
+	/**
+	 * Writes the printers in the CSV layout the printer import reads
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writePrinterCsv(File file) throws IOException {
+		try (Writer out = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8), 1 << 16)) {
+			out.write("Bar Code,Description,Category Name,Location Name,Serial Number,Manufacturer Name,Division,Department,Campus,Status\n");
+			for (Printer printer : printers()) {
+				out.write(csv(printer.getBarCode()) + "," + csv(printer.getDescription()) + ","
+						+ csv(printer.getCategory()) + "," + csv(printer.getLocation()) + ","
+						+ csv(printer.getSerialNumber()) + "," + csv(printer.getManufacturer()) + ","
+						+ csv(printer.getDivision()) + "," + csv(printer.getDepartment()) + ","
+						+ csv(printer.getCampus()) + "," + csv(printer.getStatus()) + "\n");
+			}
+		}
+	}
+
+	/**
+	 * Writes the toners in the CSV layout the toner import reads
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeTonerCsv(File file) throws IOException {
+		try (Writer out = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8), 1 << 16)) {
+			out.write("PrinterModel,Brand,Model,Printers,MinStock,CurStock,Order,Needed\n");
+			for (Toner toner : toners()) {
+				out.write(csv(toner.getPrinterModel()) + "," + csv(toner.getBrand()) + "," + csv(toner.getModel()) + ","
+						+ csv(toner.getPrinters()) + "," + toner.getMinStock() + "," + toner.getCurStock() + ","
+						+ (toner.getOrder() ? "YES" : "NO") + "," + toner.getNeeded() + "\n");
+			}
+		}
+	}
+
+	/**
+	 * Writes a whole database with its links, as a binary snapshot if the
+	 * file ends in .ptdb and as XML otherwise. The file is replaced in one step.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeDatabase(File file) throws IOException {
+		SavePipeline.writeReplacing(file, printers(), toners());
+	}
+
+	/**
+	 * Records of one campus
+	 */
+	private static final class Campus {
+		final ArrayList<Printer> printers = new ArrayList<>();
+		final ArrayList<Toner> toners = new ArrayList<>();
+	}
+
+	/**
+	 * Makes one campus's printers and toners from its own random sequence
+	 */
+	private Campus campus(int index) {
+		Random random = new Random(seed * 1000003L + index);
+		Campus campus = new Campus();
+		String name = index < CAMPUSES.length ? CAMPUSES[index]
+				: CAMPUSES[index % CAMPUSES.length] + " " + (index / CAMPUSES.length + 1);
+		String[] buildings = Arrays.copyOf(BUILDINGS, 2 + random.nextInt(6));
+		LinkedHashMap<PrinterModel, ArrayList<Printer>> byModel = new LinkedHashMap<>();
+		for (int i = campusStarts[index]; i < campusStarts[index + 1]; i++) {
+			PrinterModel model = models[modelPicker.pick(random)];
+			Printer printer = new Printer(uuid(random), new ArrayList<String>());
+			printer.setBarCode(digits(barCodes.apply(i), 8, 10));
+			printer.setDescription(model.name);
+			printer.setCategory(model.category);
+			printer.setLocation(buildings[random.nextInt(buildings.length)] + (100 + random.nextInt(300)));
+			printer.setSerialNumber(digits(serials.apply(i), 8, 36));
+			printer.setManufacturer(model.manufacturer);
+			printer.setDivision(DIVISIONS[divisionPicker.pick(random)]);
+			printer.setDepartment(DEPARTMENTS[departmentPicker.pick(random)]);
+			printer.setCampus(name);
+			printer.setStatus(STATUSES[statusPicker.pick(random)]);
+			campus.printers.add(printer);
+			byModel.computeIfAbsent(model, k -> new ArrayList<>()).add(printer);
+		}
+		for (Map.Entry<PrinterModel, ArrayList<Printer>> entry : byModel.entrySet()) {
+			PrinterModel model = entry.getKey();
+			List<Printer> printers = entry.getValue();
+			int kinds = model.colour ? COLOURS.length : model.drum ? 2 : 1;
+			for (int kind = 0; kind < kinds; kind++) {
+				ArrayList<String> linked = new ArrayList<>(printers.size());
+				for (Printer printer : printers) {
+					linked.add(printer.getUid());
+				}
+				Toner toner = new Toner(uuid(random), linked);
+				toner.setPrinterModel(model.colour ? model.name + "-" + COLOURS[kind]
+						: kind == 1 ? model.name + "-Drum" : model.name);
+				toner.setBrand(model.manufacturer);
+				toner.setModel(digits(parts.apply(model.index * 5L + kind), 5, 36));
+				toner.setPrinters(Integer.toString(printers.size()));
+				int minStock = MIN_STOCKS[minStockPicker.pick(random)];
+				int curStock = random.nextInt(minStock * 2 + 2);
+				toner.setMinStock(minStock);
+				toner.setCurStock(curStock);
+				toner.setOrder(curStock < minStock);
+				toner.setNeeded(Math.max(0, minStock - curStock));
+				for (Printer printer : printers) {
+					printer.getLinkedToners().add(toner.getUid());
+				}
+				campus.toners.add(toner);
+			}
+		}
+		return campus;
+	}
+
+	/**
+	 * Walks the records of every campus in order, keeping one campus in memory
+	 */
+	private final class CampusIterator<T> implements Iterator<T> {
+		private final IntFunction<List<T>> records;
+		private int campus;
+		private Iterator<T> current = Collections.emptyIterator();
+
+		CampusIterator(IntFunction<List<T>> records) {
+			this.records = records;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!current.hasNext() && campus < getCampusCount()) {
+				current = records.apply(campus++).iterator();
+			}
+			return current.hasNext();
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			return current.next();
+		}
+	}
+
+	/**
+	 * Picks an index with chances in proportion to its weight
+	 */
+	private static final class Picker {
+		private final double[] cumulative;
+
+		Picker(int[] weights) {
+			this(Arrays.stream(weights).asDoubleStream().toArray());
+		}
+
+		Picker(double[] weights) {
+			cumulative = new double[weights.length];
+			double sum = 0;
+			for (int i = 0; i < weights.length; i++) {
+				sum += weights[i];
+				cumulative[i] = sum;
+			}
+		}
+
+		int pick(Random random) {
+			double target = random.nextDouble() * cumulative[cumulative.length - 1];
+			int index = Arrays.binarySearch(cumulative, target);
+			index = index < 0 ? -index - 1 : index + 1;
+			return Math.min(index, cumulative.length - 1);
+		}
+	}
+
+	/**
+	 * Weights 1, 1/2, 1/3 ... so a few values are very common and most are rare
+	 */
+	private static double[] zipf(int count) {
+		double[] weights = new double[count];
+		for (int i = 0; i < count; i++) {
+			weights[i] = 1.0 / (i + 1);
+		}
+		return weights;
+	}
+
+	/**
+	 * Maps 0 .. range-1 onto itself in a scrambled order, so numbers made
+	 * from a printer's index look random but never repeat
+	 */
+	private static final class Affine {
+		private final long range;
+		private final long multiplier;
+		private final long offset;
+
+		Affine(long range, Random random) {
+			this.range = range;
+			long multiplier = Math.floorMod(random.nextLong(), range) | 1;
+			// every range is a power of 36 or of 10, so avoiding 2, 3 and 5 is enough
+			while (multiplier % 3 == 0 || multiplier % 5 == 0) multiplier += 2;
+			this.multiplier = multiplier;
+			this.offset = Math.floorMod(random.nextLong(), range);
+		}
+
+		long apply(long value) {
+			return (mulMod(Math.floorMod(value, range), multiplier, range) + offset) % range;
+		}
+
+		/**
+		 * a * b mod m without overflowing, for a below m and m below 2^41
+		 */
+		private static long mulMod(long a, long b, long m) {
+			long high = (a * (b >>> 21)) % m;
+			return ((high << 21) % m + a * (b & 0x1FFFFF)) % m;
+		}
+	}
+
+	private static String uuid(Random random) {
+		long most = (random.nextLong() & ~0xF000L) | 0x4000L;
+		long least = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+		return new UUID(most, least).toString();
+	}
+
+	/**
+	 * Writes a number with leading zeros, in upper case for bases above 10
+	 */
+	private static String digits(long value, int count, int radix) {
+		char[] chars = new char[count];
+		for (int i = count - 1; i >= 0; i--) {
+			chars[i] = Character.toUpperCase(Character.forDigit((int) (value % radix), radix));
+			value /= radix;
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Quotes a value for a CSV field if it needs it
+	 */
+	private static String csv(String value) {
+		if (value == null) return "";
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+}
@@ -0,0 +1,308 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal kept next to a save file. Every change to the database
+ * is appended as one entry holding the whole record after the change, or the
+ * UID of a removed record. Because each entry carries full state, replaying
+ * an entry the save file already contains does no harm, which is what lets
+ * compaction fold the journal into a new save file without any bookkeeping.
+ *
+ * <pre>
+ *   entry: payload length, CRC32 of the payload, payload
+ *   payload: operation byte, then a printer, a toner or a uid
+ * </pre>
+ *
+ * Entries are checked against their CRC when replayed. A torn or corrupt
+ * entry ends the replay and is cut off, along with anything after it.
+ * Appends are synchronized, so stock changes on different threads each
+ * write whole entries.
+ *
+ */
+class Journal implements Closeable {
+
+	static final String EXTENSION = ".journal";
+	/**
+	 * Journal handed over to a compaction that has not finished yet
+	 */
+	static final String OLD_EXTENSION = ".journal.old";
+
+	private static final int PUT_PRINTER = 1;
+	private static final int PUT_TONER = 2;
+	private static final int REMOVE_PRINTER = 3;
+	private static final int REMOVE_TONER = 4;
+
+	private static final int HEADER_SIZE = 8;
+
+	private final File file;
+	private final FileChannel channel;
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	private final DataOutputStream data = new DataOutputStream(bytes);
+	private final CRC32 crc = new CRC32();
+
+	/**
+	 * Opens a journal to append to, creating it if needed
+	 * @param file
+	 * @throws IOException
+	 */
+	Journal(File file) throws IOException {
+		this.file = file;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * @param saveFile
+	 * @return the journal that belongs to the save file
+	 */
+	static File fileFor(File saveFile) {
+		return new File(saveFile.getPath() + EXTENSION);
+	}
+
+	/**
+	 * @param saveFile
+	 * @return the journal a compaction of the save file is folding in
+	 */
+	static File oldFileFor(File saveFile) {
+		return new File(saveFile.getPath() + OLD_EXTENSION);
+	}
+
+	synchronized void putPrinter(Printer printer) throws IOException {
+		data.writeByte(PUT_PRINTER);
+		writeString(printer.getUid());
+		writeString(printer.getBarCode());
+		writeString(printer.getDescription());
+		writeString(printer.getCategory());
+		writeString(printer.getLocation());
+		writeString(printer.getSerialNumber());
+		writeString(printer.getManufacturer());
+		writeString(printer.getDivision());
+		writeString(printer.getDepartment());
+		writeString(printer.getCampus());
+		writeString(printer.getStatus());
+		writeString(printer.getPrinterNotes());
+		writeUids(printer.getLinkedToners());
+		append();
+	}
+
+	/**
+	 * Needed and order are left out, the reorder engine works them out again
+	 * @param toner
+	 * @throws IOException
+	 */
+	synchronized void putToner(Toner toner) throws IOException {
+		data.writeByte(PUT_TONER);
+		writeString(toner.getUid());
+		writeString(toner.getPrinterModel());
+		writeString(toner.getBrand());
+		writeString(toner.getModel());
+		writeString(toner.getPrinters());
+		data.writeInt(toner.getMinStock());
+		data.writeInt(toner.getCurStock());
+		writeUids(toner.getLinkedPrinters());
+		append();
+	}
+
+	synchronized void removePrinter(String uid) throws IOException {
+		data.writeByte(REMOVE_PRINTER);
+		writeString(uid);
+		append();
+	}
+
+	synchronized void removeToner(String uid) throws IOException {
+		data.writeByte(REMOVE_TONER);
+		writeString(uid);
+		append();
+	}
+
+	/**
+	 * Forces the entries written so far onto the disk
+	 * @throws IOException
+	 */
+	synchronized void sync() throws IOException {
+		channel.force(false);
+	}
+
+	/**
+	 * @return length of the journal in bytes
+	 * @throws IOException
+	 */
+	long size() throws IOException {
+		return channel.size();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Closes the journal and deletes its file if nothing was ever written to it
+	 * @throws IOException
+	 */
+	synchronized void closeAndDeleteIfEmpty() throws IOException {
+		boolean empty = channel.size() == 0;
+		channel.close();
+		if (empty) Files.deleteIfExists(file.toPath());
+	}
+
+	/**
+	 * Applies every entry of a journal to the database, in the order they
+	 * were written. Entries go through the same add and remove methods the
+	 * user's changes did, so links cascade the same way. A torn or corrupt
+	 * tail is truncated so new entries are never appended after it.
+	 * @param file journal to replay, nothing happens if it does not exist
+	 * @param database
+	 * @return number of entries applied
+	 * @throws IOException
+	 */
+	static int replay(File file, Database database) throws IOException {
+		if (!file.exists()) return 0;
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		CRC32 check = new CRC32();
+		int count = 0;
+		while (buffer.remaining() >= HEADER_SIZE) {
+			int start = buffer.position();
+			int length = buffer.getInt();
+			int expected = buffer.getInt();
+			if (length <= 0 || length > buffer.remaining()) {
+				buffer.position(start);
+				break;
+			}
+			check.reset();
+			check.update(buffer.array(), buffer.position(), length);
+			if ((int) check.getValue() != expected) {
+				buffer.position(start);
+				break;
+			}
+			ByteBuffer payload = (ByteBuffer) buffer.slice().limit(length);
+			buffer.position(buffer.position() + length);
+			try {
+				apply(payload, database);
+			} catch (RuntimeException e) {
+				// a CRC match with a bad payload means a bug, not a torn write
+				throw new IOException("Bad journal entry at byte " + start + " of " + file.getPath(), e);
+			}
+			count++;
+		}
+		if (buffer.position() < buffer.limit()) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(buffer.position());
+			}
+		}
+		return count;
+	}
+
+	private static void apply(ByteBuffer payload, Database database) throws IOException {
+		int operation = payload.get();
+		switch (operation) {
+		case PUT_PRINTER: {
+			Printer printer = new Printer(readString(payload), new ArrayList<String>());
+			printer.setBarCode(readString(payload));
+			printer.setDescription(readString(payload));
+			printer.setCategory(readString(payload));
+			printer.setLocation(readString(payload));
+			printer.setSerialNumber(readString(payload));
+			printer.setManufacturer(readString(payload));
+			printer.setDivision(readString(payload));
+			printer.setDepartment(readString(payload));
+			printer.setCampus(readString(payload));
+			printer.setStatus(readString(payload));
+			printer.setPrinterNotes(readString(payload));
+			readUids(payload, printer.getLinkedToners());
+			database.addPrinter(printer);
+			break;
+		}
+		case PUT_TONER: {
+			Toner toner = new Toner(readString(payload), new ArrayList<String>());
+			toner.setPrinterModel(readString(payload));
+			toner.setBrand(readString(payload));
+			toner.setModel(readString(payload));
+			toner.setPrinters(readString(payload));
+			toner.setMinStock(payload.getInt());
+			toner.setCurStock(payload.getInt());
+			readUids(payload, toner.getLinkedPrinters());
+			database.addToner(toner);
+			break;
+		}
+		case REMOVE_PRINTER: {
+			Printer printer = database.findPrinterByUid(readString(payload));
+			if (printer != null) database.removePrinter(printer);
+			break;
+		}
+		case REMOVE_TONER: {
+			Toner toner = database.findTonerByUid(readString(payload));
+			if (toner != null) database.removeToner(toner);
+			break;
+		}
+		default:
+			throw new IOException("Unknown journal operation " + operation);
+		}
+	}
+
+	/**
+	 * Frames the payload built up in the byte stream and writes it as one entry
+	 */
+	private void append() throws IOException {
+		byte[] payload = bytes.toByteArray();
+		bytes.reset();
+		crc.reset();
+		crc.update(payload, 0, payload.length);
+		ByteBuffer entry = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+		entry.putInt(payload.length);
+		entry.putInt((int) crc.getValue());
+		entry.put(payload);
+		entry.flip();
+		while (entry.hasRemaining()) {
+			channel.write(entry);
+		}
+	}
+
+	/**
+	 * Writes a string as its UTF-8 byte length and bytes, -1 for null
+	 */
+	private void writeString(String string) throws IOException {
+		if (string == null) {
+			data.writeInt(-1);
+			return;
+		}
+		byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+		data.writeInt(utf8.length);
+		data.write(utf8);
+	}
+
+	private void writeUids(ArrayList<String> uids) throws IOException {
+		data.writeInt(uids.size());
+		for (String uid : uids) {
+			writeString(uid);
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0) return null;
+		if (length > buffer.remaining()) throw new IndexOutOfBoundsException("String runs past the entry");
+		String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return string;
+	}
+
+	private static void readUids(ByteBuffer buffer, ArrayList<String> uids) {
+		int count = buffer.getInt();
+		for (int i = 0; i < count; i++) {
+			uids.add(readString(buffer));
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Two way map of the links between printers and toners. Every link is stored
+ * under both the printer UID and the toner UID so either side can be answered
+ * without scanning, and adding or removing one link is constant time.
+ * Not thread safe, the database only touches it while holding its write lock.
+ *
+ */
+public class LinkGraph {
+
+	/**
+	 * Toner UIDs linked to each printer UID
+	 */
+	private final HashMap<String, LinkedHashSet<String>> tonersByPrinter = new HashMap<>();
+	/**
+	 * Printer UIDs linked to each toner UID
+	 */
+	private final HashMap<String, LinkedHashSet<String>> printersByToner = new HashMap<>();
+
+	/**
+	 * Links a printer and a toner
+	 * @param printerUid
+	 * @param tonerUid
+	 * @return true if the link did not exist before
+	 */
+	public boolean link(String printerUid, String tonerUid) {
+		if (!tonersByPrinter.computeIfAbsent(printerUid, k -> new LinkedHashSet<>()).add(tonerUid)) {
+			return false;
+		}
+		printersByToner.computeIfAbsent(tonerUid, k -> new LinkedHashSet<>()).add(printerUid);
+		return true;
+	}
+
+	/**
+	 * Removes the link between a printer and a toner
+	 * @param printerUid
+	 * @param tonerUid
+	 * @return true if the link existed
+	 */
+	public boolean unlink(String printerUid, String tonerUid) {
+		if (!removeEdge(tonersByPrinter, printerUid, tonerUid)) {
+			return false;
+		}
+		removeEdge(printersByToner, tonerUid, printerUid);
+		return true;
+	}
+
+	/**
+	 * Removes every link of a printer
+	 * @param printerUid
+	 * @return UIDs of the toners that were linked to the printer
+	 */
+	public Set<String> removePrinter(String printerUid) {
+		LinkedHashSet<String> toners = tonersByPrinter.remove(printerUid);
+		if (toners == null) return Collections.emptySet();
+		for (String tonerUid : toners) {
+			removeEdge(printersByToner, tonerUid, printerUid);
+		}
+		return toners;
+	}
+
+	/**
+	 * Removes every link of a toner
+	 * @param tonerUid
+	 * @return UIDs of the printers that were linked to the toner
+	 */
+	public Set<String> removeToner(String tonerUid) {
+		LinkedHashSet<String> printers = printersByToner.remove(tonerUid);
+		if (printers == null) return Collections.emptySet();
+		for (String printerUid : printers) {
+			removeEdge(tonersByPrinter, printerUid, tonerUid);
+		}
+		return printers;
+	}
+
+	/**
+	 * @param printerUid
+	 * @return read only view of the toner UIDs linked to the printer
+	 */
+	public Set<String> getLinkedToners(String printerUid) {
+		LinkedHashSet<String> toners = tonersByPrinter.get(printerUid);
+		return toners == null ? Collections.emptySet() : Collections.unmodifiableSet(toners);
+	}
+
+	/**
+	 * @param tonerUid
+	 * @return read only view of the printer UIDs linked to the toner
+	 */
+	public Set<String> getLinkedPrinters(String tonerUid) {
+		LinkedHashSet<String> printers = printersByToner.get(tonerUid);
+		return printers == null ? Collections.emptySet() : Collections.unmodifiableSet(printers);
+	}
+
+	/**
+	 * @param printerUid
+	 * @return number of toners linked to the printer
+	 */
+	public int tonerCount(String printerUid) {
+		LinkedHashSet<String> toners = tonersByPrinter.get(printerUid);
+		return toners == null ? 0 : toners.size();
+	}
+
+	/**
+	 * @param tonerUid
+	 * @return number of printers linked to the toner
+	 */
+	public int printerCount(String tonerUid) {
+		LinkedHashSet<String> printers = printersByToner.get(tonerUid);
+		return printers == null ? 0 : printers.size();
+	}
+
+	/**
+	 * Removes every link
+	 */
+	public void clear() {
+		tonersByPrinter.clear();
+		printersByToner.clear();
+	}
+
+	/**
+	 * Removes one direction of an edge, dropping the set once it is empty
+	 */
+	private static boolean removeEdge(HashMap<String, LinkedHashSet<String>> map, String from, String to) {
+		LinkedHashSet<String> edges = map.get(from);
+		if (edges == null || !edges.remove(to)) return false;
+		if (edges.isEmpty()) map.remove(from);
+		return true;
+	}
+}
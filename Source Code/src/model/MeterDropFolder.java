@@ -0,0 +1,196 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Folder that meter files are dropped into, standing in for polling the
+ * printers over SNMP. Whatever collects the page counts writes a CSV file
+ * into the folder and it is read once it has stopped changing. Every file
+ * already there is read on start, oldest name first, so the folder is the
+ * printers' meter history and a restart rebuilds the store from it.
+ *
+ * Files are read on one background thread, in the order they settle.
+ *
+ */
+public class MeterDropFolder implements Closeable {
+
+	/**
+	 * A file is read once its size and time have not changed for this long
+	 */
+	static final long SETTLE_MILLIS = 1000;
+
+	private final File folder;
+	private final MeterReader reader;
+	private final Consumer<MeterReport> reports;
+	/**
+	 * Size and modified time of each file when it was last read
+	 */
+	private final HashMap<String, long[]> read = new HashMap<>();
+	/**
+	 * Files waiting to settle, with the size and time they were last seen at
+	 * and when that was
+	 */
+	private final HashMap<String, long[]> waiting = new HashMap<>();
+	private WatchService watcher;
+	private Thread thread;
+
+	/**
+	 * @param folder
+	 * @param reader reads each file into its meter store
+	 * @param reports called on the folder's thread with each file's report
+	 */
+	public MeterDropFolder(File folder, MeterReader reader, Consumer<MeterReport> reports) {
+		this.folder = folder;
+		this.reader = reader;
+		this.reports = reports;
+	}
+
+	/**
+	 * Reads the files already in the folder and starts watching it
+	 * @throws IOException if the folder cannot be watched
+	 */
+	public synchronized void start() throws IOException {
+		if (thread != null) throw new IllegalStateException("Already started");
+		if (!folder.isDirectory()) throw new IOException("Not a folder: " + folder.getPath());
+		watcher = FileSystems.getDefault().newWatchService();
+		folder.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		thread = new Thread(this::run, "meter-drop");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Reads the files already in the folder that have not been read,
+	 * oldest name first, on the calling thread
+	 */
+	public void readAll() {
+		File[] files = listMeterFiles();
+		Arrays.sort(files);
+		for (File file : files) {
+			readIfChanged(file);
+		}
+	}
+
+	/**
+	 * Stops watching, a file being read is finished first
+	 */
+	@Override
+	public void close() throws IOException {
+		Thread running;
+		synchronized (this) {
+			running = thread;
+			thread = null;
+			if (watcher != null) watcher.close();
+		}
+		if (running != null && running != Thread.currentThread()) {
+			try {
+				running.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void run() {
+		readAll();
+		try {
+			while (true) {
+				WatchKey key = waiting.isEmpty()
+						? watcher.take()
+						: watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+				if (key != null) {
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+							// events were lost, look at everything again
+							for (File file : listMeterFiles()) {
+								waiting.putIfAbsent(file.getName(), new long[] {-1, -1, 0});
+							}
+						} else {
+							String name = ((Path) event.context()).toString();
+							if (isMeterFile(name)) waiting.put(name, new long[] {-1, -1, 0});
+						}
+					}
+					key.reset();
+				}
+				readSettled();
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// closed
+		}
+	}
+
+	/**
+	 * Reads the waiting files whose size and time have stayed the same for
+	 * SETTLE_MILLIS, oldest name first
+	 */
+	private void readSettled() {
+		long now = System.currentTimeMillis();
+		String[] names = waiting.keySet().toArray(new String[0]);
+		Arrays.sort(names);
+		for (String name : names) {
+			File file = new File(folder, name);
+			long[] seen = waiting.get(name);
+			if (!file.isFile()) {
+				waiting.remove(name);
+			} else if (file.length() != seen[0] || file.lastModified() != seen[1]) {
+				seen[0] = file.length();
+				seen[1] = file.lastModified();
+				seen[2] = now;
+			} else if (now - seen[2] >= SETTLE_MILLIS) {
+				waiting.remove(name);
+				readIfChanged(file);
+			}
+		}
+	}
+
+	/**
+	 * Reads a file unless it was already read at its current size and time
+	 */
+	private void readIfChanged(File file) {
+		long[] stamp = {file.length(), file.lastModified()};
+		synchronized (read) {
+			long[] last = read.get(file.getName());
+			if (last != null && Arrays.equals(last, stamp)) return;
+			read.put(file.getName(), stamp);
+		}
+		MeterReport report;
+		try {
+			report = reader.read(file);
+		} catch (IOException e) {
+			report = new MeterReport(file.getName());
+			report.error(0, "Could not read the file: " + e.getMessage());
+		}
+		reports.accept(report);
+	}
+
+	private File[] listMeterFiles() {
+		File[] files = folder.listFiles((dir, name) -> isMeterFile(name));
+		return files == null ? new File[0] : files;
+	}
+
+	private static boolean isMeterFile(String name) {
+		return name.toLowerCase().endsWith(".csv");
+	}
+
+	/**
+	 * @return number of files read so far
+	 */
+	public int getFilesRead() {
+		synchronized (read) {
+			return read.size();
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneRules;
+
+/**
+ * Reads page counter CSV files into a meter store. Each row after the
+ * header is one reading:
+ *
+ * <pre>
+ *   printer,time,pages
+ *   CNB1234567,2024-05-01T08:00:00,18233
+ * </pre>
+ *
+ * The printer is found by its serial number, or failing that its bar code.
+ * The time is seconds since the epoch or an ISO-8601 date and time, with
+ * or without seconds, a 'T' or a space between date and time, and an
+ * optional Z or offset. Times without an offset are local time. The file
+ * is streamed straight out of memory, one reading costs a lookup and an
+ * append, and no record is locked.
+ *
+ */
+public class MeterReader {
+
+	private final Database database;
+	private final MeterStore meters;
+	private final ZoneRules localZone;
+
+	/**
+	 * @param database printers the readings belong to
+	 * @param meters store the readings go into
+	 */
+	public MeterReader(Database database, MeterStore meters) {
+		this(database, meters, ZoneId.systemDefault());
+	}
+
+	/**
+	 * @param database
+	 * @param meters
+	 * @param zone time zone of times without an offset
+	 */
+	public MeterReader(Database database, MeterStore meters, ZoneId zone) {
+		this.database = database;
+		this.meters = meters;
+		this.localZone = zone.getRules();
+	}
+
+	/**
+	 * Reads every reading in a file
+	 * @param file CSV file with a header line
+	 * @return what was recorded and which rows were left out
+	 * @throws IOException if the file cannot be read
+	 */
+	public MeterReport read(File file) throws IOException {
+		MeterReport report = new MeterReport(file.getName());
+		try (CsvReader csv = CsvReader.open(file)) {
+			csv.nextRecord(); //skip the header
+			String lastKey = null;
+			Printer printer = null;
+			while (csv.nextRecord()) {
+				int line = csv.getLineNumber();
+				if (csv.fieldCount() == 1 && csv.isEmpty(0)) continue;
+				if (csv.fieldCount() < 3) {
+					report.error(line, "Expected printer, time and pages");
+					continue;
+				}
+				// files usually list a printer's readings together
+				String key = csv.field(0).trim();
+				if (!key.equals(lastKey)) {
+					lastKey = key;
+					printer = database.findPrinterBySerialNumber(key);
+					if (printer == null) printer = database.findPrinterByBarCode(key);
+				}
+				if (printer == null) {
+					report.error(line, "No printer with serial number or bar code " + key);
+					continue;
+				}
+				long time;
+				int pages;
+				try {
+					time = parseTime(csv.field(1).trim());
+				} catch (DateTimeException | NumberFormatException e) {
+					report.error(line, "Time is not a date and time: " + csv.field(1));
+					continue;
+				}
+				try {
+					pages = csv.intField(2);
+				} catch (NumberFormatException e) {
+					report.error(line, "Pages is not a whole number: " + csv.field(2));
+					continue;
+				}
+				if (pages < 0) {
+					report.error(line, "Pages cannot be negative");
+					continue;
+				}
+				try {
+					if (meters.record(printer.getUid(), time, pages)) {
+						report.recorded();
+					} else {
+						report.outOfDate();
+					}
+				} catch (IllegalArgumentException e) {
+					report.error(line, e.getMessage());
+				}
+			}
+		}
+		return report;
+	}
+
+	/**
+	 * Parses seconds since the epoch, or yyyy-MM-dd HH:mm[:ss[.fraction]]
+	 * with a 'T' or a space in the middle and an optional Z or +HH:mm. Done
+	 * by hand because a DateTimeFormatter costs more than the rest of a row.
+	 * @param text
+	 * @return seconds since the epoch
+	 */
+	long parseTime(String text) {
+		int length = text.length();
+		if (length > 0 && allDigits(text)) return Long.parseLong(text);
+		if (length < 16 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(13) != ':'
+				|| (text.charAt(10) != 'T' && text.charAt(10) != ' ')) {
+			throw new DateTimeException(text);
+		}
+		int year = digits(text, 0, 4);
+		int month = digits(text, 5, 2);
+		int day = digits(text, 8, 2);
+		int hour = digits(text, 11, 2);
+		int minute = digits(text, 14, 2);
+		int second = 0;
+		int p = 16;
+		if (p < length && text.charAt(p) == ':') {
+			second = digits(text, p + 1, 2);
+			p += 3;
+			if (p < length && text.charAt(p) == '.') {
+				p++;
+				while (p < length && Character.isDigit(text.charAt(p))) p++;
+			}
+		}
+		LocalDateTime local = LocalDateTime.of(year, month, day, hour, minute, second);
+		ZoneOffset offset;
+		if (p == length) {
+			offset = localZone.getOffset(local);
+		} else if (p == length - 1 && (text.charAt(p) == 'Z' || text.charAt(p) == 'z')) {
+			offset = ZoneOffset.UTC;
+		} else {
+			offset = ZoneOffset.of(text.substring(p));
+		}
+		return local.toEpochSecond(offset);
+	}
+
+	private static boolean allDigits(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') return false;
+		}
+		return true;
+	}
+
+	private static int digits(String text, int start, int count) {
+		if (start + count > text.length()) throw new DateTimeException(text);
+		int value = 0;
+		for (int i = start; i < start + count; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') throw new DateTimeException(text);
+			value = value * 10 + c - '0';
+		}
+		return value;
+	}
+}
@@ -0,0 +1,62 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What reading a meter file did: readings recorded, readings left out
+ * because the printer already had a newer one, and rows that could not be
+ * used, with their line numbers.
+ *
+ */
+public class MeterReport {
+
+	private final String source;
+	private final ArrayList<ImportError> errors = new ArrayList<>();
+	private int recorded;
+	private int outOfDate;
+
+	MeterReport(String source) {
+		this.source = source;
+	}
+
+	void recorded() {
+		recorded++;
+	}
+
+	void outOfDate() {
+		outOfDate++;
+	}
+
+	void error(int line, String reason) {
+		errors.add(new ImportError(line, reason));
+	}
+
+	/**
+	 * @return name of the file read
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	public int getRecorded() {
+		return recorded;
+	}
+
+	/**
+	 * @return readings no newer than the printer's last reading
+	 */
+	public int getOutOfDate() {
+		return outOfDate;
+	}
+
+	public List<ImportError> getErrors() {
+		return Collections.unmodifiableList(errors);
+	}
+
+	@Override
+	public String toString() {
+		return recorded + " readings recorded, " + outOfDate + " out of date, " + errors.size() + " rejected";
+	}
+}
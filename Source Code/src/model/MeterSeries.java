@@ -0,0 +1,138 @@
+package model;
+
+/**
+ * Page counter readings of one printer, oldest first. Readings are kept in
+ * two int arrays used as a ring, so a printer costs 8 bytes a reading and
+ * only the last MAX_READINGS are kept. The printer's pages a day are
+ * estimated as each reading comes in, as a moving average that halves the
+ * weight of a day's pages every HALF_LIFE_DAYS, so a forecast never has to
+ * go back over the readings.
+ *
+ */
+public class MeterSeries {
+
+	/**
+	 * Readings kept per printer, a couple of days of hourly polling
+	 */
+	public static final int MAX_READINGS = 64;
+	/**
+	 * Days after which a rate counts half as much towards the estimate
+	 */
+	static final double HALF_LIFE_DAYS = 7;
+
+	/**
+	 * Times are seconds from the start of 2000, which fits an int until 2068
+	 */
+	private static final long BASE_SECONDS = 946684800L;
+	private static final double SECONDS_PER_DAY = 86400;
+
+	private int[] times = new int[4];
+	private int[] pages = new int[4];
+	/**
+	 * Index of the oldest reading in the arrays
+	 */
+	private int first;
+	private int size;
+	private double pagesPerDay = Double.NaN;
+
+	/**
+	 * Adds a reading if it is newer than the last one. A counter that went
+	 * down was reset or swapped, the estimate carries on from the new count.
+	 * @param epochSeconds time of the reading, seconds since the epoch
+	 * @param pageCount printer's total page count
+	 * @return false if the reading is not newer than the last one and was left out
+	 */
+	synchronized boolean add(long epochSeconds, int pageCount) {
+		long relative = epochSeconds - BASE_SECONDS;
+		if (relative < 0 || relative > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Reading time out of range: " + epochSeconds);
+		}
+		int time = (int) relative;
+		if (size > 0) {
+			int last = index(size - 1);
+			if (time <= times[last]) return false;
+			if (pageCount >= pages[last]) {
+				double days = (time - times[last]) / SECONDS_PER_DAY;
+				double rate = (pageCount - pages[last]) / days;
+				if (Double.isNaN(pagesPerDay)) {
+					pagesPerDay = rate;
+				} else {
+					double weight = 1 - Math.pow(0.5, days / HALF_LIFE_DAYS);
+					pagesPerDay += weight * (rate - pagesPerDay);
+				}
+			}
+		}
+		if (size == MAX_READINGS) {
+			first = index(1);
+			size--;
+		} else if (size == times.length) {
+			grow();
+		}
+		int next = index(size);
+		times[next] = time;
+		pages[next] = pageCount;
+		size++;
+		return true;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @param i 0 for the oldest reading kept
+	 * @return time of the reading, seconds since the epoch
+	 */
+	public synchronized long getTime(int i) {
+		checkIndex(i);
+		return times[index(i)] + BASE_SECONDS;
+	}
+
+	/**
+	 * @param i 0 for the oldest reading kept
+	 * @return page count of the reading
+	 */
+	public synchronized int getPages(int i) {
+		checkIndex(i);
+		return pages[index(i)];
+	}
+
+	/**
+	 * @return time of the last reading, seconds since the epoch, or 0 if there is none
+	 */
+	public synchronized long getLastTime() {
+		return size == 0 ? 0 : times[index(size - 1)] + BASE_SECONDS;
+	}
+
+	/**
+	 * @return estimated pages printed a day, NaN until there are two readings
+	 */
+	public synchronized double getPagesPerDay() {
+		return pagesPerDay;
+	}
+
+	private int index(int i) {
+		int index = first + i;
+		return index < times.length ? index : index - times.length;
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Reading " + i + " of " + size);
+	}
+
+	/**
+	 * Doubles the arrays, unrolling the ring so the oldest reading is at 0
+	 */
+	private void grow() {
+		int capacity = Math.min(times.length * 2, MAX_READINGS);
+		int[] newTimes = new int[capacity];
+		int[] newPages = new int[capacity];
+		for (int i = 0; i < size; i++) {
+			newTimes[i] = times[index(i)];
+			newPages[i] = pages[index(i)];
+		}
+		times = newTimes;
+		pages = newPages;
+		first = 0;
+	}
+}
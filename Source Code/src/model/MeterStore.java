@@ -0,0 +1,53 @@
+package model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Page counter readings of every printer, by printer UID. Readings are
+ * only kept in memory. The meter files they came from are the record, and
+ * reading them again rebuilds the store.
+ *
+ */
+public class MeterStore {
+
+	private final ConcurrentHashMap<String, MeterSeries> series = new ConcurrentHashMap<>();
+
+	/**
+	 * Adds a reading to a printer's series, starting the series if needed
+	 * @param printerUid
+	 * @param epochSeconds time of the reading, seconds since the epoch
+	 * @param pageCount
+	 * @return false if the reading is not newer than the printer's last one
+	 */
+	boolean record(String printerUid, long epochSeconds, int pageCount) {
+		return series.computeIfAbsent(printerUid, k -> new MeterSeries()).add(epochSeconds, pageCount);
+	}
+
+	/**
+	 * @param printerUid
+	 * @return the printer's readings, or null if it has none
+	 */
+	public MeterSeries getSeries(String printerUid) {
+		return series.get(printerUid);
+	}
+
+	/**
+	 * @param printerUid
+	 * @return estimated pages the printer prints a day, NaN if it is not known yet
+	 */
+	public double getPagesPerDay(String printerUid) {
+		MeterSeries readings = series.get(printerUid);
+		return readings == null ? Double.NaN : readings.getPagesPerDay();
+	}
+
+	/**
+	 * @return number of printers with readings
+	 */
+	public int size() {
+		return series.size();
+	}
+
+	public void clear() {
+		series.clear();
+	}
+}
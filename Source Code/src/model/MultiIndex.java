@@ -0,0 +1,89 @@
+package model;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import interfaces.InventoryObject;
+
+/**
+ * Hash index from one categorical attribute of a record to every record with
+ * that value. Keys are normalized the same way as UniqueIndex. The key each
+ * record was indexed under is remembered by UID so a record can be reindexed
+ * after its setters have already changed the attribute.
+ * Lookups take no lock and may run while one writer changes the index.
+ *
+ * @param <T> printer or toner
+ */
+public class MultiIndex<T extends InventoryObject> {
+
+	private final Function<T, String> keyFunction;
+	private final ConcurrentHashMap<String, Set<T>> recordsByKey = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, String> keyByUid = new ConcurrentHashMap<>();
+
+	/**
+	 * @param keyFunction reads the indexed attribute from a record
+	 */
+	public MultiIndex(Function<T, String> keyFunction) {
+		this.keyFunction = keyFunction;
+	}
+
+	/**
+	 * Indexes a record under its current key
+	 * @param record
+	 */
+	public void add(T record) {
+		String key = UniqueIndex.normalize(keyFunction.apply(record));
+		if (key == null) return;
+		keyByUid.put(record.getUid(), key);
+		recordsByKey.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(record);
+	}
+
+	/**
+	 * Removes a record using the key it was indexed under
+	 * @param record
+	 */
+	public void remove(T record) {
+		String key = keyByUid.remove(record.getUid());
+		if (key == null) return;
+		Set<T> records = recordsByKey.get(key);
+		if (records != null && records.remove(record) && records.isEmpty()) {
+			recordsByKey.remove(key);
+		}
+	}
+
+	/**
+	 * Moves a record to its current key if the attribute changed
+	 * @param record
+	 */
+	public void update(T record) {
+		String key = UniqueIndex.normalize(keyFunction.apply(record));
+		String old = keyByUid.get(record.getUid());
+		if (key == null ? old == null : key.equals(old)) return;
+		remove(record);
+		add(record);
+	}
+
+	/**
+	 * @param key
+	 * @return read only view of the records indexed under key
+	 */
+	public Set<T> get(String key) {
+		String normalized = UniqueIndex.normalize(key);
+		Set<T> records = normalized == null ? null : recordsByKey.get(normalized);
+		return records == null ? Collections.emptySet() : Collections.unmodifiableSet(records);
+	}
+
+	/**
+	 * @return read only view of every distinct key
+	 */
+	public Set<String> keys() {
+		return Collections.unmodifiableSet(recordsByKey.keySet());
+	}
+
+	public void clear() {
+		recordsByKey.clear();
+		keyByUid.clear();
+	}
+}
@@ -0,0 +1,241 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import model.ImportJob.Batch;
+
+/**
+ * Imports a large CSV file on every core. The file is cut into byte ranges
+ * that end on line breaks, and each range is mapped, parsed and validated
+ * on a ForkJoinPool. Parsed records come back one range at a time, in file
+ * order, on the thread that called run(). Only a few ranges are in flight at
+ * once, so memory stays bounded however long the file is.
+ *
+ * A line break inside a quoted field could fool the cut. Quotes come in
+ * pairs outside of a quoted field, so every range counts its quotes in
+ * parallel first, and a range that would start with an odd number of quotes
+ * before it is joined onto the range in front of it. The same pass counts
+ * line breaks, so each range knows the line it starts on and rejected rows
+ * can be reported by line number.
+ *
+ * @param <T> printer or toner
+ */
+class ParallelCsvImporter<T> {
+
+	/**
+	 * Target size of one range. The last line of a range runs past it.
+	 */
+	static final long CHUNK_SIZE = 8L << 20;
+
+	private final File file;
+	private final Function<CsvReader, T> parser;
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param file CSV file with a header line
+	 * @param parser turns the current record into a record object, throwing an
+	 * IllegalArgumentException if it is invalid. Called on pool threads, so it
+	 * must not touch the database.
+	 */
+	ParallelCsvImporter(File file, Function<CsvReader, T> parser) {
+		this.file = file;
+		this.parser = parser;
+		this.pool = ForkJoinPool.commonPool();
+	}
+
+	/**
+	 * Parses the whole file, skipping its header
+	 * @param batches called on this thread with the records of each range, in file order
+	 * @param cancelled checked between records, no more batches are handed
+	 * over once it returns true
+	 * @throws IOException
+	 */
+	void run(Consumer<Batch<T>> batches, BooleanSupplier cancelled) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long[] header = headerEnd(channel, channel.size());
+			List<long[]> ranges = split(channel, header[0], (int) header[1]);
+			ArrayDeque<ForkJoinTask<Batch<T>>> inFlight = new ArrayDeque<>();
+			int maxInFlight = pool.getParallelism() * 2;
+			int next = 0;
+			try {
+				while (!cancelled.getAsBoolean() && (next < ranges.size() || !inFlight.isEmpty())) {
+					while (next < ranges.size() && inFlight.size() < maxInFlight) {
+						long[] range = ranges.get(next++);
+						// the first range also accounts for the header's bytes
+						long bytes = next == 1 ? range[1] : range[1] - range[0];
+						inFlight.add(pool.submit(() -> parse(channel, range, bytes, cancelled)));
+					}
+					Batch<T> batch = join(inFlight.poll());
+					if (cancelled.getAsBoolean()) break;
+					batches.accept(batch);
+				}
+			} finally {
+				// ranges still parsing stop at their next record once cancelled,
+				// wait for them so the channel is not closed under them
+				for (ForkJoinTask<Batch<T>> task : inFlight) {
+					task.quietlyJoin();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cuts the file after its header into ranges that end on line breaks
+	 * outside of quoted fields
+	 * @param channel
+	 * @param start first byte after the header
+	 * @param firstLine line number of the first record after the header
+	 * @return start offset, end offset and first line number of each range
+	 * @throws IOException
+	 */
+	private List<long[]> split(FileChannel channel, long start, int firstLine) throws IOException {
+		long size = channel.size();
+		ArrayList<long[]> cuts = new ArrayList<>();
+		while (start < size) {
+			long end = start + CHUNK_SIZE < size ? nextLineStart(channel, start + CHUNK_SIZE, size) : size;
+			cuts.add(new long[] {start, end, 0});
+			start = end;
+		}
+
+		ArrayList<ForkJoinTask<long[]>> counts = new ArrayList<>();
+		for (long[] cut : cuts) {
+			counts.add(pool.submit(() -> count(channel, cut[0], cut[1])));
+		}
+		ArrayList<long[]> ranges = new ArrayList<>();
+		long quotes = 0;
+		long line = firstLine;
+		for (int i = 0; i < cuts.size(); i++) {
+			long[] cut = cuts.get(i);
+			if (quotes % 2 == 1) {
+				// the cut fell inside a quoted field, keep the field in one range
+				ranges.get(ranges.size() - 1)[1] = cut[1];
+			} else {
+				cut[2] = line;
+				ranges.add(cut);
+			}
+			long[] count = join(counts.get(i));
+			quotes += count[0];
+			line += count[1];
+		}
+		return ranges;
+	}
+
+	private Batch<T> parse(FileChannel channel, long[] range, long bytes, BooleanSupplier cancelled) {
+		Batch<T> batch = new Batch<>();
+		batch.bytes = bytes;
+		CsvReader csv = new CsvReader(map(channel, range[0], range[1]), (int) range[2]);
+		while (csv.nextRecord()) {
+			batch.read(csv, parser);
+			if ((batch.size() & 1023) == 0 && cancelled.getAsBoolean()) break;
+		}
+		return batch;
+	}
+
+	/**
+	 * @return number of quotes and number of line breaks in the range. A cut
+	 * never falls inside a CRLF, so a CR at the end of the range ends a line.
+	 */
+	private static long[] count(FileChannel channel, long start, long end) {
+		MappedByteBuffer buffer = map(channel, start, end);
+		long quotes = 0;
+		long lines = 0;
+		for (int i = 0, limit = buffer.limit(); i < limit; i++) {
+			byte b = buffer.get(i);
+			if (b == '"') quotes++;
+			else if (CsvReader.isLineEnd(buffer, i, limit)) lines++;
+		}
+		return new long[] {quotes, lines};
+	}
+
+	/**
+	 * Finds where the first record after the header starts
+	 * @return offset of the first record and the line it is on
+	 */
+	private static long[] headerEnd(FileChannel channel, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		boolean quoted = false;
+		long lines = 1;
+		long position = 0;
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) break;
+			int checked = checkable(read, position, size);
+			for (int i = 0; i < checked; i++) {
+				byte b = buffer.get(i);
+				if (b == '"') {
+					quoted = !quoted;
+				} else if (CsvReader.isLineEnd(buffer, i, read)) {
+					lines++;
+					if (!quoted) return new long[] {position + i + 1, lines};
+				}
+			}
+			position += checked;
+		}
+		return new long[] {size, lines};
+	}
+
+	/**
+	 * Finds the first byte after the next line break at or after position
+	 */
+	private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) break;
+			int checked = checkable(read, position, size);
+			for (int i = 0; i < checked; i++) {
+				if (CsvReader.isLineEnd(buffer, i, read)) return position + i + 1;
+			}
+			position += checked;
+		}
+		return size;
+	}
+
+	/**
+	 * A CR can only be told apart from the start of a CRLF by the byte after
+	 * it, so the last byte read is left for the next read unless the file ends there
+	 * @return number of bytes read that can be checked for line breaks
+	 */
+	private static int checkable(int read, long position, long size) {
+		return read > 1 && position + read < size ? read - 1 : read;
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long start, long end) {
+		if (end - start > Integer.MAX_VALUE) {
+			throw new UncheckedIOException(new IOException("A single CSV record is larger than 2 GB"));
+		}
+		try {
+			return channel.map(MapMode.READ_ONLY, start, end - start);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Waits for a task, turning a failed map back into the IOException it was
+	 */
+	private static <R> R join(ForkJoinTask<R> task) throws IOException {
+		try {
+			return task.join();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+}
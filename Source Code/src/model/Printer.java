@@ -1,7 +1,9 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.function.Consumer;
 import javax.xml.bind.annotation.XmlElement;
 
 import interfaces.InventoryObject;
@@ -13,20 +15,29 @@ import javafx.beans.property.StringProperty;
 public class Printer implements InventoryObject {
 	
 	
-	private StringProperty barCode;
-	private StringProperty description;
-	private StringProperty category;
-	private StringProperty location;
-	private StringProperty manufacturer;
-	private StringProperty division;
-	private StringProperty department;
-	private StringProperty campus;
-	private StringProperty serialNumber;
-	private StringProperty status;
-	private ArrayList<String> linkedToners;
+	private final StringProperty barCode = new AttributeProperty(this, "barCode");
+	private final StringProperty description = new AttributeProperty(this, "description");
+	private final StringProperty category = new AttributeProperty(this, "category");
+	private final StringProperty location = new AttributeProperty(this, "location");
+	private final StringProperty manufacturer = new AttributeProperty(this, "manufacturer");
+	private final StringProperty division = new AttributeProperty(this, "division");
+	private final StringProperty department = new AttributeProperty(this, "department");
+	private final StringProperty campus = new AttributeProperty(this, "campus");
+	private final StringProperty serialNumber = new AttributeProperty(this, "serialNumber");
+	private final StringProperty status = new AttributeProperty(this, "status");
+	/**
+	 * Replaced rather than changed once the printer is in a database,
+	 * so a reader never sees the list half changed
+	 */
+	private volatile ArrayList<String> linkedToners;
 	private String printerNotes;
 	
 	private final BooleanProperty selected = new SimpleBooleanProperty();
+	/**
+	 * Told when a string attribute changes, set by the database holding the
+	 * printer so its indexes follow setters called outside updatePrinter()
+	 */
+	private volatile Consumer<Printer> attributeListener;
 	
 	/**
 	 * Unique ID for adding and removing from the set. As well as
@@ -38,48 +49,105 @@ public class Printer implements InventoryObject {
 	 * Default constructor is needed for JAXB
 	 * marshaling and manually adding new printer.
 	 * New UUID generated each time.
-	 * SimpleStringPrperties initialized with empty string
-	 * to dodge null pointer errors
+	 * SimpleStringPrperties are initialized with empty string
+	 * where they are declared to dodge null pointer errors
 	 */
 	public Printer() {
-		linkedToners = new ArrayList<String>();
-		this.barCode = new SimpleStringProperty("");
-		this.description = new SimpleStringProperty("");
-		this.category = new SimpleStringProperty("");
-		this.location = new SimpleStringProperty("");
-		this.serialNumber = new SimpleStringProperty("");
-		this.manufacturer = new SimpleStringProperty("");
-		this.division = new SimpleStringProperty("");
-		this.department = new SimpleStringProperty("");
-		this.campus = new SimpleStringProperty("");
-		this.status = new SimpleStringProperty("");
-		uid = UUID.randomUUID().toString();
+		this(UUID.randomUUID().toString(), new ArrayList<String>());
 	}
 
 	/**
-	 * Takes string of comma separated values
-	 * Split each element of the string into an array
-	 * Iterate over and create SimpleString for each value
-	 * Input validation is handled in database Class
-	 * @param printerString
+	 * Used when reading saved printers, which already have a UID,
+	 * to skip generating a random one.
+	 * @param uid
+	 * @param linkedToners
 	 */
-	public Printer(String printerString) {
-		linkedToners = new ArrayList<String>();
-		String[] attributeArray = printerString.split(",");
-		int i = 0;
-		this.barCode = new SimpleStringProperty(attributeArray[i++]);
-		this.description = new SimpleStringProperty(attributeArray[i++]);
-		this.category = new SimpleStringProperty(attributeArray[i++]);
-		this.location = new SimpleStringProperty(attributeArray[i++]);
-		this.serialNumber = new SimpleStringProperty(attributeArray[i++]);
-		this.manufacturer = new SimpleStringProperty(attributeArray[i++]);
-		this.division = new SimpleStringProperty(attributeArray[i++]);
-		this.department = new SimpleStringProperty(attributeArray[i++]);
-		this.campus = new SimpleStringProperty(attributeArray[i++]);
-		this.status = new SimpleStringProperty(attributeArray[i++]);
-		uid = UUID.randomUUID().toString();
+	Printer(String uid, ArrayList<String> linkedToners) {
+		this.linkedToners = linkedToners;
+		this.uid = uid;
 	}
-	
+
+	/**
+	 * Copies every saved field into a new printer with the same UID,
+	 * so the copy can be written out while this printer keeps changing.
+	 * @return the copy
+	 */
+	Printer copy() {
+		Printer copy = new Printer(uid, new ArrayList<String>(linkedToners));
+		copy.barCode.set(barCode.get());
+		copy.description.set(description.get());
+		copy.category.set(category.get());
+		copy.location.set(location.get());
+		copy.serialNumber.set(serialNumber.get());
+		copy.manufacturer.set(manufacturer.get());
+		copy.division.set(division.get());
+		copy.department.set(department.get());
+		copy.campus.set(campus.get());
+		copy.status.set(status.get());
+		copy.printerNotes = printerNotes;
+		return copy;
+	}
+
+	/**
+	 * Copies the imported columns of another printer into this one, leaving
+	 * the UID, links and notes alone.
+	 * @param other
+	 * @return true if any value changed
+	 */
+	boolean updateFrom(Printer other) {
+		if (sameAs(other)) return false;
+		barCode.set(other.getBarCode());
+		description.set(other.getDescription());
+		category.set(other.getCategory());
+		location.set(other.getLocation());
+		serialNumber.set(other.getSerialNumber());
+		manufacturer.set(other.getManufacturer());
+		division.set(other.getDivision());
+		department.set(other.getDepartment());
+		campus.set(other.getCampus());
+		status.set(other.getStatus());
+		return true;
+	}
+
+	/**
+	 * @param other
+	 * @return true if every imported column of the other printer matches this one
+	 */
+	boolean sameAs(Printer other) {
+		return Objects.equals(barCode.get(), other.getBarCode())
+				&& Objects.equals(description.get(), other.getDescription())
+				&& Objects.equals(category.get(), other.getCategory())
+				&& Objects.equals(location.get(), other.getLocation())
+				&& Objects.equals(serialNumber.get(), other.getSerialNumber())
+				&& Objects.equals(manufacturer.get(), other.getManufacturer())
+				&& Objects.equals(division.get(), other.getDivision())
+				&& Objects.equals(department.get(), other.getDepartment())
+				&& Objects.equals(campus.get(), other.getCampus())
+				&& Objects.equals(status.get(), other.getStatus());
+	}
+
+	void setAttributeListener(Consumer<Printer> listener) {
+		attributeListener = listener;
+	}
+
+	/**
+	 * String attribute that tells the printer's attribute listener when it
+	 * changes. Overriding invalidated() costs no listener object per property.
+	 */
+	private static class AttributeProperty extends SimpleStringProperty {
+
+		AttributeProperty(Printer printer, String name) {
+			super(printer, name, "");
+		}
+
+		@Override
+		protected void invalidated() {
+			Printer printer = (Printer) getBean();
+			Consumer<Printer> listener = printer.attributeListener;
+			if (listener != null) listener.accept(printer);
+		}
+	}
+
 	/*
 	 * The following methods return the
 	 * StringProperty object for JAVAFX
@@ -180,59 +248,59 @@ public class Printer implements InventoryObject {
 	}
 	/*
 	 * Setters take string
-	 * Created new SimpleString and assign to 
-	 * Class attribute
+	 * Sets the value of the existing SimpleString
+	 * so bound table cells see the change
 	 * The unmarshaling process needs these 
 	 * to re-create the objects
 	 */
 
 	public void setBarCode(String barCode) {
-		this.barCode = new SimpleStringProperty(barCode);
+		this.barCode.set(barCode);
 	}
 
 
 	public void setDescription(String description) {
-		this.description = new SimpleStringProperty(description);
+		this.description.set(description);
 	}
 
 
 	public void setCategory(String category) {
-		this.category = new SimpleStringProperty(category);
+		this.category.set(category);
 	}
 
 
 	public void setLocation(String location) {
-		this.location = new SimpleStringProperty(location);
+		this.location.set(location);
 	}
 
 
 	public void setManufacturer(String manufacturer) {
-		this.manufacturer = new SimpleStringProperty(manufacturer);
+		this.manufacturer.set(manufacturer);
 	}
 
 
 	public void setDivision(String division) {
-		this.division = new SimpleStringProperty(division);
+		this.division.set(division);
 	}
 
 
 	public void setDepartment(String department) {
-		this.department = new SimpleStringProperty(department);
+		this.department.set(department);
 	}
 
 
 	public void setCampus(String campus) {
-		this.campus = new SimpleStringProperty(campus);
+		this.campus.set(campus);
 	}
 
 
 	public void setSerialNumber(String serialNumber) {
-		this.serialNumber = new SimpleStringProperty(serialNumber);
+		this.serialNumber.set(serialNumber);
 	}
 
 
 	public void setStatus(String status) {
-		this.status = new SimpleStringProperty(status);
+		this.status.set(status);
 	}
 	
 	@XmlElement
@@ -0,0 +1,58 @@
+package model;
+
+/**
+ * Secondary indexes on the printer attributes people look printers up by.
+ * Serial number and bar code are unique hash indexes, the categorical columns
+ * are multi indexes. The database keeps these in step as printers are added,
+ * saved after editing and removed, and as their setters run.
+ *
+ */
+public class PrinterIndexes {
+
+	final UniqueIndex<Printer> serialNumber = new UniqueIndex<>(Printer::getSerialNumber);
+	final UniqueIndex<Printer> barCode = new UniqueIndex<>(Printer::getBarCode);
+	final MultiIndex<Printer> campus = new MultiIndex<>(Printer::getCampus);
+	final MultiIndex<Printer> location = new MultiIndex<>(Printer::getLocation);
+	final MultiIndex<Printer> manufacturer = new MultiIndex<>(Printer::getManufacturer);
+	final MultiIndex<Printer> status = new MultiIndex<>(Printer::getStatus);
+
+	void add(Printer printer) {
+		serialNumber.add(printer);
+		barCode.add(printer);
+		campus.add(printer);
+		location.add(printer);
+		manufacturer.add(printer);
+		status.add(printer);
+	}
+
+	void remove(Printer printer) {
+		serialNumber.remove(printer);
+		barCode.remove(printer);
+		campus.remove(printer);
+		location.remove(printer);
+		manufacturer.remove(printer);
+		status.remove(printer);
+	}
+
+	/**
+	 * Reindexes a printer whose attributes may have been changed by its setters
+	 * @param printer
+	 */
+	void update(Printer printer) {
+		serialNumber.update(printer);
+		barCode.update(printer);
+		campus.update(printer);
+		location.update(printer);
+		manufacturer.update(printer);
+		status.update(printer);
+	}
+
+	void clear() {
+		serialNumber.clear();
+		barCode.clear();
+		campus.clear();
+		location.clear();
+		manufacturer.clear();
+		status.clear();
+	}
+}
@@ -0,0 +1,139 @@
+package model;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.ReadOnlyProperty;
+
+/**
+ * Keeps every tracked toner's needed and order values in step with its
+ * stock. One shared listener watches minStock and curStock, so changing
+ * either one recalculates just that toner, right away. The engine also keeps
+ * the set of toners that need ordering and the running totals, so a reorder
+ * view never has to walk every toner.
+ * Methods are synchronized because toners can have their stock changed on
+ * several threads at once, see Database.adjustStock(). The properties are
+ * for the JavaFX thread, other threads read the totals through the getters.
+ *
+ */
+public class ReorderEngine {
+
+	/**
+	 * Toners whose current stock is below their minimum
+	 */
+	private final LinkedHashSet<Toner> needsOrdering = new LinkedHashSet<>();
+	/**
+	 * Sum of needed over every tracked toner
+	 */
+	private final ReadOnlyIntegerWrapper totalNeeded = new ReadOnlyIntegerWrapper(this, "totalNeeded", 0);
+	/**
+	 * Number of toners that need ordering
+	 */
+	private final ReadOnlyIntegerWrapper orderCount = new ReadOnlyIntegerWrapper(this, "orderCount", 0);
+
+	/**
+	 * Shared by every tracked toner. Toner properties carry their toner as
+	 * bean, which is how the listener knows which one changed.
+	 */
+	private final InvalidationListener stockListener = observable ->
+			recalculate((Toner) ((ReadOnlyProperty<?>) observable).getBean());
+
+	/**
+	 * Starts watching a toner's stock and works out its values now
+	 * @param toner
+	 */
+	synchronized void track(Toner toner) {
+		toner.minStockProperty().removeListener(stockListener);
+		toner.curStockProperty().removeListener(stockListener);
+		toner.minStockProperty().addListener(stockListener);
+		toner.curStockProperty().addListener(stockListener);
+		if (!needsOrdering.contains(toner)) {
+			// needed may hold a stale value from a file, it is not counted yet
+			toner.setNeeded(0);
+			toner.setOrder(false);
+		}
+		recalculate(toner);
+	}
+
+	/**
+	 * Stops watching a toner and takes it out of the totals
+	 * @param toner
+	 */
+	synchronized void untrack(Toner toner) {
+		toner.minStockProperty().removeListener(stockListener);
+		toner.curStockProperty().removeListener(stockListener);
+		if (needsOrdering.remove(toner)) {
+			totalNeeded.set(totalNeeded.get() - toner.getNeeded());
+			orderCount.set(needsOrdering.size());
+		}
+	}
+
+	/**
+	 * Stops watching every toner in the collection and zeroes the totals
+	 * @param toners
+	 */
+	synchronized void clear(Iterable<Toner> toners) {
+		for (Toner toner : toners) {
+			toner.minStockProperty().removeListener(stockListener);
+			toner.curStockProperty().removeListener(stockListener);
+		}
+		needsOrdering.clear();
+		totalNeeded.set(0);
+		orderCount.set(0);
+	}
+
+	/**
+	 * @return read only copy of the toners that need ordering
+	 */
+	public synchronized Set<Toner> getNeedsOrdering() {
+		return Collections.unmodifiableSet(new LinkedHashSet<>(needsOrdering));
+	}
+
+	/**
+	 * @return sum of needed over every tracked toner
+	 */
+	public synchronized int getTotalNeeded() {
+		return totalNeeded.get();
+	}
+
+	/**
+	 * @return number of toners that need ordering
+	 */
+	public synchronized int getOrderCount() {
+		return orderCount.get();
+	}
+
+	public ReadOnlyIntegerProperty totalNeededProperty() {
+		return totalNeeded.getReadOnlyProperty();
+	}
+
+	public ReadOnlyIntegerProperty orderCountProperty() {
+		return orderCount.getReadOnlyProperty();
+	}
+
+	/**
+	 * Sets how many of a toner are needed to reach its minimum stock and
+	 * whether it should be ordered, adjusting the totals by the difference
+	 * @param toner
+	 * @return true if either value changed
+	 */
+	synchronized boolean recalculate(Toner toner) {
+		int needed = Math.max(0, toner.getMinStock() - toner.getCurStock());
+		int oldNeeded = needsOrdering.contains(toner) ? toner.getNeeded() : 0;
+		if (needed == toner.getNeeded() && (needed > 0) == toner.getOrder()) return false;
+		toner.setNeeded(needed);
+		toner.setOrder(needed > 0);
+		if (needed > 0) {
+			needsOrdering.add(toner);
+		} else {
+			needsOrdering.remove(toner);
+		}
+		totalNeeded.set(totalNeeded.get() + needed - oldNeeded);
+		orderCount.set(needsOrdering.size());
+		return true;
+	}
+}
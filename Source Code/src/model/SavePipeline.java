@@ -0,0 +1,321 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import metrics.Metrics;
+import metrics.SaveEvent;
+import metrics.SnapshotEvent;
+
+/**
+ * Writes save files off the JavaFX thread. The database hands over a
+ * Snapshot, copies of its records taken under its write lock, so the user
+ * can keep editing while the copies are serialized. Each file is written to a
+ * temporary file next to it, forced onto the disk and renamed over the
+ * target in one step, and the rename is forced as well, so a crash leaves
+ * either the old file or the new one, never half of one. Writes run one at a time in the order they were asked for.
+ * Results are handed back through the database's event executor, which the
+ * GUI points at the JavaFX thread. Autosave is restarted by every change,
+ * and changes can come from several threads, so scheduling is synchronized.
+ *
+ */
+class SavePipeline {
+
+	/**
+	 * One writer shared by every database, writes never need to overlap
+	 */
+	private static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+		Thread thread = new Thread(runnable, "database-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	static {
+		// autosave is rescheduled on every change, cancelled ones should not pile up
+		executor.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Runs the callbacks of finished writes and autosaves
+	 */
+	private final Executor callbacks;
+	/**
+	 * Last write handed to the executor
+	 */
+	private volatile Future<?> lastWrite;
+	/**
+	 * Autosave waiting for changes to stop
+	 */
+	private ScheduledFuture<?> autosave;
+	/**
+	 * Flush waiting to write out what has built up
+	 */
+	private ScheduledFuture<?> flush;
+
+	/**
+	 * @param callbacks runs onSaved, onFailed and autosaves
+	 */
+	SavePipeline(Executor callbacks) {
+		this.callbacks = callbacks;
+	}
+
+	/**
+	 * Copies of every record, taken at one moment under the database's write lock
+	 */
+	static class Snapshot {
+		final ArrayList<Printer> printers;
+		final ArrayList<Toner> toners;
+		/**
+		 * Database change count the copies were taken at
+		 */
+		final long modCount;
+
+		Snapshot(Collection<Printer> printers, Collection<Toner> toners, long modCount) {
+			SnapshotEvent event = new SnapshotEvent();
+			event.begin();
+			this.printers = new ArrayList<Printer>(printers.size());
+			for (Printer printer : printers) {
+				this.printers.add(printer.copy());
+			}
+			this.toners = new ArrayList<Toner>(toners.size());
+			for (Toner toner : toners) {
+				this.toners.add(toner.copy());
+			}
+			this.modCount = modCount;
+			event.printers = this.printers.size();
+			event.toners = this.toners.size();
+			event.commit();
+		}
+	}
+
+	/**
+	 * Writes a snapshot to a file in the background
+	 * @param file target, written as a binary snapshot if it ends in .ptdb and as XML otherwise
+	 * @param snapshot
+	 * @param obsolete file deleted once the target is safely written, may be null
+	 * @param onSaved run through the callback executor after the file is written
+	 * @param onFailed run through the callback executor if the file could not be written
+	 */
+	synchronized void write(File file, Snapshot snapshot, File obsolete, Runnable onSaved, Consumer<IOException> onFailed) {
+		lastWrite = executor.submit(() -> {
+			try {
+				writeReplacing(file, snapshot.printers, snapshot.toners);
+				if (obsolete != null) Files.deleteIfExists(obsolete.toPath());
+				callbacks.execute(onSaved);
+			} catch (IOException e) {
+				e.printStackTrace();
+				callbacks.execute(() -> onFailed.accept(e));
+			}
+		});
+	}
+
+	/**
+	 * File work run on the writer thread
+	 */
+	interface Task {
+		void run() throws IOException;
+	}
+
+	/**
+	 * Runs a task on the writer thread once the writes asked for so far are done
+	 * @param task
+	 * @return the task's future, see await(Future)
+	 */
+	synchronized Future<?> submit(Task task) {
+		Future<?> future = executor.submit(() -> {
+			task.run();
+			return null;
+		});
+		lastWrite = future;
+		return future;
+	}
+
+	/**
+	 * Blocks until a submitted task has finished
+	 * @param task
+	 * @throws IOException the task threw
+	 */
+	static void await(Future<?> task) throws IOException {
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return true while a write is waiting or running
+	 */
+	boolean isWriting() {
+		return lastWrite != null && !lastWrite.isDone();
+	}
+
+	/**
+	 * Blocks until every write asked for so far has finished
+	 */
+	void await() {
+		Future<?> write = lastWrite;
+		if (write == null) return;
+		try {
+			write.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// failures are reported by the write itself
+		}
+	}
+
+	/**
+	 * Runs the save through the callback executor once no change has been made for
+	 * the delay. Calling this again restarts the delay.
+	 * @param save
+	 * @param delayMillis
+	 */
+	synchronized void scheduleAutosave(Runnable save, long delayMillis) {
+		cancelAutosave();
+		autosave = executor.schedule(() -> callbacks.execute(save), delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs the flush on the writer thread once the delay is up, unless one
+	 * is already waiting. Unlike autosave, more changes do not push it back,
+	 * so a steady stream of changes is still written every delay.
+	 * @param flush
+	 * @param delayMillis
+	 */
+	synchronized void scheduleFlush(Runnable flush, long delayMillis) {
+		if (this.flush != null) return;
+		this.flush = executor.schedule(() -> {
+			// changes made from here on need a flush of their own
+			synchronized (this) {
+				this.flush = null;
+			}
+			flush.run();
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs a callback the same way as those of finished writes, for work on
+	 * the writer thread that has to report back
+	 * @param callback
+	 */
+	void runCallback(Runnable callback) {
+		callbacks.execute(callback);
+	}
+
+	synchronized void cancelAutosave() {
+		if (autosave != null) {
+			autosave.cancel(false);
+			autosave = null;
+		}
+	}
+
+	/**
+	 * Forces the directory holding a file onto the disk, so a rename into it
+	 * survives a crash as well as the file's contents do. Skipped where
+	 * directories cannot be opened, on Windows for one.
+	 * @param file
+	 * @throws IOException if the directory could be opened but not forced
+	 */
+	static void syncDirectory(File file) throws IOException {
+		Path directory = file.getAbsoluteFile().toPath().getParent();
+		if (directory == null) return;
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(directory, StandardOpenOption.READ);
+		} catch (IOException e) {
+			return;
+		}
+		try (FileChannel opened = channel) {
+			opened.force(true);
+		}
+	}
+
+	/**
+	 * Writes the records to a temporary file next to the target, forces it
+	 * and then its directory onto the disk, and renames it over the target
+	 * in one step
+	 * @param file
+	 * @param printers
+	 * @param toners
+	 * @throws IOException
+	 */
+	static void writeReplacing(File file, Iterable<Printer> printers, Iterable<Toner> toners) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		long start = Metrics.start();
+		SaveEvent event = new SaveEvent();
+		event.begin();
+		event.file = file.getPath();
+		try {
+			if (file.getName().endsWith(BinarySnapshot.EXTENSION)) {
+				event.format = "ptdb";
+				BinarySnapshot.write(temp, printers, toners);
+			} else {
+				event.format = "xml";
+				writeXml(temp, printers, toners);
+			}
+			try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+			event.fileSize = temp.length();
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			syncDirectory(file);
+			event.succeeded = true;
+			Metrics.SAVE.recordSince(start);
+			Metrics.SAVES.increment();
+		} catch (IOException e) {
+			Metrics.SAVE_FAILURES.increment();
+			throw e;
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+			event.end();
+			if (event.shouldCommit()) {
+				event.printers = size(printers);
+				event.toners = size(toners);
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * @return number of records, or 0 if they are made as they are walked
+	 */
+	private static int size(Iterable<?> records) {
+		return records instanceof Collection ? ((Collection<?>) records).size() : 0;
+	}
+
+	/**
+	 * Streams each record to the file in the same layout JAXB uses
+	 */
+	private static void writeXml(File file, Iterable<Printer> printers, Iterable<Toner> toners) throws IOException {
+		try (XmlDatabaseWriter writer = new XmlDatabaseWriter(
+				new BufferedOutputStream(new FileOutputStream(file)))) {
+			for (Printer printer : printers) {
+				writer.writePrinter(printer);
+			}
+			for (Toner toner : toners) {
+				writer.writeToner(toner);
+			}
+		}
+	}
+}
@@ -0,0 +1,444 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Append-only history of every stock movement, kept next to the save file.
+ * A toner's current stock is the sum of its movements, so the ledger is
+ * what stock is loaded from. Appending is constant time and only touches
+ * memory. Movements wait in a pending list until flush() writes them out in
+ * one go, which lets a barcode scanner record hundreds of movements a
+ * minute without a disk write for each one.
+ *
+ * Once the ledger file passes ARCHIVE_BYTES, archiveIfFull() renames it to
+ * the next numbered segment beside it, ledger.1, ledger.2 and so on, and
+ * starts a new file with each toner's balance carried forward. Nothing is
+ * ever folded away, the archived segments keep every movement for
+ * history(), while opening the ledger only reads the current file.
+ *
+ * <pre>
+ *   movement: uid length (short), uid (UTF-8), kind (byte), change (int), timestamp (long)
+ * </pre>
+ *
+ * A movement cut short by a crash is dropped when the ledger is opened.
+ *
+ */
+class StockLedger implements Closeable {
+
+	static final String EXTENSION = ".ledger";
+
+	/**
+	 * Size the ledger file grows to before it is archived
+	 */
+	static final long ARCHIVE_BYTES = 4L << 20;
+
+	private static final int FIXED_SIZE = 2 + 1 + 4 + 8;
+	private static final StockMovement.Kind[] KINDS = StockMovement.Kind.values();
+
+	/**
+	 * Movements of each toner UID since the last archived segment, oldest first
+	 */
+	private final HashMap<String, ArrayList<StockMovement>> movements = new HashMap<>();
+	/**
+	 * Sum of the changes of each toner UID
+	 */
+	private final HashMap<String, Integer> balances = new HashMap<>();
+	/**
+	 * Movements not yet written to the file
+	 */
+	private ArrayList<StockMovement> pending = new ArrayList<>();
+	private int size;
+	/**
+	 * Held while writing to the file, so appends never wait for the disk
+	 */
+	private final Object fileLock = new Object();
+	/**
+	 * Ledger file, null while the database has no save file
+	 */
+	private File file;
+	private FileChannel channel;
+	/**
+	 * Bytes in the ledger file
+	 */
+	private long fileSize;
+
+	/**
+	 * Empty ledger that is only kept in memory until moveTo() gives it a file
+	 */
+	StockLedger() {
+	}
+
+	/**
+	 * @param saveFile
+	 * @return the ledger that belongs to the save file
+	 */
+	static File fileFor(File saveFile) {
+		return new File(saveFile.getPath() + EXTENSION);
+	}
+
+	/**
+	 * @param file ledger file
+	 * @param number from 1, the oldest
+	 * @return the archived segment of the ledger with that number
+	 */
+	static File segmentFor(File file, int number) {
+		return new File(file.getPath() + "." + number);
+	}
+
+	/**
+	 * Reads a ledger file and keeps it open to append to, creating it if
+	 * needed. A new file left by an archive that was cut short is put in place first.
+	 * @param file
+	 * @return the ledger
+	 * @throws IOException
+	 */
+	static StockLedger open(File file) throws IOException {
+		File temp = tempFor(file);
+		if (!file.exists() && temp.exists()) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} else {
+			Files.deleteIfExists(temp.toPath());
+		}
+		StockLedger ledger = new StockLedger();
+		if (file.exists()) {
+			int end = read(file, ledger::add);
+			if (end < file.length()) {
+				try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+					channel.truncate(end);
+				}
+			}
+		}
+		ledger.file = file;
+		ledger.channel = openChannel(file);
+		ledger.fileSize = ledger.channel.size();
+		return ledger;
+	}
+
+	/**
+	 * Reads the movements of a ledger file, stopping at a torn last movement
+	 * @param file
+	 * @param movements given each movement in file order
+	 * @return offset just past the last whole movement
+	 * @throws IOException
+	 */
+	private static int read(File file, Consumer<StockMovement> movements) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		int end = 0;
+		try {
+			while (buffer.hasRemaining()) {
+				movements.accept(read(buffer));
+				end = buffer.position();
+			}
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			// a torn last movement
+		}
+		return end;
+	}
+
+	/**
+	 * Records a movement in memory, it reaches the file on the next flush()
+	 * @param movement
+	 */
+	synchronized void append(StockMovement movement) {
+		add(movement);
+		pending.add(movement);
+	}
+
+	private void add(StockMovement movement) {
+		movements.computeIfAbsent(movement.getTonerUid(), k -> new ArrayList<>()).add(movement);
+		balances.merge(movement.getTonerUid(), movement.getChange(), Integer::sum);
+		size++;
+	}
+
+	/**
+	 * @param tonerUid
+	 * @return sum of the toner's movements, or null if it has none
+	 */
+	synchronized Integer balance(String tonerUid) {
+		return balances.get(tonerUid);
+	}
+
+	/**
+	 * @param tonerUid
+	 * @return copy of the toner's movements since the last archived segment,
+	 * oldest first and starting with its carried balance if it has one
+	 */
+	synchronized List<StockMovement> getMovements(String tonerUid) {
+		ArrayList<StockMovement> list = movements.get(tonerUid);
+		return list == null ? Collections.emptyList() : new ArrayList<>(list);
+	}
+
+	/**
+	 * @return number of movements held, carried balances included
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Writes the pending movements to the file in one write and forces them
+	 * onto the disk. Does nothing while the ledger has no file.
+	 * @throws IOException
+	 */
+	void flush() throws IOException {
+		flush(true);
+	}
+
+	/**
+	 * Writes the pending movements to the file in one write
+	 * @param force true to force them onto the disk as well, false if they
+	 * only have to survive the program crashing
+	 * @throws IOException
+	 */
+	void flush(boolean force) throws IOException {
+		synchronized (fileLock) {
+			if (channel == null) return;
+			ArrayList<StockMovement> batch;
+			synchronized (this) {
+				if (pending.isEmpty()) return;
+				batch = pending;
+				pending = new ArrayList<>();
+			}
+			try {
+				fileSize += write(channel, batch);
+				if (force) channel.force(false);
+			} catch (IOException e) {
+				// keep them for the next try
+				synchronized (this) {
+					batch.addAll(pending);
+					pending = batch;
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Every movement of a toner ever recorded, read from the archived
+	 * segments as well as the current file, without the carried balances
+	 * @param tonerUid
+	 * @return the movements, oldest first
+	 * @throws IOException if an archived segment cannot be read
+	 */
+	List<StockMovement> history(String tonerUid) throws IOException {
+		ArrayList<StockMovement> history = new ArrayList<>();
+		Consumer<StockMovement> collect = movement -> {
+			if (movement.getTonerUid().equals(tonerUid) && movement.getKind() != StockMovement.Kind.CARRIED) {
+				history.add(movement);
+			}
+		};
+		synchronized (fileLock) {
+			if (file != null) {
+				for (int number = 1; segmentFor(file, number).exists(); number++) {
+					read(segmentFor(file, number), collect);
+				}
+			}
+			getMovements(tonerUid).forEach(collect);
+		}
+		return history;
+	}
+
+	/**
+	 * Archives the ledger file if it has grown past ARCHIVE_BYTES, see archive()
+	 * @param liveUids toners still in the database
+	 * @throws IOException
+	 */
+	void archiveIfFull(Set<String> liveUids) throws IOException {
+		synchronized (fileLock) {
+			if (channel != null && fileSize >= ARCHIVE_BYTES) archive(liveUids);
+		}
+	}
+
+	/**
+	 * Renames the ledger file, as it is, to the next numbered segment and
+	 * starts a new one that opens with a carried balance for each toner
+	 * still in the database. The new file is written and forced before
+	 * either rename, so a crash leaves the old file or the new one in place.
+	 * Movements appended meanwhile go into the new file. Run on the
+	 * background writer.
+	 * @param liveUids toners still in the database
+	 * @throws IOException
+	 */
+	void archive(Set<String> liveUids) throws IOException {
+		synchronized (fileLock) {
+			if (channel == null) return;
+			flush();
+			ArrayList<StockMovement> carried = new ArrayList<>();
+			long now = System.currentTimeMillis();
+			synchronized (this) {
+				// appended since the flush, these go into the new file after the carried balances
+				HashMap<String, Integer> unwritten = new HashMap<>();
+				for (StockMovement movement : pending) {
+					unwritten.merge(movement.getTonerUid(), movement.getChange(), Integer::sum);
+				}
+				for (Map.Entry<String, Integer> balance : balances.entrySet()) {
+					String uid = balance.getKey();
+					if (!liveUids.contains(uid) && !unwritten.containsKey(uid)) continue;
+					int change = balance.getValue() - unwritten.getOrDefault(uid, 0);
+					carried.add(new StockMovement(uid, StockMovement.Kind.CARRIED, change, now));
+				}
+			}
+			File temp = tempFor(file);
+			writeFile(temp, carried);
+			int number = 1;
+			while (segmentFor(file, number).exists()) {
+				number++;
+			}
+			File segment = segmentFor(file, number);
+			channel.close();
+			channel = null;
+			try {
+				Files.move(file.toPath(), segment.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				try {
+					Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				} catch (IOException e) {
+					Files.move(segment.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+					throw e;
+				}
+				SavePipeline.syncDirectory(file);
+			} finally {
+				channel = openChannel(file);
+				fileSize = channel.size();
+			}
+			synchronized (this) {
+				movements.clear();
+				balances.clear();
+				size = 0;
+				carried.forEach(this::add);
+				pending.forEach(this::add);
+			}
+		}
+	}
+
+	/**
+	 * Carries the ledger over to a new save file, which it is appended to
+	 * from now on. The archived segments are copied, replacing any an older
+	 * database left at the target, and every movement held in memory is
+	 * written to a new ledger file that replaces the target's in one step.
+	 * The old files are left as they are. Run on the background writer.
+	 * @param target
+	 * @throws IOException
+	 */
+	void moveTo(File target) throws IOException {
+		synchronized (fileLock) {
+			if (target.equals(file)) {
+				flush();
+				return;
+			}
+			for (int number = 1; segmentFor(target, number).exists(); number++) {
+				Files.delete(segmentFor(target, number).toPath());
+			}
+			if (file != null) {
+				for (int number = 1; segmentFor(file, number).exists(); number++) {
+					Files.copy(segmentFor(file, number).toPath(), segmentFor(target, number).toPath());
+				}
+			}
+			ArrayList<StockMovement> all = new ArrayList<>();
+			synchronized (this) {
+				for (ArrayList<StockMovement> list : movements.values()) {
+					all.addAll(list);
+				}
+				pending = new ArrayList<>();
+			}
+			all.sort((a, b) -> Long.compare(a.getTimestamp(), b.getTimestamp()));
+			if (channel != null) channel.close();
+			channel = null;
+			File temp = tempFor(target);
+			writeFile(temp, all);
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			SavePipeline.syncDirectory(target);
+			file = target;
+			channel = openChannel(target);
+			fileSize = channel.size();
+		}
+	}
+
+	/**
+	 * Writes the pending movements and closes the file
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (fileLock) {
+			if (channel == null) return;
+			try {
+				flush();
+			} finally {
+				channel.close();
+				channel = null;
+			}
+		}
+	}
+
+	private static File tempFor(File file) {
+		return new File(file.getPath() + ".tmp");
+	}
+
+	/**
+	 * Writes movements to a new file and forces them onto the disk
+	 */
+	private static void writeFile(File file, List<StockMovement> movements) throws IOException {
+		try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			write(out, movements);
+			out.force(true);
+		}
+	}
+
+	private static FileChannel openChannel(File file) throws IOException {
+		return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * @return number of bytes written
+	 */
+	private static int write(FileChannel channel, List<StockMovement> batch) throws IOException {
+		ArrayList<byte[]> uids = new ArrayList<>(batch.size());
+		int length = 0;
+		for (StockMovement movement : batch) {
+			byte[] uid = movement.getTonerUid().getBytes(StandardCharsets.UTF_8);
+			uids.add(uid);
+			length += FIXED_SIZE + uid.length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		for (int i = 0; i < batch.size(); i++) {
+			StockMovement movement = batch.get(i);
+			buffer.putShort((short) uids.get(i).length);
+			buffer.put(uids.get(i));
+			buffer.put((byte) movement.getKind().ordinal());
+			buffer.putInt(movement.getChange());
+			buffer.putLong(movement.getTimestamp());
+		}
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		return length;
+	}
+
+	private static StockMovement read(ByteBuffer buffer) {
+		int length = buffer.getShort() & 0xFFFF;
+		if (length > buffer.remaining()) throw new BufferUnderflowException();
+		String uid = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		int kind = buffer.get();
+		if (kind < 0 || kind >= KINDS.length) throw new IllegalArgumentException("Unknown movement kind " + kind);
+		return new StockMovement(uid, KINDS[kind], buffer.getInt(), buffer.getLong());
+	}
+}
@@ -0,0 +1,76 @@
+package model;
+
+/**
+ * One entry of the stock ledger: cartridges received into the stockroom,
+ * issued out of it, or an adjustment after a count or a hand edit.
+ * Movements never change once written, a mistake is put right with another
+ * movement.
+ *
+ */
+public final class StockMovement {
+
+	public enum Kind {
+		/**
+		 * Cartridges put into stock
+		 */
+		RECEIVE,
+		/**
+		 * Cartridges taken out of stock
+		 */
+		ISSUE,
+		/**
+		 * Correction of the stock by any amount, including a toner's opening balance
+		 */
+		ADJUST,
+		/**
+		 * Balance brought forward from the ledger segments archived before
+		 * this one, not a movement of its own
+		 */
+		CARRIED
+	}
+
+	private final String tonerUid;
+	private final Kind kind;
+	private final int change;
+	private final long timestamp;
+
+	/**
+	 * @param tonerUid
+	 * @param kind
+	 * @param change amount the stock went up by, negative for issues
+	 * @param timestamp milliseconds since the epoch
+	 */
+	StockMovement(String tonerUid, Kind kind, int change, long timestamp) {
+		this.tonerUid = tonerUid;
+		this.kind = kind;
+		this.change = change;
+		this.timestamp = timestamp;
+	}
+
+	public String getTonerUid() {
+		return tonerUid;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return amount the stock went up by, negative for issues
+	 */
+	public int getChange() {
+		return change;
+	}
+
+	/**
+	 * @return when the movement happened, in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return kind + " " + change + " of " + tonerUid + " at " + timestamp;
+	}
+}
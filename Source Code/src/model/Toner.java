@@ -1,6 +1,7 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.Objects;
 import java.util.UUID;
 
 import javax.xml.bind.annotation.XmlElement;
@@ -15,16 +16,20 @@ import javafx.beans.property.StringProperty;
 
 public class Toner implements InventoryObject {
 
-	private StringProperty printerModel;
-	private StringProperty brand;
-	private StringProperty model;
-	private StringProperty printers;
-	private IntegerProperty minStock;
-	private IntegerProperty curStock;
-	private BooleanProperty order;
-	private IntegerProperty needed;
+	private final StringProperty printerModel = new SimpleStringProperty(this, "printerModel", "");
+	private final StringProperty brand = new SimpleStringProperty(this, "brand", "");
+	private final StringProperty model = new SimpleStringProperty(this, "model", "");
+	private final StringProperty printers = new SimpleStringProperty(this, "printers", "");
+	private final IntegerProperty minStock = new SimpleIntegerProperty(this, "minStock", 0);
+	private final IntegerProperty curStock = new SimpleIntegerProperty(this, "curStock", 0);
+	private final BooleanProperty order = new SimpleBooleanProperty(this, "order", false);
+	private final IntegerProperty needed = new SimpleIntegerProperty(this, "needed", 0);
 	private final BooleanProperty selected = new SimpleBooleanProperty();
-	private ArrayList<String> linkedPrinters;
+	/**
+	 * Replaced rather than changed once the toner is in a database,
+	 * so a reader never sees the list half changed
+	 */
+	private volatile ArrayList<String> linkedPrinters;
 	
 	/**
 	 * Unique ID for adding and removing from the set
@@ -36,41 +41,67 @@ public class Toner implements InventoryObject {
 	 * Marshaling
 	 */
 	public Toner() {
-		linkedPrinters = new ArrayList<String>();
-		this.printerModel = new SimpleStringProperty("");
-		this.brand = new SimpleStringProperty("");
-		this.model = new SimpleStringProperty("");
-		this.printers = new SimpleStringProperty("");
-		this.minStock = new SimpleIntegerProperty(0);
-		this.curStock = new SimpleIntegerProperty(0);
-		this.order = new SimpleBooleanProperty(false);
-		this.needed = new SimpleIntegerProperty(0);
-		this.uid = UUID.randomUUID().toString();
+		this(UUID.randomUUID().toString(), new ArrayList<String>());
 	}
 
 	/**
-	 * Takes string of comma separated values
-	 * Split each element of the string into an array
-	 * Iterate over and create SimpleString for each value
-	 * Input validation is handled in PrinterList Class
-	 * @param tonerString
+	 * Used when reading saved toners, which already have a UID,
+	 * to skip generating a random one.
+	 * @param uid
+	 * @param linkedPrinters
 	 */
-	public Toner(String tonerString) {
-		linkedPrinters = new ArrayList<String>();
-		String[] attributeArray = tonerString.split(",");
-		int i = 0;
-		this.printerModel = new SimpleStringProperty(attributeArray[i++]);
-		this.brand = new SimpleStringProperty(attributeArray[i++]);
-		this.model = new SimpleStringProperty(attributeArray[i++]);
-		this.printers = new SimpleStringProperty(attributeArray[i++]);
-		this.minStock = new SimpleIntegerProperty(Integer.parseInt(attributeArray[i++]));
-		this.curStock = new SimpleIntegerProperty(Integer.parseInt(attributeArray[i++]));
-		this.order =new SimpleBooleanProperty(Boolean.parseBoolean(attributeArray[i++]));
-		this.needed = new SimpleIntegerProperty(Integer.parseInt(attributeArray[i++]));
-		this.uid = UUID.randomUUID().toString();
+	Toner(String uid, ArrayList<String> linkedPrinters) {
+		this.linkedPrinters = linkedPrinters;
+		this.uid = uid;
+	}
+
+	/**
+	 * Copies every saved field into a new toner with the same UID,
+	 * so the copy can be written out while this toner keeps changing.
+	 * @return the copy
+	 */
+	Toner copy() {
+		Toner copy = new Toner(uid, new ArrayList<String>(linkedPrinters));
+		copy.printerModel.set(printerModel.get());
+		copy.brand.set(brand.get());
+		copy.model.set(model.get());
+		copy.printers.set(printers.get());
+		copy.minStock.set(minStock.get());
+		copy.curStock.set(curStock.get());
+		copy.order.set(order.get());
+		copy.needed.set(needed.get());
+		return copy;
+	}
+
+	/**
+	 * Copies the imported columns of another toner into this one, leaving
+	 * the UID and links alone. The printers column is a count of the links
+	 * and needed and order follow the stock, so those are not copied either.
+	 * @param other
+	 * @return true if any value changed
+	 */
+	boolean updateFrom(Toner other) {
+		if (sameAs(other)) return false;
+		printerModel.set(other.getPrinterModel());
+		brand.set(other.getBrand());
+		model.set(other.getModel());
+		minStock.set(other.getMinStock());
+		curStock.set(other.getCurStock());
+		return true;
+	}
+
+	/**
+	 * @param other
+	 * @return true if every column updateFrom copies matches this toner
+	 */
+	boolean sameAs(Toner other) {
+		return Objects.equals(printerModel.get(), other.getPrinterModel())
+				&& Objects.equals(brand.get(), other.getBrand())
+				&& Objects.equals(model.get(), other.getModel())
+				&& minStock.get() == other.getMinStock()
+				&& curStock.get() == other.getCurStock();
 	}
 
-	
 	/*
 	 * The following methods return the
 	 * StringProperty object for JAVAFX
@@ -155,42 +186,42 @@ public class Toner implements InventoryObject {
 	
 	/*
 	 * Setters take string
-	 * Created new SimpleString and assign to 
-	 * Class attribute
+	 * Sets the value of the existing property
+	 * so bound table cells see the change
 	 * The unmarshaling process needs these 
 	 * to re-create the objects
 	 */
 	
 	public void setPrinterModel(String printerModel) {
-		this.printerModel =  new SimpleStringProperty(printerModel);
+		this.printerModel.set(printerModel);
 	}
 
 	public void setBrand(String brand) {
-		this.brand =  new SimpleStringProperty(brand);
+		this.brand.set(brand);
 	}
 
 	public void setModel(String model) {
-		this.model =  new SimpleStringProperty(model);
+		this.model.set(model);
 	}
 
 	public void setPrinters(String printers) {
-		this.printers =  new SimpleStringProperty(printers);
+		this.printers.set(printers);
 	}
 
 	public void setMinStock(int minStock) {
-		this.minStock =  new SimpleIntegerProperty(minStock);
+		this.minStock.set(minStock);
 	}
 
 	public void setCurStock(int curStock) {
-		this.curStock =  new SimpleIntegerProperty(curStock);
+		this.curStock.set(curStock);
 	}
 
 	public void setOrder(boolean order) {
-		this.order =  new SimpleBooleanProperty(order);
+		this.order.set(order);
 	}
 
 	public void setNeeded(int needed) {
-		this.needed =  new SimpleIntegerProperty(needed);
+		this.needed.set(needed);
 	}
 	
 	public void setUid(String uid) {
@@ -0,0 +1,104 @@
+package model;
+
+/**
+ * When a toner's stock is expected to run out, from the pages its linked
+ * printers print a day. Every page a printer prints is counted against
+ * each of its toners, so a colour printer draws on all four of its
+ * cartridges at once. Cartridges already in the printers are not counted,
+ * only the ones in stock.
+ *
+ */
+public final class TonerForecast {
+
+	private static final double MILLIS_PER_DAY = 86400000;
+
+	private final Toner toner;
+	private final int curStock;
+	private final double pagesPerDay;
+	private final int meteredPrinters;
+	private final int pageYield;
+	private final long asOf;
+
+	/**
+	 * @param toner
+	 * @param curStock stock when the forecast was made
+	 * @param pagesPerDay pages a day of the metered printers together
+	 * @param meteredPrinters linked printers with a known rate
+	 * @param pageYield pages one cartridge prints
+	 * @param asOf milliseconds since the epoch the forecast counts from
+	 */
+	TonerForecast(Toner toner, int curStock, double pagesPerDay, int meteredPrinters, int pageYield, long asOf) {
+		this.toner = toner;
+		this.curStock = curStock;
+		this.pagesPerDay = pagesPerDay;
+		this.meteredPrinters = meteredPrinters;
+		this.pageYield = pageYield;
+		this.asOf = asOf;
+	}
+
+	public Toner getToner() {
+		return toner;
+	}
+
+	public int getCurStock() {
+		return curStock;
+	}
+
+	public double getPagesPerDay() {
+		return pagesPerDay;
+	}
+
+	/**
+	 * @return linked printers the forecast is based on, 0 if nothing is known
+	 */
+	public int getMeteredPrinters() {
+		return meteredPrinters;
+	}
+
+	public int getPageYield() {
+		return pageYield;
+	}
+
+	/**
+	 * @return days until the stock is used up, infinite if the printers print nothing
+	 */
+	public double getDaysLeft() {
+		return days(curStock);
+	}
+
+	/**
+	 * @return days until the stock falls below its minimum, 0 if it already has
+	 */
+	public double getDaysUntilReorder() {
+		return days(Math.max(0, curStock - toner.getMinStock()));
+	}
+
+	/**
+	 * @return milliseconds since the epoch the stock is expected to run out,
+	 * Long.MAX_VALUE if it never does
+	 */
+	public long getRunOutTime() {
+		double days = getDaysLeft();
+		if (days * MILLIS_PER_DAY >= Long.MAX_VALUE - asOf) return Long.MAX_VALUE;
+		return asOf + (long) (days * MILLIS_PER_DAY);
+	}
+
+	/**
+	 * @return time of the newest reading the forecast counts from, milliseconds since the epoch
+	 */
+	public long getAsOf() {
+		return asOf;
+	}
+
+	private double days(int cartridges) {
+		if (cartridges == 0) return 0;
+		if (!(pagesPerDay > 0)) return Double.POSITIVE_INFINITY;
+		return (double) cartridges * pageYield / pagesPerDay;
+	}
+
+	@Override
+	public String toString() {
+		return toner + ": " + curStock + " left at " + Math.round(pagesPerDay) + " pages a day, "
+				+ Math.round(getDaysLeft()) + " days";
+	}
+}
@@ -0,0 +1,318 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+import interfaces.InventoryObject;
+
+/**
+ * Inverted index of three character substrings used for the filter boxes.
+ * Each record gets a dense int id and its searchable fields are lower cased
+ * once and kept. Every trigram of that text maps to a sorted postings list of
+ * ids. A search intersects the postings lists of the query's trigrams and
+ * confirms the few candidates left with a plain substring check.
+ * Removed ids are left in the postings lists and skipped until enough of
+ * them pile up to rebuild the lists.
+ *
+ * Changes hold a StampedLock for writing. A search only holds it to take
+ * the arrays it needs and how far they are filled, then scans them with no
+ * lock, so a long search never holds up changes from the JavaFX thread or
+ * stock changes. The arrays are only appended to past that point, and
+ * outgrown or rebuilt ones are replaced rather than changed, so a search
+ * sees each record as it was before or after a change that runs alongside
+ * it. A search gives up early if its thread is interrupted.
+ *
+ * @param <T> printer or toner
+ */
+public class TrigramIndex<T extends InventoryObject> {
+
+	/**
+	 * Goes between fields so no query can match across two fields
+	 */
+	static final char FIELD_SEPARATOR = '\u0000';
+
+	private final Function<T, String> textFunction;
+	private final StampedLock lock = new StampedLock();
+	private final HashMap<Long, Postings> postings = new HashMap<>();
+	private final HashMap<String, Integer> idByUid = new HashMap<>();
+	/**
+	 * Record and text of each id, null once removed. Only the first count
+	 * are in use.
+	 */
+	private Object[] records = new Object[16];
+	private String[] texts = new String[16];
+	private int count;
+	private int removedCount;
+
+	/**
+	 * @param textFunction joins the searchable fields of a record, see join()
+	 */
+	public TrigramIndex(Function<T, String> textFunction) {
+		this.textFunction = textFunction;
+	}
+
+	/**
+	 * Joins searchable fields with a separator no query can contain
+	 * @param fields
+	 * @return fields joined into one searchable string
+	 */
+	public static String join(String... fields) {
+		StringBuilder builder = new StringBuilder();
+		for (String field : fields) {
+			if (builder.length() > 0) builder.append(FIELD_SEPARATOR);
+			if (field != null) builder.append(field);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Indexes a record, or reindexes it if its searchable text changed
+	 * @param record
+	 */
+	public void update(T record) {
+		String text = textFunction.apply(record).toLowerCase(Locale.ROOT);
+		long stamp = lock.writeLock();
+		try {
+			Integer id = idByUid.get(record.getUid());
+			if (id != null) {
+				if (records[id] == record && text.equals(texts[id])) return;
+				removeLocked(record);
+			}
+			add(record, text);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Removes a record from the index
+	 * @param record
+	 */
+	public void remove(T record) {
+		long stamp = lock.writeLock();
+		try {
+			removeLocked(record);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	private void removeLocked(T record) {
+		Integer id = idByUid.remove(record.getUid());
+		if (id == null) return;
+		records[id] = null;
+		texts[id] = null;
+		removedCount++;
+		if (removedCount > 1024 && removedCount > idByUid.size()) {
+			rebuild();
+		}
+	}
+
+	public void clear() {
+		long stamp = lock.writeLock();
+		try {
+			clearLocked();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Starts again with new arrays, searches still scanning the old ones finish with them
+	 */
+	private void clearLocked() {
+		postings.clear();
+		idByUid.clear();
+		records = new Object[16];
+		texts = new String[16];
+		count = 0;
+		removedCount = 0;
+	}
+
+	/**
+	 * Checks one record the way search() does, without looking at the index
+	 * @param record
+	 * @param filter
+	 * @return true if search() would find the record for the filter
+	 */
+	public boolean matches(T record, String filter) {
+		return textFunction.apply(record).toLowerCase(Locale.ROOT).contains(filter.toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * Finds every record with the filter as a substring of one of its fields,
+	 * ignoring case
+	 * @param filter
+	 * @return the matching records, or an empty set if the search was interrupted
+	 */
+	public Set<T> search(String filter) {
+		String query = filter.toLowerCase(Locale.ROOT);
+		Object[] records;
+		String[] texts;
+		int count;
+		if (query.length() < 3) {
+			// too short to have a trigram, check every text instead
+			long stamp = lock.tryOptimisticRead();
+			records = this.records;
+			texts = this.texts;
+			count = this.count;
+			if (!lock.validate(stamp)) {
+				stamp = lock.readLock();
+				try {
+					records = this.records;
+					texts = this.texts;
+					count = this.count;
+				} finally {
+					lock.unlockRead(stamp);
+				}
+			}
+			HashSet<T> result = new HashSet<>();
+			for (int id = 0; id < count; id++) {
+				if ((id & 0xFFF) == 0 && Thread.currentThread().isInterrupted()) return Collections.emptySet();
+				String text = texts[id];
+				if (text != null && text.contains(query)) result.add(record(records, id));
+			}
+			return result;
+		}
+
+		List<Postings> lists = new ArrayList<>();
+		long stamp = lock.readLock();
+		try {
+			HashSet<Long> seen = new HashSet<>();
+			for (int i = 0; i + 3 <= query.length(); i++) {
+				Long trigram = trigram(query, i);
+				if (!seen.add(trigram)) continue;
+				Postings list = postings.get(trigram);
+				if (list == null) return Collections.emptySet();
+				lists.add(list.view());
+			}
+			records = this.records;
+			texts = this.texts;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+		// intersect starting from the shortest list so the candidates shrink fastest
+		lists.sort(Comparator.comparingInt(list -> list.size));
+		int[] candidates = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+		int left = candidates.length;
+		for (int i = 1; i < lists.size() && left > 0; i++) {
+			left = intersect(candidates, left, lists.get(i));
+		}
+
+		HashSet<T> result = new HashSet<>();
+		for (int i = 0; i < left; i++) {
+			if ((i & 0xFFF) == 0 && Thread.currentThread().isInterrupted()) return Collections.emptySet();
+			int id = candidates[i];
+			String text = texts[id];
+			if (text != null && text.contains(query)) result.add(record(records, id));
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T record(Object[] records, int id) {
+		return (T) records[id];
+	}
+
+	/**
+	 * Gives the record a new id and appends it to the postings of each of
+	 * its distinct trigrams. Ids only grow so the lists stay sorted.
+	 */
+	private void add(T record, String text) {
+		int id = count;
+		if (id == records.length) {
+			records = Arrays.copyOf(records, id * 2);
+			texts = Arrays.copyOf(texts, id * 2);
+		}
+		records[id] = record;
+		texts[id] = text;
+		count++;
+		idByUid.put(record.getUid(), id);
+		for (int i = 0; i + 3 <= text.length(); i++) {
+			postings.computeIfAbsent(trigram(text, i), k -> new Postings()).append(id);
+		}
+	}
+
+	/**
+	 * Drops removed ids by indexing the live records again from scratch
+	 */
+	private void rebuild() {
+		Object[] oldRecords = records;
+		String[] oldTexts = texts;
+		int oldCount = count;
+		clearLocked();
+		for (int id = 0; id < oldCount; id++) {
+			if (oldRecords[id] != null) add(record(oldRecords, id), oldTexts[id]);
+		}
+	}
+
+	/**
+	 * Keeps the candidates that are also in the postings list
+	 * @return how many candidates are left at the front of the array
+	 */
+	private static int intersect(int[] candidates, int count, Postings list) {
+		int kept = 0;
+		int j = 0;
+		for (int i = 0; i < count; i++) {
+			int id = candidates[i];
+			j = Arrays.binarySearch(list.ids, j, list.size, id);
+			if (j >= 0) {
+				candidates[kept++] = id;
+			} else {
+				j = -j - 1;
+				if (j == list.size) break;
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * Packs the three characters starting at i into one key
+	 */
+	private static Long trigram(String text, int i) {
+		return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+	}
+
+	/**
+	 * Growable sorted array of record ids. Ids are only ever appended, and
+	 * a full array is copied into a bigger one, so the first size ids of an
+	 * array never change.
+	 */
+	private static class Postings {
+		int[] ids;
+		int size;
+
+		Postings() {
+			this(new int[4], 0);
+		}
+
+		private Postings(int[] ids, int size) {
+			this.ids = ids;
+			this.size = size;
+		}
+
+		/**
+		 * @return copy that keeps this list's current array and size,
+		 * for a search to read after the lock is let go
+		 */
+		Postings view() {
+			return new Postings(ids, size);
+		}
+
+		void append(int id) {
+			// a trigram can repeat within one text, store the id once
+			if (size > 0 && ids[size - 1] == id) return;
+			if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+			ids[size++] = id;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import interfaces.InventoryObject;
+
+/**
+ * Hash index from one attribute of a record to the record. Keys are trimmed
+ * and compared ignoring case, blank keys are not indexed. If two records share
+ * a key get() returns the most recently indexed one and getAll() all of
+ * them, so removing or rekeying one makes the next one findable again.
+ * The key each record was indexed under is remembered by UID so a record can
+ * be reindexed after its setters have already changed the attribute.
+ * Lookups take no lock and may run while one writer changes the index.
+ *
+ * @param <T> printer or toner
+ */
+public class UniqueIndex<T extends InventoryObject> {
+
+	private final Function<T, String> keyFunction;
+	/**
+	 * Every record holding a key, most recently indexed last. The lists are
+	 * never changed once in the map, a writer swaps in a new one.
+	 */
+	private final ConcurrentHashMap<String, List<T>> recordsByKey = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, String> keyByUid = new ConcurrentHashMap<>();
+
+	/**
+	 * @param keyFunction reads the indexed attribute from a record
+	 */
+	public UniqueIndex(Function<T, String> keyFunction) {
+		this.keyFunction = keyFunction;
+	}
+
+	/**
+	 * Indexes a record under its current key
+	 * @param record
+	 * @return the record that previously held the key, or null
+	 */
+	public T add(T record) {
+		String key = normalize(keyFunction.apply(record));
+		if (key == null) return null;
+		keyByUid.put(record.getUid(), key);
+		List<T> old = recordsByKey.get(key);
+		recordsByKey.compute(key, (k, holders) -> with(holders, record));
+		T previous = old == null ? null : last(old);
+		return previous == record ? null : previous;
+	}
+
+	/**
+	 * Removes a record using the key it was indexed under
+	 * @param record
+	 */
+	public void remove(T record) {
+		String key = keyByUid.remove(record.getUid());
+		if (key != null) recordsByKey.computeIfPresent(key, (k, holders) -> without(holders, record));
+	}
+
+	/**
+	 * Moves a record to its current key if the attribute changed
+	 * @param record
+	 */
+	public void update(T record) {
+		String key = normalize(keyFunction.apply(record));
+		String old = keyByUid.get(record.getUid());
+		if (key == null ? old == null : key.equals(old)) return;
+		remove(record);
+		add(record);
+	}
+
+	/**
+	 * @param key
+	 * @return the record indexed under key, or null
+	 */
+	public T get(String key) {
+		String normalized = normalize(key);
+		if (normalized == null) return null;
+		List<T> holders = recordsByKey.get(normalized);
+		return holders == null ? null : last(holders);
+	}
+
+	/**
+	 * @param key
+	 * @return read only list of every record indexed under key, most
+	 * recently indexed last, empty if there are none
+	 */
+	public List<T> getAll(String key) {
+		String normalized = normalize(key);
+		List<T> holders = normalized == null ? null : recordsByKey.get(normalized);
+		return holders == null ? Collections.<T>emptyList() : Collections.unmodifiableList(holders);
+	}
+
+	/**
+	 * @return number of distinct keys
+	 */
+	public int size() {
+		return recordsByKey.size();
+	}
+
+	public void clear() {
+		recordsByKey.clear();
+		keyByUid.clear();
+	}
+
+	private static <T> T last(List<T> holders) {
+		return holders.get(holders.size() - 1);
+	}
+
+	/**
+	 * @return the holders with the record moved or added to the end
+	 */
+	private static <T> List<T> with(List<T> holders, T record) {
+		if (holders == null) return Collections.singletonList(record);
+		List<T> copy = new ArrayList<>(holders.size() + 1);
+		for (T holder : holders) {
+			if (holder != record) copy.add(holder);
+		}
+		copy.add(record);
+		return copy;
+	}
+
+	/**
+	 * @return the holders without the record, null if none are left
+	 */
+	private static <T> List<T> without(List<T> holders, T record) {
+		List<T> copy = new ArrayList<>(holders.size());
+		for (T holder : holders) {
+			if (holder != record) copy.add(holder);
+		}
+		if (copy.size() == holders.size()) return holders;
+		return copy.isEmpty() ? null : copy;
+	}
+
+	/**
+	 * Trims and upper cases a key
+	 * @param key
+	 * @return the normalized key, or null if it is blank
+	 */
+	static String normalize(String key) {
+		if (key == null) return null;
+		String trimmed = key.trim();
+		return trimmed.isEmpty() ? null : trimmed.toUpperCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,30 @@
+package model;
+
+import java.util.ArrayList;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Root element of a database XML file, as JAXB binds it. Only used to read
+ * files the streaming reader gives up on. The database keeps its records in
+ * concurrent maps, which JAXB cannot bind, so they are read into these lists
+ * and added from there.
+ *
+ */
+@XmlRootElement(name = "Database")
+class XmlDatabase {
+
+	private ArrayList<Printer> printers = new ArrayList<>();
+	private ArrayList<Toner> toners = new ArrayList<>();
+
+	@XmlElement(name = "printer", type = Printer.class)
+	public ArrayList<Printer> getPrinters() {
+		return printers;
+	}
+
+	@XmlElement(name = "toner", type = Toner.class)
+	public ArrayList<Toner> getToners() {
+		return toners;
+	}
+}
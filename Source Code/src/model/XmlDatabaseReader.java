@@ -0,0 +1,137 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads database XML written by JAXB or XmlDatabaseWriter one record at a
+ * time with StAX. Each printer and toner is handed to a callback as soon as
+ * its element ends, so no document tree is ever built.
+ * Child elements can come in any order and unknown ones are skipped.
+ *
+ */
+public class XmlDatabaseReader implements Closeable {
+
+	private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+	static {
+		// database files never need a DTD, refusing them also blocks entity expansion
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	private final InputStream in;
+	private final XMLStreamReader reader;
+
+	/**
+	 * @param in stream to read, closed by close()
+	 * @throws IOException
+	 */
+	public XmlDatabaseReader(InputStream in) throws IOException {
+		this.in = in;
+		try {
+			reader = inputFactory.createXMLStreamReader(in);
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Reads the whole document
+	 * @param printerConsumer called with each printer
+	 * @param tonerConsumer called with each toner
+	 * @throws IOException if the document is not well formed or a number field is not a number
+	 */
+	public void read(Consumer<Printer> printerConsumer, Consumer<Toner> tonerConsumer) throws IOException {
+		try {
+			reader.nextTag();
+			if (!reader.getLocalName().equals("Database")) {
+				throw new IOException("Not a database file, root element is " + reader.getLocalName());
+			}
+			while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				if (name.equals("printer")) {
+					printerConsumer.accept(readPrinter());
+				} else if (name.equals("toner")) {
+					tonerConsumer.accept(readToner());
+				} else {
+					skipElement();
+				}
+			}
+		} catch (XMLStreamException | NumberFormatException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			reader.close();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			in.close();
+		}
+	}
+
+	private Printer readPrinter() throws XMLStreamException {
+		Printer printer = new Printer();
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (reader.getLocalName()) {
+			case "barCode": printer.setBarCode(reader.getElementText()); break;
+			case "campus": printer.setCampus(reader.getElementText()); break;
+			case "category": printer.setCategory(reader.getElementText()); break;
+			case "department": printer.setDepartment(reader.getElementText()); break;
+			case "description": printer.setDescription(reader.getElementText()); break;
+			case "division": printer.setDivision(reader.getElementText()); break;
+			case "linkedToners": printer.getLinkedToners().add(reader.getElementText()); break;
+			case "location": printer.setLocation(reader.getElementText()); break;
+			case "manufacturer": printer.setManufacturer(reader.getElementText()); break;
+			case "printerNotes": printer.setPrinterNotes(reader.getElementText()); break;
+			case "serialNumber": printer.setSerialNumber(reader.getElementText()); break;
+			case "status": printer.setStatus(reader.getElementText()); break;
+			case "uid": printer.setUid(reader.getElementText()); break;
+			default: skipElement();
+			}
+		}
+		return printer;
+	}
+
+	private Toner readToner() throws XMLStreamException {
+		Toner toner = new Toner();
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (reader.getLocalName()) {
+			case "brand": toner.setBrand(reader.getElementText()); break;
+			case "curStock": toner.setCurStock(Integer.parseInt(reader.getElementText().trim())); break;
+			case "linkedPrinters": toner.getLinkedPrinters().add(reader.getElementText()); break;
+			case "minStock": toner.setMinStock(Integer.parseInt(reader.getElementText().trim())); break;
+			case "model": toner.setModel(reader.getElementText()); break;
+			case "needed": toner.setNeeded(Integer.parseInt(reader.getElementText().trim())); break;
+			case "order": toner.setOrder(Boolean.parseBoolean(reader.getElementText().trim())); break;
+			case "printerModel": toner.setPrinterModel(reader.getElementText()); break;
+			case "printers": toner.setPrinters(reader.getElementText()); break;
+			case "uid": toner.setUid(reader.getElementText()); break;
+			default: skipElement();
+			}
+		}
+		return toner;
+	}
+
+	/**
+	 * Skips the current element and everything inside it
+	 */
+	private void skipElement() throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes the database XML one record at a time with StAX. The output uses
+ * the same layout JAXB produces for Database, so either can read it back.
+ * Nothing is held in memory besides the record being written.
+ *
+ */
+public class XmlDatabaseWriter implements Closeable {
+
+	private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+	private final OutputStream out;
+	private final XMLStreamWriter writer;
+
+	/**
+	 * Starts the document and opens the Database element
+	 * @param out stream to write to, closed by close()
+	 * @throws IOException
+	 */
+	public XmlDatabaseWriter(OutputStream out) throws IOException {
+		this.out = out;
+		try {
+			writer = outputFactory.createXMLStreamWriter(out, "UTF-8");
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeCharacters("\n");
+			writer.writeStartElement("Database");
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Writes one printer element
+	 * @param printer
+	 * @throws IOException
+	 */
+	public void writePrinter(Printer printer) throws IOException {
+		try {
+			writer.writeCharacters("\n    ");
+			writer.writeStartElement("printer");
+			writeField("barCode", printer.getBarCode());
+			writeField("campus", printer.getCampus());
+			writeField("category", printer.getCategory());
+			writeField("department", printer.getDepartment());
+			writeField("description", printer.getDescription());
+			writeField("division", printer.getDivision());
+			for (String tonerUid : printer.getLinkedToners()) {
+				writeField("linkedToners", tonerUid);
+			}
+			writeField("location", printer.getLocation());
+			writeField("manufacturer", printer.getManufacturer());
+			writeField("printerNotes", printer.getPrinterNotes());
+			writeField("serialNumber", printer.getSerialNumber());
+			writeField("status", printer.getStatus());
+			writeField("uid", printer.getUid());
+			writer.writeCharacters("\n    ");
+			writer.writeEndElement();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Writes one toner element
+	 * @param toner
+	 * @throws IOException
+	 */
+	public void writeToner(Toner toner) throws IOException {
+		try {
+			writer.writeCharacters("\n    ");
+			writer.writeStartElement("toner");
+			writeField("brand", toner.getBrand());
+			writeField("curStock", Integer.toString(toner.getCurStock()));
+			for (String printerUid : toner.getLinkedPrinters()) {
+				writeField("linkedPrinters", printerUid);
+			}
+			writeField("minStock", Integer.toString(toner.getMinStock()));
+			writeField("model", toner.getModel());
+			writeField("needed", Integer.toString(toner.getNeeded()));
+			writeField("order", Boolean.toString(toner.getOrder()));
+			writeField("printerModel", toner.getPrinterModel());
+			writeField("printers", toner.getPrinters());
+			writeField("uid", toner.getUid());
+			writer.writeCharacters("\n    ");
+			writer.writeEndElement();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Closes the Database element, ends the document and closes the stream
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			writer.writeCharacters("\n");
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.writeCharacters("\n");
+			writer.close();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes a child element holding value. Null values are left out like JAXB does.
+	 */
+	private void writeField(String name, String value) throws XMLStreamException {
+		if (value == null) return;
+		writer.writeCharacters("\n        ");
+		writer.writeStartElement(name);
+		writer.writeCharacters(value);
+		writer.writeEndElement();
+	}
+}
@@ -0,0 +1,445 @@
+package server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import interfaces.InventoryObject;
+import model.Database;
+import model.DepletionForecaster;
+import model.Printer;
+import model.ReorderEngine;
+import model.Toner;
+import model.TonerForecast;
+
+/**
+ * Serves a database over a local HTTP API with JSON responses, so several
+ * people can look up printers and change toner stock at once. Built on the
+ * JDK's own HttpServer, nothing else has to be installed or running.
+ *
+ * <pre>
+ *   GET  /printers?q=&amp;campus=&amp;location=&amp;manufacturer=&amp;status=&amp;after=&amp;offset=&amp;limit=
+ *   GET  /printers/barcode/{barCode}
+ *   GET  /printers/serial/{serialNumber}
+ *   GET  /printers/{uid}
+ *   GET  /toners?q=&amp;after=&amp;offset=&amp;limit=
+ *   GET  /toners/{uid}
+ *   POST /toners/{uid}/stock?delta=-1   or   ?set=12
+ *   GET  /reorder
+ *   GET  /forecast?offset=&amp;limit=
+ *   GET  /toners/{uid}/forecast
+ * </pre>
+ *
+ * The forecasts are only there once setForecaster() has been given one.
+ * Listings are in UID order. Each page gives the UID to pass as after= for
+ * the next one, which costs the same however deep the page is, unlike offset.
+ *
+ * Requests run on virtual threads when the JVM has them and on a thread pool
+ * otherwise. The database does its own locking, lookups take no lock at
+ * all and stock changes to different toners run side by side.
+ */
+public class DatabaseServer {
+
+	/**
+	 * Records in a listing when the request does not ask for a number
+	 */
+	private static final int DEFAULT_LIMIT = 100;
+	private static final int MAX_LIMIT = 1000;
+
+	static {
+		// Headers and body go out in separate writes. With Nagle's algorithm on,
+		// the body waits for the client's delayed ACK, about 40 ms per request.
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final Database database;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private volatile DepletionForecaster forecaster;
+
+	/**
+	 * @param database
+	 * @param address address to listen on, normally the loopback address
+	 * @throws IOException if the address cannot be bound
+	 */
+	public DatabaseServer(Database database, InetSocketAddress address) throws IOException {
+		this.database = database;
+		this.server = HttpServer.create(address, 1024);
+		this.executor = newRequestExecutor();
+		server.createContext("/", this::dispatch);
+		server.setExecutor(executor);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops taking requests and waits a moment for the running ones
+	 */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @param forecaster answers the forecast requests, null to turn them off
+	 */
+	public void setForecaster(DepletionForecaster forecaster) {
+		this.forecaster = forecaster;
+	}
+
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * One virtual thread per request on Java 21 and later. Older JVMs get a
+	 * fixed pool, requests are short and never wait on anything but a lock.
+	 */
+	static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2), runnable -> {
+				Thread thread = new Thread(runnable, "http-request");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * A request that cannot be answered, sent back as its status and message
+	 */
+	private static class ApiException extends Exception {
+		private static final long serialVersionUID = 1L;
+		final int status;
+
+		ApiException(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	private void dispatch(HttpExchange exchange) throws IOException {
+		int status = 200;
+		String body;
+		try {
+			List<String> path = segments(exchange.getRequestURI().getRawPath());
+			Map<String, String> query = parameters(exchange.getRequestURI().getRawQuery());
+			body = route(exchange.getRequestMethod(), path, query);
+		} catch (ApiException e) {
+			status = e.status;
+			body = Json.error(e.getMessage());
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			status = 500;
+			body = Json.error("Internal error");
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private String route(String method, List<String> path, Map<String, String> query) throws ApiException {
+		int size = path.size();
+		if (size == 0) throw new ApiException(404, "No such resource");
+		switch (path.get(0)) {
+		case "printers":
+			requireGet(method);
+			if (size == 1) return listPrinters(query);
+			if (size == 2) return printer(database::findPrinterByUid, path.get(1));
+			if (size == 3 && path.get(1).equals("barcode")) return printer(database::findPrinterByBarCode, path.get(2));
+			if (size == 3 && path.get(1).equals("serial")) return printer(database::findPrinterBySerialNumber, path.get(2));
+			break;
+		case "toners":
+			if (size == 3 && path.get(2).equals("stock")) {
+				if (!method.equals("POST")) throw new ApiException(405, "Use POST to change stock");
+				return adjustStock(path.get(1), query);
+			}
+			requireGet(method);
+			if (size == 1) return listToners(query);
+			if (size == 2) return toner(path.get(1));
+			if (size == 3 && path.get(2).equals("forecast")) return forecast(path.get(1));
+			break;
+		case "reorder":
+			requireGet(method);
+			if (size == 1) return reorder();
+			break;
+		case "forecast":
+			requireGet(method);
+			if (size == 1) return listForecasts(query);
+			break;
+		default:
+			break;
+		}
+		throw new ApiException(404, "No such resource");
+	}
+
+	private String printer(Function<String, Printer> finder, String key) throws ApiException {
+		Printer printer = finder.apply(key);
+		if (printer == null) throw new ApiException(404, "No printer " + key);
+		return new Json().printer(printer).toString();
+	}
+
+	private String toner(String uid) throws ApiException {
+		Toner toner = database.findTonerByUid(uid);
+		if (toner == null) throw new ApiException(404, "No toner " + uid);
+		return new Json().toner(toner).toString();
+	}
+
+	/**
+	 * Lists the printers that pass every filter given. The smallest of the
+	 * matching index sets is walked and checked against the others.
+	 */
+	private String listPrinters(Map<String, String> query) throws ApiException {
+		int offset = intParameter(query, "offset", 0);
+		int limit = Math.min(intParameter(query, "limit", DEFAULT_LIMIT), MAX_LIMIT);
+		ArrayList<Set<Printer>> filters = new ArrayList<>();
+		if (query.containsKey("q")) filters.add(database.searchPrinters(query.get("q")));
+		if (query.containsKey("campus")) filters.add(database.findPrintersByCampus(query.get("campus")));
+		if (query.containsKey("location")) filters.add(database.findPrintersByLocation(query.get("location")));
+		if (query.containsKey("manufacturer")) filters.add(database.findPrintersByManufacturer(query.get("manufacturer")));
+		if (query.containsKey("status")) filters.add(database.findPrintersByStatus(query.get("status")));
+		String after = query.get("after");
+		int total;
+		List<Printer> page;
+		if (filters.isEmpty()) {
+			total = database.getPrinterCount();
+			page = firstInOrder(database.getPrintersAfter(after), offset, limit);
+		} else {
+			filters.sort(Comparator.comparingInt(Set::size));
+			ArrayList<Printer> both = new ArrayList<>();
+			for (Printer printer : filters.get(0)) {
+				boolean all = true;
+				for (int i = 1; i < filters.size() && all; i++) {
+					all = filters.get(i).contains(printer);
+				}
+				if (all) both.add(printer);
+			}
+			total = both.size();
+			page = smallestUids(both, after, offset, limit);
+		}
+		Json json = new Json().begin();
+		json.field("total", total).append(',');
+		json.field("next", next(page, limit)).append(',');
+		json.name("printers").printers(page);
+		return json.end().toString();
+	}
+
+	private String listToners(Map<String, String> query) throws ApiException {
+		int offset = intParameter(query, "offset", 0);
+		int limit = Math.min(intParameter(query, "limit", DEFAULT_LIMIT), MAX_LIMIT);
+		String after = query.get("after");
+		int total;
+		List<Toner> page;
+		if (query.containsKey("q")) {
+			Set<Toner> matches = database.searchToners(query.get("q"));
+			total = matches.size();
+			page = smallestUids(matches, after, offset, limit);
+		} else {
+			total = database.getTonerCount();
+			page = firstInOrder(database.getTonersAfter(after), offset, limit);
+		}
+		Json json = new Json().begin();
+		json.field("total", total).append(',');
+		json.field("next", next(page, limit)).append(',');
+		json.name("toners").toners(page);
+		return json.end().toString();
+	}
+
+	/**
+	 * Changes a toner's current stock by a delta, or sets it outright
+	 */
+	private String adjustStock(String uid, Map<String, String> query) throws ApiException {
+		boolean set = query.containsKey("set");
+		if (set == query.containsKey("delta")) throw new ApiException(400, "Give either delta or set");
+		int value = set ? intParameter(query, "set", 0) : intParameter(query, "delta", 0);
+		Toner toner = database.findTonerByUid(uid);
+		if (toner == null) throw new ApiException(404, "No toner " + uid);
+		try {
+			if (set) {
+				database.setStock(toner, value);
+			} else {
+				database.adjustStock(toner, value);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new ApiException(409, e.getMessage());
+		} catch (ArithmeticException e) {
+			throw new ApiException(400, "Stock is too large");
+		} catch (NoSuchElementException e) {
+			throw new ApiException(404, "No toner " + uid);
+		}
+		return new Json().toner(toner).toString();
+	}
+
+	private String reorder() {
+		ReorderEngine engine = database.getReorderEngine();
+		Json json = new Json().begin();
+		json.field("orderCount", engine.getOrderCount()).append(',');
+		json.field("totalNeeded", engine.getTotalNeeded()).append(',');
+		json.name("toners").toners(engine.getNeedsOrdering());
+		return json.end().toString();
+	}
+
+	private String forecast(String uid) throws ApiException {
+		DepletionForecaster forecaster = requireForecaster();
+		Toner toner = database.findTonerByUid(uid);
+		if (toner == null) throw new ApiException(404, "No toner " + uid);
+		return new Json().forecast(forecaster.forecast(toner)).toString();
+	}
+
+	/**
+	 * Lists the forecasts of the metered toners, soonest to run out first
+	 */
+	private String listForecasts(Map<String, String> query) throws ApiException {
+		DepletionForecaster forecaster = requireForecaster();
+		int offset = intParameter(query, "offset", 0);
+		int limit = Math.min(intParameter(query, "limit", DEFAULT_LIMIT), MAX_LIMIT);
+		List<TonerForecast> forecasts = forecaster.forecastAll();
+		Json json = new Json().begin();
+		json.field("total", forecasts.size()).append(',');
+		json.name("forecasts").forecasts(page(forecasts, offset, limit));
+		return json.end().toString();
+	}
+
+	private DepletionForecaster requireForecaster() throws ApiException {
+		DepletionForecaster current = forecaster;
+		if (current == null) throw new ApiException(404, "No meter readings are being collected");
+		return current;
+	}
+
+	/**
+	 * Takes one page from records that are already in UID order
+	 */
+	private static <T> List<T> firstInOrder(Collection<T> ordered, int offset, int limit) {
+		// sizing from the view would count a skip list
+		ArrayList<T> page = new ArrayList<>();
+		Iterator<T> records = ordered.iterator();
+		for (int i = 0; i < offset && records.hasNext(); i++) {
+			records.next();
+		}
+		while (page.size() < limit && records.hasNext()) {
+			page.add(records.next());
+		}
+		return page;
+	}
+
+	/**
+	 * Picks one page of the matches in UID order without sorting them all.
+	 * Only the offset + limit smallest UIDs after the cursor are kept, in a
+	 * heap with the largest on top.
+	 * @param after UID the page starts after, null to start at the first
+	 */
+	private static <T extends InventoryObject> List<T> smallestUids(Collection<T> matches, String after,
+			int offset, int limit) {
+		int keep = (int) Math.min((long) offset + limit, matches.size());
+		if (keep <= offset) return new ArrayList<>();
+		Comparator<T> byUid = Comparator.comparing(InventoryObject::getUid);
+		PriorityQueue<T> smallest = new PriorityQueue<>(keep, byUid.reversed());
+		for (T match : matches) {
+			if (after != null && match.getUid().compareTo(after) <= 0) continue;
+			if (smallest.size() < keep) {
+				smallest.add(match);
+			} else if (byUid.compare(match, smallest.peek()) < 0) {
+				smallest.poll();
+				smallest.add(match);
+			}
+		}
+		ArrayList<T> page = new ArrayList<>(smallest);
+		page.sort(byUid);
+		return page.subList(Math.min(offset, page.size()), page.size());
+	}
+
+	/**
+	 * @return the cursor for the page after a full one, null after the last page
+	 */
+	private static String next(List<? extends InventoryObject> page, int limit) {
+		return page.isEmpty() || page.size() < limit ? null : page.get(page.size() - 1).getUid();
+	}
+
+	/**
+	 * Cuts one page out of a sorted list
+	 */
+	private static <T> List<T> page(List<T> sorted, int offset, int limit) {
+		int from = Math.min(offset, sorted.size());
+		return sorted.subList(from, Math.min(sorted.size(), from + limit));
+	}
+
+	private static void requireGet(String method) throws ApiException {
+		if (!method.equals("GET")) throw new ApiException(405, "Use GET");
+	}
+
+	private static int intParameter(Map<String, String> query, String name, int otherwise) throws ApiException {
+		String value = query.get(name);
+		if (value == null) return otherwise;
+		try {
+			int number = Integer.parseInt(value.trim());
+			if (number < 0 && !name.equals("delta")) throw new ApiException(400, name + " cannot be negative");
+			return number;
+		} catch (NumberFormatException e) {
+			throw new ApiException(400, name + " is not a whole number: " + value);
+		}
+	}
+
+	private static List<String> segments(String rawPath) throws ApiException {
+		ArrayList<String> segments = new ArrayList<>();
+		for (String segment : rawPath.split("/")) {
+			if (!segment.isEmpty()) segments.add(decode(segment));
+		}
+		return segments;
+	}
+
+	private static Map<String, String> parameters(String rawQuery) throws ApiException {
+		HashMap<String, String> parameters = new HashMap<>();
+		if (rawQuery == null || rawQuery.isEmpty()) return parameters;
+		for (String pair : rawQuery.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals < 0) {
+				parameters.put(decode(pair), "");
+			} else {
+				parameters.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+			}
+		}
+		return parameters;
+	}
+
+	private static String decode(String value) throws ApiException {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			throw new ApiException(400, "Badly encoded request");
+		}
+	}
+}
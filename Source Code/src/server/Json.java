@@ -0,0 +1,208 @@
+package server;
+
+import java.time.Instant;
+import java.util.Collection;
+
+import model.Printer;
+import model.Toner;
+import model.TonerForecast;
+
+/**
+ * Writes printers and toners as JSON. The API only ever sends records, so
+ * a few append methods do the job without a JSON library.
+ */
+class Json {
+
+	private final StringBuilder out = new StringBuilder(256);
+
+	Json printer(Printer printer) {
+		out.append('{');
+		field("uid", printer.getUid()).append(',');
+		field("barCode", printer.getBarCode()).append(',');
+		field("description", printer.getDescription()).append(',');
+		field("category", printer.getCategory()).append(',');
+		field("location", printer.getLocation()).append(',');
+		field("serialNumber", printer.getSerialNumber()).append(',');
+		field("manufacturer", printer.getManufacturer()).append(',');
+		field("division", printer.getDivision()).append(',');
+		field("department", printer.getDepartment()).append(',');
+		field("campus", printer.getCampus()).append(',');
+		field("status", printer.getStatus()).append(',');
+		field("notes", printer.getPrinterNotes()).append(',');
+		name("linkedToners");
+		strings(printer.getLinkedToners());
+		out.append('}');
+		return this;
+	}
+
+	Json toner(Toner toner) {
+		out.append('{');
+		field("uid", toner.getUid()).append(',');
+		field("printerModel", toner.getPrinterModel()).append(',');
+		field("brand", toner.getBrand()).append(',');
+		field("model", toner.getModel()).append(',');
+		field("printers", toner.getPrinters()).append(',');
+		field("minStock", toner.getMinStock()).append(',');
+		field("curStock", toner.getCurStock()).append(',');
+		name("order");
+		out.append(toner.getOrder()).append(',');
+		field("needed", toner.getNeeded()).append(',');
+		name("linkedPrinters");
+		strings(toner.getLinkedPrinters());
+		out.append('}');
+		return this;
+	}
+
+	/**
+	 * A forecast with its toner's UID and model. Days that never come are null.
+	 */
+	Json forecast(TonerForecast forecast) {
+		Toner toner = forecast.getToner();
+		out.append('{');
+		field("uid", toner.getUid()).append(',');
+		field("brand", toner.getBrand()).append(',');
+		field("model", toner.getModel()).append(',');
+		field("curStock", forecast.getCurStock()).append(',');
+		field("minStock", toner.getMinStock()).append(',');
+		field("meteredPrinters", forecast.getMeteredPrinters()).append(',');
+		field("pageYield", forecast.getPageYield()).append(',');
+		field("pagesPerDay", forecast.getPagesPerDay()).append(',');
+		field("daysLeft", forecast.getDaysLeft()).append(',');
+		field("daysUntilReorder", forecast.getDaysUntilReorder()).append(',');
+		long runOut = forecast.getRunOutTime();
+		field("runOut", runOut == Long.MAX_VALUE ? null : Instant.ofEpochMilli(runOut).toString());
+		out.append('}');
+		return this;
+	}
+
+	Json forecasts(Collection<TonerForecast> forecasts) {
+		out.append('[');
+		boolean first = true;
+		for (TonerForecast forecast : forecasts) {
+			if (!first) out.append(',');
+			forecast(forecast);
+			first = false;
+		}
+		out.append(']');
+		return this;
+	}
+
+	Json printers(Collection<Printer> printers) {
+		out.append('[');
+		boolean first = true;
+		for (Printer printer : printers) {
+			if (!first) out.append(',');
+			printer(printer);
+			first = false;
+		}
+		out.append(']');
+		return this;
+	}
+
+	Json toners(Collection<Toner> toners) {
+		out.append('[');
+		boolean first = true;
+		for (Toner toner : toners) {
+			if (!first) out.append(',');
+			toner(toner);
+			first = false;
+		}
+		out.append(']');
+		return this;
+	}
+
+	/**
+	 * @param message
+	 * @return an object with just an error message
+	 */
+	static String error(String message) {
+		Json json = new Json();
+		json.out.append('{');
+		json.field("error", message);
+		json.out.append('}');
+		return json.toString();
+	}
+
+	/**
+	 * Starts an object, for responses that wrap a list with totals
+	 */
+	Json begin() {
+		out.append('{');
+		return this;
+	}
+
+	Json end() {
+		out.append('}');
+		return this;
+	}
+
+	StringBuilder field(String name, int value) {
+		name(name);
+		return out.append(value);
+	}
+
+	/**
+	 * Rounds to a tenth, JSON has no infinity so that is written as null
+	 */
+	StringBuilder field(String name, double value) {
+		name(name);
+		if (Double.isNaN(value) || Double.isInfinite(value)) return out.append("null");
+		return out.append(Math.round(value * 10) / 10.0);
+	}
+
+	StringBuilder field(String name, String value) {
+		name(name);
+		string(value);
+		return out;
+	}
+
+	/**
+	 * Writes a name and colon, the caller writes the value
+	 */
+	Json name(String name) {
+		string(name);
+		out.append(':');
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return out.toString();
+	}
+
+	private void strings(Collection<String> strings) {
+		out.append('[');
+		boolean first = true;
+		for (String string : strings) {
+			if (!first) out.append(',');
+			string(string);
+			first = false;
+		}
+		out.append(']');
+	}
+
+	private void string(String value) {
+		if (value == null) {
+			out.append("null");
+			return;
+		}
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"': out.append("\\\""); break;
+			case '\\': out.append("\\\\"); break;
+			case '\n': out.append("\\n"); break;
+			case '\r': out.append("\\r"); break;
+			case '\t': out.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					out.append(String.format("\\u%04x", (int) c));
+				} else {
+					out.append(c);
+				}
+			}
+		}
+		out.append('"');
+	}
+}
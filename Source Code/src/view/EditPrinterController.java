@@ -105,9 +105,8 @@ public class EditPrinterController implements EditTableController {
     private ArrayList<Toner> tonerUIDtoTonerObj(ArrayList<String> linkedToners) {
     	ArrayList<Toner> tempTonerList = new ArrayList<Toner>();
     	for (String uid : linkedToners) {
-    		for (Toner toner : mainApp.getDatabase().getTonerSet()) {
-    			if (toner.getUid() == uid) tempTonerList.add(toner);
-    		}
+    		Toner toner = mainApp.getDatabase().findTonerByUid(uid);
+    		if (toner != null) tempTonerList.add(toner);
     	}
     	return tempTonerList;
     }
@@ -126,22 +125,33 @@ public class EditPrinterController implements EditTableController {
     @FXML
     private void handleOk() {
         if (isInputValid()) {
-        	printer.setDescription(descriptionField.getText());
-            printer.setCategory(categoryField.getText());
-            printer.setManufacturer(manufacturerField.getText());
-            printer.setLocation(locationField.getText());
-            printer.setBarCode(barCodeField.getText());
-            printer.setDivision(divisionField.getText());
-            printer.setDepartment(departmentField.getText());
-            printer.setSerialNumber(serialNumberField.getText());
-            printer.setStatus(statusField.getText());
-            printer.setCampus(campusField.getText());
-            printer.setPrinterNotes(printerNotes.getText());
         	okClicked = true;
             dialogStage.close();
         }
     }
 
+    /**
+     * Copies what was entered into a printer. Called by the database
+     * while it holds its lock, once ok has been clicked.
+     * 
+     * @param printer
+     */
+    public void applyTo(Printer printer) {
+    	printer.setDescription(descriptionField.getText());
+        printer.setCategory(categoryField.getText());
+        printer.setManufacturer(manufacturerField.getText());
+        printer.setLocation(locationField.getText());
+        printer.setBarCode(barCodeField.getText());
+        printer.setDivision(divisionField.getText());
+        printer.setDepartment(departmentField.getText());
+        printer.setSerialNumber(serialNumberField.getText());
+        printer.setStatus(statusField.getText());
+        printer.setCampus(campusField.getText());
+        printer.setPrinterNotes(printerNotes.getText());
+        //the database links the other side when the printer is saved
+        printer.setLinkedToners(tonerObjtoTonerUID(new ArrayList<Toner>(tonerList)));
+    }
+
     /**
      * Called when the user clicks cancel.
      */
@@ -173,9 +183,8 @@ public class EditPrinterController implements EditTableController {
     		//opens toner selection window and assigns the checked toners to an arraylist
     	   	ArrayList<Toner> selectedToners = new ArrayList<Toner>(mainApp.showTonerSelector());
     	   	//sets the selected toners to the listview on the editprinter window
+    		//the printer itself is only relinked once ok is clicked
     		tonerList.setAll(selectedToners);
-    		//sets the printer being currently edited to the newly selected toners
-    		printer.setLinkedToners(tonerObjtoTonerUID(selectedToners));
     	} catch (java.lang.NullPointerException e) {
     		//cancel button is clicked or window is closed
     	}
@@ -91,9 +91,8 @@ public class EditTonerController implements EditTableController {
     private ArrayList<Printer> printerUIDtoPrinterObj(ArrayList<String> linkedPrinters) {
     	ArrayList<Printer> tempPrinterList = new ArrayList<Printer>();
     	for (String uid : linkedPrinters) {
-    		for (Printer printer : mainApp.getDatabase().getPrinterSet()) {
-    			if (printer.getUid() == uid) tempPrinterList.add(printer);
-    		}
+    		Printer printer = mainApp.getDatabase().findPrinterByUid(uid);
+    		if (printer != null) tempPrinterList.add(printer);
     	}
     	return tempPrinterList;
     }
@@ -112,17 +111,27 @@ public class EditTonerController implements EditTableController {
     @FXML
     private void handleOk() {
         if (isInputValid()) {
-        	toner.setPrinterModel(printerModelField.getText());
-            toner.setBrand(brandField.getText());
-            toner.setModel(modelField.getText());
-            toner.setMinStock(Integer.parseInt(minStockField.getText()));
-            toner.setCurStock(Integer.parseInt(curStockField.getText()));
-            
         	okClicked = true;
             dialogStage.close();
         }
     }
 
+    /**
+     * Copies what was entered into a toner. Called by the database
+     * while it holds its lock, once ok has been clicked.
+     * 
+     * @param toner
+     */
+    public void applyTo(Toner toner) {
+    	toner.setPrinterModel(printerModelField.getText());
+        toner.setBrand(brandField.getText());
+        toner.setModel(modelField.getText());
+        toner.setMinStock(Integer.parseInt(minStockField.getText()));
+        toner.setCurStock(Integer.parseInt(curStockField.getText()));
+        //the database links the other side when the toner is saved
+        toner.setLinkedPrinters(printerObjtoPrinterUID(new ArrayList<Printer>(printerList)));
+    }
+
     /**
      * Called when the user clicks cancel.
      */
@@ -154,9 +163,8 @@ public class EditTonerController implements EditTableController {
     		//opens toner selection window and assigns the checked toners to an arraylist
     	   	ArrayList<Printer> selectedPrinters = new ArrayList<Printer>(mainApp.showPrinterSelector());
     	   	//sets the selected toners to the listview on the editprinter window
+    		//the toner itself is only relinked once ok is clicked
     		printerList.setAll(selectedPrinters);
-    		//sets the printer being currently edited to the newly selected toners
-    		toner.setLinkedPrinters(printerObjtoPrinterUID(selectedPrinters));
     	} catch (java.lang.NullPointerException e) {
     		//cancel button is clicked or window is closed
     	}
@@ -0,0 +1,226 @@
+package view;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.WeakListChangeListener;
+import main.RecordList;
+import metrics.FilterApplyEvent;
+import metrics.FilterSearchEvent;
+import metrics.Metrics;
+
+/**
+ * Runs the overview table filters off the JavaFX thread.
+ * Filter text is debounced so a burst of keystrokes only searches once.
+ * A newer filter cancels the search that is waiting or running for an older
+ * one, and only the result of the latest filter is shown.
+ *
+ * The rows to show are listed on the worker thread too, and the JavaFX
+ * thread puts them in the table's list with one setAll(), without looking
+ * at the rows that did not match. Rows added to, changed in or removed from
+ * the source list while a filter is shown are checked on their own as they
+ * come, so a new row that matches shows up at once.
+ *
+ * @param <T> printer or toner
+ */
+public class FilterPipeline<T> {
+
+	/**
+	 * How long typing has to pause before the search runs
+	 */
+	private static final long DEBOUNCE_MILLIS = 150;
+	/**
+	 * Changes touching more rows than this are applied with one setAll(),
+	 * and searched for again instead of checking each row on the JavaFX thread
+	 */
+	private static final int MAX_ROWS_CHECKED = 1000;
+
+	/**
+	 * One worker shared by every table, searches never need to overlap
+	 */
+	private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "table-filter");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final ObservableList<T> source;
+	private final Function<String, Set<T>> search;
+	private final BiPredicate<T, String> matcher;
+	/**
+	 * Rows shown for the current filter, the list the table wraps
+	 */
+	private final RecordList<T> shown = new RecordList<>();
+	/**
+	 * How many times each row is in the source. A row can be there twice for
+	 * a moment, while RecordList moves the last row into a gap.
+	 */
+	private final HashMap<T, Integer> copies = new HashMap<>();
+	/**
+	 * Kept here because the source only holds it weakly
+	 */
+	private final ListChangeListener<T> sourceListener = this::sourceChanged;
+
+	/**
+	 * Rows matching shownFilter, null while every row is shown.
+	 * Only touched on the JavaFX thread, like the fields below.
+	 */
+	private Set<T> matches;
+	/**
+	 * Filter the shown rows were picked with
+	 */
+	private String shownFilter = "";
+	/**
+	 * Latest filter text submitted
+	 */
+	private String submitted = "";
+	/**
+	 * Search waiting for the debounce delay or running
+	 */
+	private ScheduledFuture<?> pending;
+	/**
+	 * Counts submitted filters so late results from older ones are dropped
+	 */
+	private long generation;
+
+	/**
+	 * @param source every row, on the JavaFX thread
+	 * @param search finds the records matching a non empty filter, called on the worker thread
+	 * @param matcher tells whether one row matches a filter, the same way search does
+	 */
+	public FilterPipeline(ObservableList<T> source, Function<String, Set<T>> search, BiPredicate<T, String> matcher) {
+		this.source = source;
+		this.search = search;
+		this.matcher = matcher;
+		for (T row : source) {
+			count(row, 1);
+		}
+		shown.setAll(source);
+		source.addListener(new WeakListChangeListener<>(sourceListener));
+	}
+
+	/**
+	 * @return the rows matching the filter, to wrap in the table's SortedList
+	 */
+	public ObservableList<T> getFiltered() {
+		return shown.getList();
+	}
+
+	/**
+	 * Schedules a search for the filter text. Must be called on the JavaFX thread.
+	 * @param filter
+	 */
+	public void submit(String filter) {
+		long current = ++generation;
+		submitted = filter == null ? "" : filter;
+		if (pending != null) {
+			pending.cancel(true);
+			pending = null;
+		}
+		// If filter text is empty, display everything right away.
+		if (submitted.isEmpty()) {
+			if (matches != null) {
+				matches = null;
+				shownFilter = "";
+				shown.setAll(source);
+			}
+			return;
+		}
+		String text = submitted;
+		pending = executor.schedule(() -> {
+			long searchStart = Metrics.start();
+			FilterSearchEvent searchEvent = new FilterSearchEvent();
+			searchEvent.begin();
+			HashSet<T> found = new HashSet<>(search.apply(text));
+			ArrayList<T> rows = new ArrayList<>(found);
+			searchEvent.filter = text;
+			searchEvent.matches = found.size();
+			boolean cancelled = Thread.currentThread().isInterrupted();
+			searchEvent.cancelled = cancelled;
+			searchEvent.commit();
+			if (cancelled) return;
+			Metrics.FILTER_SEARCH.recordSince(searchStart);
+			Platform.runLater(() -> {
+				if (current == generation) {
+					pending = null;
+					long start = Metrics.start();
+					FilterApplyEvent event = new FilterApplyEvent();
+					event.begin();
+					matches = found;
+					shownFilter = text;
+					shown.setAll(rows);
+					Metrics.FILTER_APPLY.recordSince(start);
+					event.rows = source.size();
+					event.matches = rows.size();
+					event.commit();
+				}
+			});
+		}, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Brings the shown rows in step with a change to the source. A row that
+	 * left the source is taken out, every other row the change touched is
+	 * shown if it matches the filter and taken out if not.
+	 */
+	private void sourceChanged(ListChangeListener.Change<? extends T> change) {
+		HashSet<T> touched = new HashSet<>();
+		while (change.next()) {
+			if (change.wasPermutated()) continue;
+			for (T row : change.getRemoved()) {
+				count(row, -1);
+				touched.add(row);
+			}
+			for (T row : change.getAddedSubList()) {
+				count(row, 1);
+				touched.add(row);
+			}
+		}
+		if (pending != null) {
+			// the search running now may have read the records from before this change
+			submit(submitted);
+		}
+		if (touched.size() > MAX_ROWS_CHECKED) {
+			if (matches == null) {
+				shown.setAll(source);
+			} else {
+				matches.retainAll(copies.keySet());
+				shown.setAll(matches);
+				if (pending == null) submit(submitted);
+			}
+			return;
+		}
+		for (T row : touched) {
+			if (!copies.containsKey(row)) {
+				shown.remove(row);
+				if (matches != null) matches.remove(row);
+			} else if (matches == null || matcher.test(row, shownFilter)) {
+				if (matches != null) matches.add(row);
+				shown.add(row);
+			} else {
+				matches.remove(row);
+				shown.remove(row);
+			}
+		}
+	}
+
+	/**
+	 * Keeps copies up to date
+	 * @param row
+	 * @param change 1 for a row added to the source, -1 for one removed
+	 */
+	private void count(T row, int change) {
+		copies.merge(row, change, (before, delta) -> before + delta == 0 ? null : before + delta);
+	}
+}
@@ -0,0 +1,122 @@
+package view;
+
+import java.util.List;
+
+import interfaces.InventoryObject;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TextArea;
+import javafx.stage.Stage;
+import model.ImportError;
+import model.ImportJob;
+import model.ImportReport;
+
+/**
+ * Shows an import running in the background. Cancel, or closing the
+ * window, stops the import and rolls back what it already merged. Once the
+ * import is done the dialog shows what changed and lists every rejected
+ * row with its line number and reason.
+ */
+public class ImportDialogController {
+
+	/**
+	 * Most rejected rows listed, a file of nothing but bad rows would
+	 * otherwise fill the text area with millions of lines
+	 */
+	private static final int MAX_LISTED_ERRORS = 10000;
+
+	@FXML
+	private ProgressBar progressBar;
+	@FXML
+	private Label statusLabel;
+	@FXML
+	private TextArea errorArea;
+	@FXML
+	private Button cancelButton;
+	@FXML
+	private Button closeButton;
+
+	private Stage dialogStage;
+	private ImportTask<?> task;
+
+	/**
+	 * Sets the stage of this dialog.
+	 * 
+	 * @param dialogStage
+	 */
+	public void setDialogStage(Stage dialogStage) {
+		this.dialogStage = dialogStage;
+		dialogStage.setOnCloseRequest(event -> {
+			if (task != null && task.isRunning()) task.cancel();
+		});
+	}
+
+	/**
+	 * Starts the import on its own thread
+	 * @param job
+	 */
+	public void start(ImportJob<?> job) {
+		startTask(job);
+	}
+
+	private <T extends InventoryObject> void startTask(ImportJob<T> job) {
+		ImportTask<T> task = new ImportTask<>(job);
+		this.task = task;
+		progressBar.progressProperty().bind(task.progressProperty());
+		statusLabel.textProperty().bind(task.messageProperty());
+
+		task.setOnSucceeded(event -> finished(job.getReport(), "Imported: " + job.getReport()));
+		task.setOnCancelled(event -> {
+			job.rollback();
+			finished(job.getReport(), "Import cancelled, nothing was changed");
+		});
+		task.setOnFailed(event -> {
+			job.rollback();
+			Throwable e = task.getException();
+			e.printStackTrace();
+			finished(job.getReport(), "Import failed, nothing was changed: " + e.getMessage());
+		});
+
+		Thread thread = new Thread(task, "csv-import");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void finished(ImportReport<?> report, String status) {
+		progressBar.progressProperty().unbind();
+		progressBar.setProgress(1);
+		statusLabel.textProperty().unbind();
+		statusLabel.setText(status);
+
+		List<ImportError> errors = report.getErrors();
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < errors.size() && i < MAX_LISTED_ERRORS; i++) {
+			text.append(errors.get(i)).append('\n');
+		}
+		if (errors.size() > MAX_LISTED_ERRORS) {
+			text.append("... and ").append(errors.size() - MAX_LISTED_ERRORS).append(" more\n");
+		}
+		errorArea.setText(text.toString());
+
+		cancelButton.setDisable(true);
+		closeButton.setDisable(false);
+	}
+
+	/**
+	 * Called when the user clicks cancel.
+	 */
+	@FXML
+	private void handleCancel() {
+		task.cancel();
+	}
+
+	/**
+	 * Called when the user clicks close.
+	 */
+	@FXML
+	private void handleClose() {
+		dialogStage.close();
+	}
+}
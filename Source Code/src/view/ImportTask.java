@@ -0,0 +1,64 @@
+package view;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import interfaces.InventoryObject;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import model.ImportJob;
+import model.ImportReport;
+
+/**
+ * Runs an import off the JavaFX thread. The file is parsed on the task's
+ * thread and each batch is merged on the JavaFX thread as soon as it is
+ * ready. The task waits for every merge before reading on, so batches never
+ * pile up faster than the tables can take them. Progress is the share of
+ * the file's bytes read so far.
+ *
+ * @param <T> printer or toner
+ */
+public class ImportTask<T extends InventoryObject> extends Task<ImportReport<T>> {
+
+	private final ImportJob<T> job;
+
+	public ImportTask(ImportJob<T> job) {
+		this.job = job;
+	}
+
+	@Override
+	protected ImportReport<T> call() throws Exception {
+		long total = Math.max(1, job.getFile().length());
+		long[] bytes = {0};
+		int[] rows = {0};
+		updateProgress(0, total);
+		updateMessage("Reading " + job.getFile().getName());
+		job.read(batch -> {
+			runAndWait(() -> {
+				// a cancel on the JavaFX thread may come after this was queued
+				if (!isCancelled()) job.merge(batch);
+			});
+			bytes[0] += batch.getBytes();
+			rows[0] += batch.size();
+			updateProgress(Math.min(bytes[0], total), total);
+			updateMessage("Read " + rows[0] + " rows");
+		}, this::isCancelled);
+		return job.getReport();
+	}
+
+	/**
+	 * Runs a merge on the JavaFX thread and waits for it to finish
+	 */
+	private void runAndWait(Runnable merge) {
+		FutureTask<Void> future = new FutureTask<>(merge, null);
+		Platform.runLater(future);
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			// cancelled while waiting, read() stops at the next record
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Could not merge imported records", e.getCause());
+		}
+	}
+}
@@ -1,7 +1,6 @@
 package view;
 
 
-import javafx.collections.transformation.FilteredList;
 import javafx.collections.transformation.SortedList;
 import javafx.fxml.FXML;
 import javafx.scene.control.TableColumn;
@@ -41,6 +40,9 @@ public class PrinterOverviewController {
     
     // Reference to the main application.
     private MainApp mainApp;
+    
+    // Keeps the table in step with edits. Held here because the list only keeps a weak reference.
+    private FilterPipeline<Printer> filterPipeline;
 
     /**
      * The constructor.
@@ -88,52 +90,22 @@ public class PrinterOverviewController {
      * Method is Initilized in setmain()
      * Code reference 
      * https://code.makery.ch/blog/javafx-8-tableview-sorting-filtering/
-     * Makes a Filtered List with printerData
+     * Makes a FilterPipeline over printerData
      * Then adds the JAVAFX listener and if it sees changes
      * It filters the list
      */
     @FXML	
     private void filterPrinterTable() {
-    	FilteredList<Printer> filteredData = new FilteredList<>(mainApp.getPrinterList(), p -> true);
-         
-         // 2. Set the filter Predicate whenever the filter changes.
-         filterField.textProperty().addListener((observable, oldValue, newValue) -> {
-             filteredData.setPredicate(printer -> {
-                 // If filter text is empty, display all persons.
-                 if (newValue == null || newValue.isEmpty()) {
-                     return true;
-                 }
-                 
-                 // Compare first name and last name of every printer with filter text.
-                 String lowerCaseFilter = newValue.toLowerCase();
-                 
-                 if (printer.getCampus().toLowerCase().indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches Campus
-                 } else if (printer.getCategory().toLowerCase().indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches Category
-                 } else if (printer.getManufacturer().toLowerCase().indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches Manufacturer
-                 } else if (printer.getLocation().toLowerCase().indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches Location
-                 } else if (printer.getBarCode().toLowerCase().indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches Barcode
-                 } else if (printer.getDescription().toLowerCase().indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches description
-                 } else if (printer.getSerialNumber().toLowerCase().indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches Serial Number
-                 }  else if (printer.getDivision().toLowerCase().indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches Division
-                 } else if (printer.getDepartment().toLowerCase().indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches department
-                 } else if (printer.getStatus().toLowerCase().indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches status
-                 }
-                 return false; // Does not match.
-             });
-         });
+    	// 1. The pipeline starts with every printer shown.
+         // 2. Show the matches whenever the filter changes.
+         // The database's search index finds the matching printers on a background
+         // thread, and the table's list is replaced with them in one step.
+         filterPipeline = new FilterPipeline<>(mainApp.getPrinterList(), mainApp.getDatabase()::searchPrinters,
+         		mainApp.getDatabase()::printerMatches);
+         filterField.textProperty().addListener((observable, oldValue, newValue) -> filterPipeline.submit(newValue));
          
-         // 3. Wrap the FilteredList in a SortedList. 
-         SortedList<Printer> sortedData = new SortedList<>(filteredData);
+         // 3. Wrap the filtered list in a SortedList. 
+         SortedList<Printer> sortedData = new SortedList<>(filterPipeline.getFiltered());
          
          // 4. Bind the SortedList comparator to the TableView comparator.
          sortedData.comparatorProperty().bind(printerTable.comparatorProperty());
@@ -2,6 +2,7 @@ package view;
 
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Optional;
 
 import javafx.fxml.FXML;
@@ -9,8 +10,10 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ButtonBar.ButtonData;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckMenuItem;
 import javafx.stage.FileChooser;
 import main.MainApp;
+import model.BinarySnapshot;
 import model.Printer;
 import model.Toner;
 
@@ -24,6 +27,9 @@ public class RootLayoutController {
     // Reference to the main application
     private MainApp mainApp;
 
+    @FXML
+    private CheckMenuItem autosaveItem;
+
     
     /**
      * Is called by the main application to give a reference back to itself.
@@ -46,10 +52,36 @@ public class RootLayoutController {
     
     /**
      * Opens a FileChooser to let the user select a CSV file to load.
+     * Every row is added as a new record.
      */
     @FXML
     private void handleImport() {
-    		
+    	importCsv(false);
+    }
+
+    /**
+     * Opens a FileChooser to let the user select a CSV file to load.
+     * Rows that match an existing record update it instead of adding a copy.
+     */
+    @FXML
+    private void handleImportUpdate() {
+    	importCsv(true);
+    }
+
+    /**
+     * Opens scan mode, where a barcode scanner issues and receives toners
+     */
+    @FXML
+    private void handleScan() {
+    	mainApp.showScanDialog();
+    }
+
+    /**
+     * Imports a CSV file into the current view's table in the background,
+     * in a dialog that shows the progress and then what changed
+     * @param upsert true to update records that are already in the database
+     */
+    private void importCsv(boolean upsert) {
     	FileChooser fileChooser = new FileChooser();
     	FileChooser.ExtensionFilter extFilter = new FileChooser.ExtensionFilter(
                  "CSV files (*.csv)", "*.csv");
@@ -57,17 +89,15 @@ public class RootLayoutController {
          File file = fileChooser.showOpenDialog(mainApp.getPrimaryStage());
          if (file != null) {
             if (mainApp.getCurrPane().equals("/view/PrinterOverview.fxml")) {
-            	 mainApp.getDatabase().importPrinterData(file);
-            	 mainApp.updatePrinterList();
+            	mainApp.showImportDialog(mainApp.getDatabase().printerImport(file, upsert));
             } else if (mainApp.getCurrPane().equals("/view/TonerOverview.fxml")) {
-            	mainApp.getDatabase().importTonerData(file);
-            	mainApp.updateTonerList();
+            	mainApp.showImportDialog(mainApp.getDatabase().tonerImport(file, upsert));
             }
          }
     }
     
     /**
-     * Opens a FileChooser to let the user select a JAXB file to load.
+     * Opens a FileChooser to let the user select an XML or binary snapshot file to load.
      */
     @FXML
     private void handleOpen() {
@@ -75,7 +105,7 @@ public class RootLayoutController {
     	//Check if there is already printer data loaded 
     	//Calls overWriteAlert with the message to display which makes a pop up window
     	//If user hits cancel, RETURNS and abots the open
-    	if (!mainApp.getDatabase().getPrinterSet().isEmpty() && !isContinueAlert("Importing new Database will overwrite Progress")) {
+    	if (mainApp.getDatabase().getPrinterCount() != 0 && !isContinueAlert("Importing new Database will overwrite Progress")) {
     		return;
     	}
     	
@@ -83,27 +113,34 @@ public class RootLayoutController {
 
         // Set extension filter
         FileChooser.ExtensionFilter extFilter = new FileChooser.ExtensionFilter(
-                "XML files (*.xml)", "*.xml");
+                "Database files (*.xml, *.ptdb)", "*.xml", "*" + BinarySnapshot.EXTENSION);
         fileChooser.getExtensionFilters().add(extFilter);
 
         // Show open file dialog
         File file = fileChooser.showOpenDialog(mainApp.getPrimaryStage());
 
         if (file != null) {
-            mainApp.getDatabase().loadPrinterDataFromFile(file);
-            mainApp.updatePrinterList();
-            mainApp.updateTonerList();
+            try {
+                mainApp.getDatabase().loadPrinterDataFromFile(file);
+            } catch (IOException e) {
+                mainApp.showError("Could not load data", "Could not load data from file:\n" + file.getPath(), e);
+            }
         }
     }
 
     /**
-     * Saves the file to the printer file that is currently open. If there is no
+     * Saves the changes to the printer file that is currently open. If there is no
      * open file, the "save as" dialog is shown.
      */
     @FXML
     private void handleSave() {
         if (mainApp.getDatabase().getSaveFile() != null) {
-        	mainApp.getDatabase().savePrinterDataToFile(mainApp.getDatabase().getSaveFile());
+        	try {
+        		mainApp.getDatabase().save();
+        	} catch (IOException e) {
+        		mainApp.showError("Could not save data",
+        				"Could not save data to file:\n" + mainApp.getDatabase().getSaveFile().getPath(), e);
+        	}
         } else {
             handleSaveAs();
         }
@@ -116,23 +153,41 @@ public class RootLayoutController {
     private void handleSaveAs() {
         FileChooser fileChooser = new FileChooser();
 
-        // Set extension filter
+        // Set extension filters
         FileChooser.ExtensionFilter extFilter = new FileChooser.ExtensionFilter(
                 "XML files (*.xml)", "*.xml");
-        fileChooser.getExtensionFilters().add(extFilter);
+        FileChooser.ExtensionFilter snapshotFilter = new FileChooser.ExtensionFilter(
+                "Binary snapshot files (*.ptdb)", "*" + BinarySnapshot.EXTENSION);
+        fileChooser.getExtensionFilters().addAll(extFilter, snapshotFilter);
 
         // Show save file dialog
         File file = fileChooser.showSaveDialog(mainApp.getPrimaryStage());
 
         if (file != null) {
             // Make sure it has the correct extension
-            if (!file.getPath().endsWith(".xml")) {
+            if (fileChooser.getSelectedExtensionFilter() == snapshotFilter) {
+                if (!file.getPath().endsWith(BinarySnapshot.EXTENSION)) {
+                    file = new File(file.getPath() + BinarySnapshot.EXTENSION);
+                }
+            } else if (!file.getPath().endsWith(".xml")) {
                 file = new File(file.getPath() + ".xml");
             }
-            mainApp.getDatabase().savePrinterDataToFile(file);
+            try {
+                mainApp.getDatabase().savePrinterDataToFile(file);
+            } catch (IOException e) {
+                mainApp.showError("Could not save data", "Could not save data to file:\n" + file.getPath(), e);
+            }
         }
     }
 
+    /**
+     * Turns autosave on or off for the open database.
+     */
+    @FXML
+    private void handleAutosave() {
+        mainApp.getDatabase().setAutosave(autosaveItem.isSelected());
+    }
+
     @FXML
     private void handleAdd() {
     	if (mainApp.getCurrPane().equals("/view/PrinterOverview.fxml")) {
@@ -149,6 +204,7 @@ public class RootLayoutController {
      */
     @FXML
     private void handleExit() {
+        mainApp.getDatabase().close();
         System.exit(0);
     }
     
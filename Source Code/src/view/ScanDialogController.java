@@ -0,0 +1,157 @@
+package view;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+
+import javafx.fxml.FXML;
+import javafx.scene.control.ChoiceDialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.RadioButton;
+import javafx.scene.control.TextField;
+import javafx.scene.control.ToggleGroup;
+import javafx.stage.Stage;
+import model.Database;
+import model.Toner;
+
+/**
+ * Stockroom scan mode. A barcode scanner types a toner's model and Enter
+ * into the code field, and each scan issues or receives that toner right
+ * away. A code several toners share asks which one it was. Every scan is
+ * applied in constant time and the ledger writes them out in batches, so
+ * the field is ready for the next one at once even in a burst. The latest scans are listed with the stock they left.
+ */
+public class ScanDialogController {
+
+	/**
+	 * Most scans listed, older ones drop off the bottom
+	 */
+	private static final int MAX_LISTED_SCANS = 200;
+
+	@FXML
+	private RadioButton issueButton;
+	@FXML
+	private RadioButton receiveButton;
+	@FXML
+	private TextField quantityField;
+	@FXML
+	private TextField codeField;
+	@FXML
+	private Label statusLabel;
+	@FXML
+	private ListView<String> scanList;
+
+	private Stage dialogStage;
+	private Database database;
+	private int scans;
+
+	/**
+	 * Initializes the controller class. This method is automatically called
+	 * after the fxml file has been loaded.
+	 */
+	@FXML
+	private void initialize() {
+		ToggleGroup mode = new ToggleGroup();
+		issueButton.setToggleGroup(mode);
+		receiveButton.setToggleGroup(mode);
+		issueButton.setSelected(true);
+	}
+
+	/**
+	 * Sets the stage of this dialog.
+	 * 
+	 * @param dialogStage
+	 */
+	public void setDialogStage(Stage dialogStage) {
+		this.dialogStage = dialogStage;
+		dialogStage.setOnShown(event -> codeField.requestFocus());
+	}
+
+	public void setDatabase(Database database) {
+		this.database = database;
+	}
+
+	/**
+	 * Called when a scan ends with Enter
+	 */
+	@FXML
+	private void handleScan() {
+		String code = codeField.getText();
+		codeField.clear();
+		if (code.trim().isEmpty()) return;
+		Toner toner = pickToner(code);
+		if (toner == null) return;
+		int quantity;
+		try {
+			quantity = Integer.parseInt(quantityField.getText().trim());
+		} catch (NumberFormatException e) {
+			statusLabel.setText("Quantity is not a whole number");
+			return;
+		}
+		boolean issue = issueButton.isSelected();
+		try {
+			int stock = issue ? database.issue(toner, quantity) : database.receive(toner, quantity);
+			scans++;
+			statusLabel.setText(scans + (scans == 1 ? " scan" : " scans"));
+			scanList.getItems().add(0, (issue ? "Issued " : "Received ") + quantity + " " + toner.getBrand()
+					+ " " + toner.getModel() + ", " + stock + " left");
+			if (scanList.getItems().size() > MAX_LISTED_SCANS) {
+				scanList.getItems().remove(MAX_LISTED_SCANS);
+			}
+		} catch (IllegalArgumentException | ArithmeticException e) {
+			statusLabel.setText(toner.getModel() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Looks up the toner a code stands for. If several toners share the
+	 * code the user is asked which one was scanned, rather than the stock
+	 * of whichever was found first being changed.
+	 * @param code
+	 * @return the toner, or null if the code is unknown or the user cancelled
+	 */
+	private Toner pickToner(String code) {
+		List<Toner> matches = database.findTonersByCode(code);
+		if (matches.isEmpty()) {
+			statusLabel.setText("Unknown code: " + code);
+			return null;
+		}
+		if (matches.size() == 1) return matches.get(0);
+		LinkedHashMap<String, Toner> choices = new LinkedHashMap<>();
+		for (Toner toner : matches) {
+			String label = toner.getPrinterModel() + " - " + toner.getBrand() + " " + toner.getModel()
+					+ ", " + toner.getCurStock() + " in stock";
+			if (choices.containsKey(label)) label += " (" + toner.getUid() + ")";
+			choices.put(label, toner);
+		}
+		ChoiceDialog<String> dialog = new ChoiceDialog<>(null, choices.keySet());
+		dialog.initOwner(dialogStage);
+		dialog.setTitle("Which toner?");
+		dialog.setHeaderText(matches.size() + " toners have the code " + code.trim());
+		dialog.setContentText("Scanned toner:");
+		Optional<String> choice = dialog.showAndWait();
+		codeField.requestFocus();
+		if (!choice.isPresent()) {
+			statusLabel.setText("Scan of " + code.trim() + " skipped, no toner was picked");
+			return null;
+		}
+		return choices.get(choice.get());
+	}
+
+	/**
+	 * Called when issue or receive is picked, hands the focus back to the scanner
+	 */
+	@FXML
+	private void handleMode() {
+		codeField.requestFocus();
+	}
+
+	/**
+	 * Called when the user clicks close.
+	 */
+	@FXML
+	private void handleClose() {
+		dialogStage.close();
+	}
+}
@@ -1,6 +1,5 @@
 package view;
 
-import javafx.collections.transformation.FilteredList;
 import javafx.collections.transformation.SortedList;
 import javafx.fxml.FXML;
 import javafx.scene.control.TableColumn;
@@ -35,6 +34,9 @@ public class TonerOverviewController {
     
     // Reference to the main application.
     private MainApp mainApp;
+    
+    // Keeps the table in step with edits. Held here because the list only keeps a weak reference.
+    private FilterPipeline<Toner> filterPipeline;
 
     /**
      * The constructor.
@@ -77,48 +79,22 @@ public class TonerOverviewController {
      * Method is Initilized in setmain()
      * Code reference 
      * https://code.makery.ch/blog/javafx-8-tableview-sorting-filtering/
-     * Makes a Filtered List with printerData
+     * Makes a FilterPipeline over tonerData
      * Then adds the JAVAFX listener and if it sees changes
      * It filters the list
      */
     @FXML	
     private void filterTonerTable() {
-    	FilteredList<Toner> filteredData = new FilteredList<>(mainApp.getTonerList(), p -> true);
-         
-         // 2. Set the filter Predicate whenever the filter changes.
-         filterField.textProperty().addListener((observable, oldValue, newValue) -> {
-             filteredData.setPredicate(toner -> {
-                 // If filter text is empty, display all persons.
-                 if (newValue == null || newValue.isEmpty()) {
-                     return true;
-                 }
-                 
-                 // Compare first name and last name of every printer with filter text.
-                 String lowerCaseFilter = newValue.toLowerCase();
-                 
-                 if (toner.getBrand().toLowerCase().indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches Campus
-                 } else if (Integer.toString(toner.getCurStock()).indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches Category
-                 } else if (Integer.toString(toner.getMinStock()).indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches Manufacturer
-                 } else if (toner.getModel().indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches Location
-                 } else if (Integer.toString(toner.getNeeded()).indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches Barcode
-                 } else if (Boolean.toString(toner.getOrder()).indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches description
-                 } else if (toner.getPrinterModel().toLowerCase().indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches Serial Number
-                 }  else if (toner.getPrinters().toLowerCase().indexOf(lowerCaseFilter) != -1) {
-                     return true; // Filter matches Division
-                 }
-                 return false; // Does not match.
-             });
-         });
+    	// 1. The pipeline starts with every toner shown.
+         // 2. Show the matches whenever the filter changes.
+         // The database's search index finds the matching toners on a background
+         // thread, and the table's list is replaced with them in one step.
+         filterPipeline = new FilterPipeline<>(mainApp.getTonerList(), mainApp.getDatabase()::searchToners,
+         		mainApp.getDatabase()::tonerMatches);
+         filterField.textProperty().addListener((observable, oldValue, newValue) -> filterPipeline.submit(newValue));
          
-         // 3. Wrap the FilteredList in a SortedList. 
-         SortedList<Toner> sortedData = new SortedList<>(filteredData);
+         // 3. Wrap the filtered list in a SortedList. 
+         SortedList<Toner> sortedData = new SortedList<>(filterPipeline.getFiltered());
          
          // 4. Bind the SortedList comparator to the TableView comparator.
          sortedData.comparatorProperty().bind(tonerTable.comparatorProperty());
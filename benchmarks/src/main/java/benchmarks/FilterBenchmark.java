@@ -0,0 +1,73 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.Database;
+import model.Printer;
+import model.Toner;
+
+/**
+ * One pass of an overview table's filter, as view.FilterPipeline runs it
+ * on its worker thread: the search for the filter text, then the set and
+ * list of matches the table's rows are replaced with.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	public int size;
+
+	/**
+	 * The manufacturer of most printers, a campus, a department and the
+	 * colour printers and toners
+	 */
+	@Param({"dell", "stanton", "nursing", "color"})
+	public String filter;
+
+	private Database database;
+
+	@Setup(Level.Trial)
+	public void buildDatabase() {
+		database = Inventory.database(size);
+	}
+
+	@TearDown(Level.Trial)
+	public void closeDatabase() {
+		database.close();
+	}
+
+	@Benchmark
+	public int filterPrinters() {
+		HashSet<Printer> matches = new HashSet<>(database.searchPrinters(filter));
+		ArrayList<Printer> shown = new ArrayList<>(matches);
+		return shown.size();
+	}
+
+	@Benchmark
+	public int filterToners() {
+		HashSet<Toner> matches = new HashSet<>(database.searchToners(filter));
+		ArrayList<Toner> shown = new ArrayList<>(matches);
+		return shown.size();
+	}
+}
@@ -0,0 +1,96 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.Database;
+import model.ImportReport;
+import model.Printer;
+import model.Toner;
+
+/**
+ * CSV import of printers and toners into an empty database, and the same
+ * files imported again as an upsert. Every printer row then matches its
+ * printer unchanged. Campuses stock the same toner models, so toner rows
+ * match by brand and model and some of them update.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportBenchmark {
+
+	/**
+	 * Printers, the toner file has the toners that go with them
+	 */
+	@Param({"1000", "10000", "100000"})
+	public int size;
+
+	private File printers;
+	private File toners;
+	private Database database;
+	private Database loaded;
+
+	@Setup(Level.Trial)
+	public void writeFiles() throws IOException {
+		printers = Inventory.printerCsv(size);
+		toners = Inventory.tonerCsv(size);
+		loaded = new Database();
+		loaded.importPrinterData(printers);
+		loaded.importTonerData(toners);
+	}
+
+	@Setup(Level.Invocation)
+	public void emptyDatabase() {
+		database = new Database();
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeDatabase() {
+		database.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFiles() {
+		loaded.close();
+		printers.delete();
+		toners.delete();
+	}
+
+	@Benchmark
+	public ImportReport<Printer> importPrinters() throws IOException {
+		return database.importPrinterData(printers);
+	}
+
+	@Benchmark
+	public ImportReport<Toner> importToners() throws IOException {
+		return database.importTonerData(toners);
+	}
+
+	@Benchmark
+	public ImportReport<Printer> upsertPrinters() throws IOException {
+		return loaded.importPrinterData(printers, true);
+	}
+
+	@Benchmark
+	public ImportReport<Toner> upsertToners() throws IOException {
+		return loaded.importTonerData(toners, true);
+	}
+}
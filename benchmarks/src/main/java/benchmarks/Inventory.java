@@ -0,0 +1,62 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import model.Database;
+import model.InventoryGenerator;
+import model.Printer;
+import model.Toner;
+
+/**
+ * The same made up inventory for every run, from InventoryGenerator with a
+ * fixed seed, so runs stay comparable
+ *
+ */
+final class Inventory {
+
+	private static final long SEED = 42;
+
+	private Inventory() {
+	}
+
+	static InventoryGenerator generator(int printers) {
+		return new InventoryGenerator(printers, SEED);
+	}
+
+	/**
+	 * Writes a printer CSV with a header, in the column order the import reads
+	 */
+	static File printerCsv(int printers) throws IOException {
+		File file = File.createTempFile("printers-" + printers + "-", ".csv");
+		file.deleteOnExit();
+		generator(printers).writePrinterCsv(file);
+		return file;
+	}
+
+	/**
+	 * Writes the CSV of the toners that go with that many printers
+	 */
+	static File tonerCsv(int printers) throws IOException {
+		File file = File.createTempFile("toners-" + printers + "-", ".csv");
+		file.deleteOnExit();
+		generator(printers).writeTonerCsv(file);
+		return file;
+	}
+
+	/**
+	 * Builds a database straight from the records, links included. Toners
+	 * go in last so each one links all its printers in one step.
+	 */
+	static Database database(int printers) {
+		InventoryGenerator generator = generator(printers);
+		Database database = new Database();
+		for (Printer printer : generator.printers()) {
+			database.addPrinter(printer);
+		}
+		for (Toner toner : generator.toners()) {
+			database.addToner(toner);
+		}
+		return database;
+	}
+}
@@ -0,0 +1,98 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import model.Database;
+import model.Printer;
+import model.Toner;
+
+/**
+ * Turning linked UIDs back into records the way the edit dialogs do when
+ * they open, for every record in the database, and saving a printer's
+ * links back as the printer dialog does when OK is pressed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	public int size;
+
+	private Database database;
+	private ArrayList<Printer> printers;
+	private ArrayList<Toner> toners;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void buildDatabase() {
+		database = Inventory.database(size);
+		printers = new ArrayList<>(database.getPrinters());
+		toners = new ArrayList<>(database.getToners());
+	}
+
+	@TearDown(Level.Trial)
+	public void closeDatabase() {
+		database.close();
+	}
+
+	/**
+	 * What EditPrinterController does with each printer's linked toners
+	 */
+	@Benchmark
+	public void resolvePrinterLinks(Blackhole blackhole) {
+		for (Printer printer : printers) {
+			for (String uid : printer.getLinkedToners()) {
+				Toner toner = database.findTonerByUid(uid);
+				if (toner != null) blackhole.consume(toner);
+			}
+		}
+	}
+
+	/**
+	 * What EditTonerController does with each toner's linked printers
+	 */
+	@Benchmark
+	public void resolveTonerLinks(Blackhole blackhole) {
+		for (Toner toner : toners) {
+			for (String uid : toner.getLinkedPrinters()) {
+				Printer printer = database.findPrinterByUid(uid);
+				if (printer != null) blackhole.consume(printer);
+			}
+		}
+	}
+
+	/**
+	 * One printer's toners set again, which updates both sides of the links
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void relinkPrinter() {
+		Printer printer = printers.get(next);
+		next = (next + 1) % printers.size();
+		ArrayList<Toner> linked = new ArrayList<>();
+		for (String uid : printer.getLinkedToners()) {
+			linked.add(database.findTonerByUid(uid));
+		}
+		database.setLinkedToners(printer, linked);
+	}
+}
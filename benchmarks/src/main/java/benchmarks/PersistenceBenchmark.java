@@ -0,0 +1,97 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.Database;
+
+/**
+ * Saving the whole database to a new file and loading it into an empty
+ * one, as XML and as a binary snapshot. A save counts until the background
+ * write is on the disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	public int size;
+
+	@Param({"xml", "ptdb"})
+	public String format;
+
+	private File folder;
+	private Database database;
+	private File saved;
+	/**
+	 * Saves alternate between two files, saving to the current file again
+	 * would only fold in its empty journal
+	 */
+	private File[] targets;
+	private int next;
+	private Database loading;
+
+	@Setup(Level.Trial)
+	public void buildDatabase() throws IOException {
+		folder = Files.createTempDirectory("persistence").toFile();
+		database = Inventory.database(size);
+		saved = new File(folder, "saved." + format);
+		database.writeToFile(saved);
+		targets = new File[] {new File(folder, "a." + format), new File(folder, "b." + format)};
+	}
+
+	@Setup(Level.Invocation)
+	public void emptyDatabase() {
+		loading = new Database();
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeDatabase() {
+		loading.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFiles() {
+		database.close();
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		folder.delete();
+	}
+
+	@Benchmark
+	public void save() throws IOException {
+		database.savePrinterDataToFile(targets[next]);
+		next = 1 - next;
+		database.awaitSaves();
+	}
+
+	@Benchmark
+	public int load() throws IOException {
+		loading.loadPrinterDataFromFile(saved);
+		return loading.getPrinterCount();
+	}
+}
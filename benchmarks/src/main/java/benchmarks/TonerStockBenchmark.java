@@ -0,0 +1,55 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.Database;
+
+/**
+ * Database.updateTonerStock(), the pass over every toner that checks its
+ * order flag and needed count
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TonerStockBenchmark {
+
+	/**
+	 * Printers, the database has a tenth as many toners
+	 */
+	@Param({"1000", "10000", "100000"})
+	public int size;
+
+	private Database database;
+
+	@Setup(Level.Trial)
+	public void buildDatabase() {
+		database = Inventory.database(size);
+	}
+
+	@TearDown(Level.Trial)
+	public void closeDatabase() {
+		database.close();
+	}
+
+	@Benchmark
+	public void updateTonerStock() {
+		database.updateTonerStock();
+	}
+}
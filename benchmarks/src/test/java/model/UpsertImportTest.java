@@ -0,0 +1,92 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+/**
+ * Upserting the CSV files in Source Code/resources, which have toners that
+ * share a brand and model and printers that share a serial number
+ */
+public class UpsertImportTest {
+
+	private static final File RESOURCES = new File("../Source Code/resources");
+	private static final File TONERS = new File(RESOURCES, "WilmingtonTonerDatabase.csv");
+	private static final File PRINTERS = new File(RESOURCES, "printers.csv");
+
+	@Test
+	public void everyTonerRowIsCounted() throws IOException {
+		ImportReport<Toner> report = new Database().importTonerData(TONERS, true);
+		assertEquals(rows(TONERS), count(report));
+		// the four Dell drums are all model 59J78, only the first goes in
+		assertEquals(3, report.getRejected());
+	}
+
+	@Test
+	public void everyPrinterRowIsCounted() throws IOException {
+		ImportReport<Printer> report = new Database().importPrinterData(PRINTERS, true);
+		assertEquals(rows(PRINTERS), count(report));
+		assertEquals(4, report.getRejected());
+	}
+
+	@Test
+	public void secondTonerImportChangesNothing() throws IOException {
+		Database database = new Database();
+		ImportReport<Toner> first = database.importTonerData(TONERS, true);
+		int movements = movements(database);
+		ImportReport<Toner> second = database.importTonerData(TONERS, true);
+		assertEquals(0, second.getChangeCount());
+		assertEquals(first.getErrors().toString(), second.getErrors().toString());
+		assertEquals(rows(TONERS) - second.getRejected(), second.getUnchanged());
+		assertEquals(first.getAdded().size(), database.getTonerCount());
+		assertEquals(movements, movements(database));
+	}
+
+	@Test
+	public void secondPrinterImportChangesNothing() throws IOException {
+		Database database = new Database();
+		ImportReport<Printer> first = database.importPrinterData(PRINTERS, true);
+		ImportReport<Printer> second = database.importPrinterData(PRINTERS, true);
+		assertEquals(0, second.getChangeCount());
+		assertEquals(first.getErrors().toString(), second.getErrors().toString());
+		assertEquals(rows(PRINTERS) - second.getRejected(), second.getUnchanged());
+		assertEquals(first.getAdded().size(), database.getPrinterCount());
+	}
+
+	@Test
+	public void keyMatchingSeveralRecordsIsRejected() throws IOException {
+		Database database = new Database();
+		database.importTonerData(TONERS, false);
+		ImportReport<Toner> report = database.importTonerData(TONERS, true);
+		assertEquals(0, report.getChangeCount());
+		assertEquals(4, report.getRejected());
+		String reason = report.getErrors().get(0).getReason();
+		assertTrue(reason, reason.contains("matches 4 records"));
+	}
+
+	private static int count(ImportReport<?> report) {
+		return report.getAdded().size() + report.getUpdated().size() + report.getUnchanged() + report.getRejected();
+	}
+
+	/**
+	 * @return number of lines after the header that are not blank
+	 */
+	private static int rows(File csv) throws IOException {
+		return (int) Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8).stream()
+				.skip(1).filter(line -> !line.trim().isEmpty()).count();
+	}
+
+	private static int movements(Database database) {
+		int movements = 0;
+		for (Toner toner : database.getToners()) {
+			movements += database.getMovements(toner).size();
+		}
+		return movements;
+	}
+}